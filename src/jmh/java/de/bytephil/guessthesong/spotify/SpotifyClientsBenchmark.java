@@ -0,0 +1,109 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.SpotifyHttpManager;
+import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
+
+/**
+ * A playback read against a local stub: with a client built per call (as SpotifyService did
+ * before), the same with a fresh connection per call, and with the pooled long-lived client from
+ * {@link SpotifyClients}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class SpotifyClientsBenchmark {
+
+	private static final byte[] PLAYBACK = """
+			{"is_playing":true,"progress_ms":1000,"device":{"id":"d","supports_volume":true},
+			"item":{"type":"track","uri":"spotify:track:1","name":"Song","duration_ms":200000}}
+			""".getBytes(StandardCharsets.UTF_8);
+
+	@Param({ "builderPerCall", "connectionPerCall", "pooled" })
+	public String client;
+
+	private HttpServer stub;
+	private ExecutorService stubThreads;
+	private int port;
+	private SpotifyClients clients;
+	private SpotifySessionToken token;
+
+	@Setup
+	public void setUp() throws Exception {
+		// sun.net.httpserver.nodelay is set for the fork: otherwise Nagle on the stub's split
+		// header/body writes dominates every kept-alive call.
+		stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		stubThreads = Executors.newFixedThreadPool(4);
+		stub.setExecutor(stubThreads);
+		stub.createContext("/v1/me/player", exchange -> {
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, PLAYBACK.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(PLAYBACK);
+			}
+		});
+		stub.start();
+		port = stub.getAddress().getPort();
+
+		SpotifyProperties properties = new SpotifyProperties();
+		properties.setClientId("client");
+		properties.setClientSecret("secret");
+		properties.setApiBaseUri("http://127.0.0.1:" + port);
+		clients = new SpotifyClients(properties);
+		token = new SpotifySessionToken("access", "refresh", Long.MAX_VALUE);
+	}
+
+	@TearDown
+	public void tearDown() {
+		clients.close();
+		stub.stop(0);
+		stubThreads.shutdownNow();
+	}
+
+	@Benchmark
+	public CurrentlyPlayingContext currentPlayback() throws Exception {
+		return api().getInformationAboutUsersCurrentPlayback().build().execute();
+	}
+
+	private SpotifyApi api() {
+		return switch (client) {
+			case "builderPerCall" -> new SpotifyApi.Builder()
+					.setScheme("http").setHost("127.0.0.1").setPort(port)
+					.setClientId("client").setClientSecret("secret")
+					.setAccessToken("access").setRefreshToken("refresh")
+					.build();
+			case "connectionPerCall" -> new SpotifyApi.Builder()
+					.setHttpManager(new SpotifyHttpManager.Builder().build())
+					.setScheme("http").setHost("127.0.0.1").setPort(port)
+					.setClientId("client").setClientSecret("secret")
+					.setAccessToken("access").setRefreshToken("refresh")
+					.build();
+			default -> clients.forToken(SpotifyAccount.GLOBAL_KEY, token);
+		};
+	}
+}
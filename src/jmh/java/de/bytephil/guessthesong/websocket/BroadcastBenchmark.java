@@ -0,0 +1,62 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import de.bytephil.guessthesong.game.GameEvent;
+
+/**
+ * Queueing one encoded frame to every session of a room. The writes themselves run on the sender
+ * pool in the background, as in production.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int sessions;
+
+	private GameFixture fixture;
+	private List<OutboundSession> recipients;
+	private TextMessage frame;
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = new GameFixture();
+		recipients = new ArrayList<>(sessions);
+		for (int i = 0; i < sessions; i++) {
+			recipients.add(fixture.broadcastFanout.decorate(new FakeWebSocketSession("s" + i)));
+		}
+		frame = new GameFrameEncoder(fixture.objectMapper)
+				.encode(new GameEvent.Answer("Bohemian Rhapsody", "Queen", "https://i.scdn.co/image/x", 42));
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public BroadcastFanout.Result broadcast() {
+		return fixture.broadcastFanout.broadcast(recipients, frame);
+	}
+}
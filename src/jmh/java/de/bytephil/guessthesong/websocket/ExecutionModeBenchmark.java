@@ -0,0 +1,165 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import de.bytephil.guessthesong.GuessthesongApplication;
+
+/**
+ * Full game rounds over real WebSocket connections with platform threads versus
+ * {@code spring.threads.virtual.enabled=true}, against the simulated playback backend on the real
+ * clock (so every Spotify call really blocks its thread for the simulated latency).
+ *
+ * Every benchmark thread plays one room: all players buzz, the host asks for the answer and then
+ * for the next round, each step waiting for the server's frame. The rooms played at once are the
+ * benchmark threads, so raise them with {@code -t} (e.g. -Djmh.args="-t 500 ExecutionMode").
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dspring.devtools.restart.enabled=false")
+@Threads(100)
+public class ExecutionModeBenchmark {
+
+	private static final long TIMEOUT_SECONDS = 30;
+
+	@State(Scope.Benchmark)
+	public static class Server {
+
+		@Param({ "false", "true" })
+		public boolean virtualThreads;
+
+		@Param({ "6" })
+		public int players;
+
+		private final AtomicInteger rooms = new AtomicInteger();
+		private final StandardWebSocketClient client = new StandardWebSocketClient();
+		private ConfigurableApplicationContext app;
+		private int port;
+
+		@Setup
+		public void start() {
+			// Command line arguments, so they win over application.properties.
+			app = new SpringApplicationBuilder(GuessthesongApplication.class).run(
+					"--server.port=0",
+					"--spring.threads.virtual.enabled=" + virtualThreads,
+					"--playback.backend=simulated",
+					"--playback.simulated.virtual-clock=false",
+					"--spotify.token-store-path=target/execution-mode-token.properties",
+					"--spotify.player-read-budget.per-second=10000",
+					"--spotify.player-read-budget.burst=10000",
+					"--spotify.player-write-budget.per-second=10000",
+					"--spotify.player-write-budget.burst=10000",
+					"--spotify.catalog-read-budget.per-second=10000",
+					"--spotify.catalog-read-budget.burst=10000",
+					"--websocket.send-time-limit-ms=30000",
+					"--logging.level.de.bytephil=WARN");
+			port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+		}
+
+		@TearDown
+		public void stop() {
+			app.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Room {
+
+		private final Client host = new Client();
+		private final List<WebSocketSession> sessions = new ArrayList<>();
+
+		/**
+		 * Connects the room's players and starts its game, so every player is online for the whole
+		 * measurement.
+		 */
+		@Setup
+		public void join(Server server) throws Exception {
+			int n = server.rooms.getAndIncrement();
+			URI uri = URI.create("ws://localhost:" + server.port + "/ws?room=" + RoomCodes.code("L", n));
+			for (int p = 0; p < server.players; p++) {
+				sessions.add(server.client.execute(p == 0 ? host : new Client(), new WebSocketHttpHeaders(), uri)
+						.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			}
+			String playlistId = String.format("%-22s", "Cmp" + n).replace(' ', 'x');
+			sessions.get(0).sendMessage(new TextMessage(
+					"{\"type\":\"newGame\",\"genreName\":\"Load\",\"playlistContextUri\":\"" + playlistId + "\"}"));
+			await(host.roundStarts);
+		}
+
+		@TearDown
+		public void leave() throws IOException {
+			for (WebSocketSession session : sessions) {
+				session.close();
+			}
+		}
+	}
+
+	private static final class Client extends TextWebSocketHandler {
+		final Semaphore roundStarts = new Semaphore(0);
+		final Semaphore firstGuessers = new Semaphore(0);
+		final Semaphore answers = new Semaphore(0);
+
+		@Override
+		protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+			String payload = message.getPayload();
+			if (payload.startsWith("{\"type\":\"newGame\"") || payload.startsWith("{\"type\":\"nextRound\"")) {
+				roundStarts.release();
+			} else if (payload.startsWith("{\"type\":\"firstGuesser\"")) {
+				firstGuessers.release();
+			} else if (payload.startsWith("{\"type\":\"answer\"")) {
+				answers.release();
+			}
+		}
+	}
+
+	private static void await(Semaphore frames) throws InterruptedException {
+		if (!frames.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("no frame from the server in " + TIMEOUT_SECONDS + "s");
+		}
+	}
+
+	/**
+	 * One round of the thread's room. Buzzes are decided on receipt, so they are only sent once the
+	 * round is open (the previous round's nextRound frame was received).
+	 */
+	@Benchmark
+	public void round(Room room) throws Exception {
+		List<WebSocketSession> sessions = room.sessions;
+		for (int p = 0; p < sessions.size(); p++) {
+			sessions.get(p).sendMessage(new TextMessage("{\"type\":\"playerGuess\",\"playerName\":\"p" + p + "\"}"));
+		}
+		await(room.host.firstGuessers);
+		sessions.get(0).sendMessage(new TextMessage("{\"type\":\"showAnswer\",\"playerName\":\"p0\"}"));
+		await(room.host.answers);
+		sessions.get(0).sendMessage(new TextMessage("{\"type\":\"nextRound\",\"playerName\":\"p0\"}"));
+		await(room.host.roundStarts);
+	}
+}
@@ -0,0 +1,123 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * An always-open session that discards what is sent to it, counting bytes only.
+ */
+class FakeWebSocketSession implements WebSocketSession {
+
+	private final String id;
+	private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+	private volatile long sentBytes;
+	private volatile boolean open = true;
+
+	FakeWebSocketSession(String id) {
+		this.id = id;
+	}
+
+	FakeWebSocketSession(String id, String roomCode) {
+		this(id);
+		attributes.put(RoomHandshakeInterceptor.ROOM_CODE_ATTR, roomCode);
+	}
+
+	long getSentBytes() {
+		return sentBytes;
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public URI getUri() {
+		return URI.create("ws://localhost/ws");
+	}
+
+	@Override
+	public HttpHeaders getHandshakeHeaders() {
+		return new HttpHeaders();
+	}
+
+	@Override
+	public Map<String, Object> getAttributes() {
+		return attributes;
+	}
+
+	@Override
+	public Principal getPrincipal() {
+		return null;
+	}
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return null;
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return null;
+	}
+
+	@Override
+	public String getAcceptedProtocol() {
+		return null;
+	}
+
+	@Override
+	public void setTextMessageSizeLimit(int messageSizeLimit) {
+	}
+
+	@Override
+	public int getTextMessageSizeLimit() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+	}
+
+	@Override
+	public int getBinaryMessageSizeLimit() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public List<WebSocketExtension> getExtensions() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void sendMessage(WebSocketMessage<?> message) {
+		// Only ever written by the session's own sender lane.
+		sentBytes += message.getPayloadLength();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+
+	@Override
+	public void close(CloseStatus status) {
+		open = false;
+	}
+}
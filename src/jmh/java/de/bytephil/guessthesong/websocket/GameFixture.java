@@ -0,0 +1,135 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import de.bytephil.guessthesong.cluster.ClusterProperties;
+import de.bytephil.guessthesong.cluster.InMemoryGameEventBus;
+import de.bytephil.guessthesong.cluster.RoomOwnership;
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import de.bytephil.guessthesong.game.BuzzAdjudication;
+import de.bytephil.guessthesong.game.BuzzTracer;
+import de.bytephil.guessthesong.game.CommandCoalescing;
+import de.bytephil.guessthesong.game.GameProperties;
+import de.bytephil.guessthesong.game.RoomRegistry;
+import de.bytephil.guessthesong.playback.PlaybackBackend;
+import de.bytephil.guessthesong.spotify.PlaybackStateCache;
+import de.bytephil.guessthesong.spotify.PlaylistCatalog;
+import de.bytephil.guessthesong.spotify.SpotifyClients;
+import de.bytephil.guessthesong.spotify.SpotifyCommandQueue;
+import de.bytephil.guessthesong.spotify.SpotifyMetrics;
+import de.bytephil.guessthesong.spotify.SpotifyProperties;
+import de.bytephil.guessthesong.spotify.SpotifyService;
+import de.bytephil.guessthesong.spotify.SpotifyTokenRefresher;
+import de.bytephil.guessthesong.spotify.SpotifyTokenStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The handler wired as in the application, minus Spring: no Spotify account is connected (so the
+ * game side is measured on its own), and room lanes run on the calling thread so a benchmark
+ * iteration includes the lane work instead of only queueing it.
+ */
+final class GameFixture {
+
+	final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+	final WebSocketProperties webSocketProperties = new WebSocketProperties();
+	final BroadcastFanout broadcastFanout;
+	final RoomRegistry roomRegistry;
+	final WebSocketHandler handler;
+	final ClientMessageDecoder decoder = new ClientMessageDecoder(objectMapper);
+	final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final BlockingExecutors executors = new BlockingExecutors(false);
+	private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+
+	GameFixture() {
+		// Benchmarks outrun any real client; drop frames instead of disconnecting the fake ones.
+		webSocketProperties.setSlowConsumerPolicy(OverflowStrategy.DROP);
+		webSocketProperties.setBufferSizeLimit(64 * 1024 * 1024);
+		broadcastFanout = new BroadcastFanout(webSocketProperties, meterRegistry, executors);
+
+		SpotifyProperties spotifyProperties = new SpotifyProperties();
+		spotifyProperties.setTokenStorePath("");
+		SpotifyClients clients = new SpotifyClients(spotifyProperties);
+		SpotifyTokenStore tokenStore = new SpotifyTokenStore(spotifyProperties);
+		SpotifyMetrics spotifyMetrics = new SpotifyMetrics(meterRegistry);
+		SpotifyService spotifyService = new SpotifyService(spotifyProperties, clients,
+				new SpotifyTokenRefresher(clients, spotifyProperties, tokenStore, spotifyMetrics, executors), tokenStore,
+				spotifyMetrics);
+		PlaybackBackend noPlayback = account -> null;
+		SpotifyCommandQueue commands = new SpotifyCommandQueue(noPlayback, spotifyProperties, meterRegistry, executors);
+
+		GameProperties gameProperties = new GameProperties();
+		roomRegistry = new RoomRegistry(gameProperties, new DirectExecutorService());
+		scheduler.initialize();
+		BuzzAdjudication buzzAdjudication = new BuzzAdjudication(gameProperties, scheduler);
+
+		RoomPlayback roomPlayback = new RoomPlayback(spotifyService, commands,
+				new PlaybackStateCache(commands, spotifyProperties), new PlaylistCatalog(spotifyProperties),
+				new CommandCoalescing(gameProperties, scheduler), noPlayback);
+		handler = new WebSocketHandler(roomPlayback, roomRegistry, broadcastFanout,
+				new RoomRelay(new InMemoryGameEventBus(), new RoomOwnership(new ClusterProperties()), roomRegistry,
+						broadcastFanout),
+				new GameFrameEncoder(objectMapper), decoder, webSocketProperties, gameProperties, buzzAdjudication,
+				new SessionClocks(roomRegistry, buzzAdjudication, meterRegistry),
+				new SessionHeartbeat(roomRegistry, webSocketProperties, meterRegistry),
+				new BuzzTracer(gameProperties, meterRegistry), meterRegistry);
+	}
+
+	/**
+	 * Connects {@code count} fake sessions to the room, as the handshake would.
+	 */
+	List<FakeWebSocketSession> connect(String roomCode, int count) {
+		List<FakeWebSocketSession> sessions = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			FakeWebSocketSession session = new FakeWebSocketSession(roomCode + "-" + i, roomCode);
+			handler.afterConnectionEstablished(session);
+			sessions.add(session);
+		}
+		return sessions;
+	}
+
+	void close() {
+		scheduler.shutdown();
+	}
+
+	private static final class DirectExecutorService extends AbstractExecutorService {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+
+		@Override
+		public void shutdown() {
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return List.of();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+}
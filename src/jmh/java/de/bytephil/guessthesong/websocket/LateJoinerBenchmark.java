@@ -0,0 +1,54 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * A client joining a room of 100 mid-game ({@code afterConnectionEstablished}: decorate, join,
+ * welcome, state and replay frames) and leaving again, so the roster stays the same size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LateJoinerBenchmark {
+
+	private GameFixture fixture;
+	private FakeWebSocketSession joiner;
+
+	@Setup
+	public void setUp() {
+		fixture = new GameFixture();
+		FakeWebSocketSession host = fixture.connect("BENCHX", 100).get(0);
+		fixture.handler.handleTextMessage(host, new TextMessage("{\"type\":\"newGame\",\"genreName\":\"Rock\"}"));
+		fixture.handler.handleTextMessage(host,
+				new TextMessage("{\"type\":\"playerGuess\",\"playerName\":\"Alice\",\"round\":2}"));
+		joiner = new FakeWebSocketSession("joiner", "BENCHX");
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public void joinAndLeave() {
+		fixture.handler.afterConnectionEstablished(joiner);
+		fixture.handler.afterConnectionClosed(joiner, CloseStatus.NORMAL);
+	}
+}
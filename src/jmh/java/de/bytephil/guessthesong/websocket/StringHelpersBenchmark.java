@@ -0,0 +1,55 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.bytephil.guessthesong.spotify.PlaybackState;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+
+/**
+ * The per-message string helpers of the handler and the answer path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringHelpersBenchmark {
+
+	@Param({ "spotify:playlist:37i9dQZF1DX4vth7idTQch", "37i9dQZF1DX4vth7idTQch",
+			"https://open.spotify.com/playlist/37i9dQZF1DX4vth7idTQch?si=abc", "not a playlist" })
+	public String playlistInput;
+
+	private final String label = "  Indie    Rock \t 2000s ";
+
+	private final ArtistSimplified[] artists = {
+			new ArtistSimplified.Builder().setName("Simon").build(),
+			new ArtistSimplified.Builder().setName("Garfunkel").build(),
+			new ArtistSimplified.Builder().setName("").build() };
+
+	@Benchmark
+	public String normalizePlaylistContextUriFromClient() {
+		return WebSocketHandler.normalizePlaylistContextUriFromClient(playlistInput);
+	}
+
+	@Benchmark
+	public String normalizeLabel() {
+		return WebSocketHandler.normalizeLabel(label);
+	}
+
+	@Benchmark
+	public String artistsToText() {
+		return PlaybackState.artistsToText(artists);
+	}
+}
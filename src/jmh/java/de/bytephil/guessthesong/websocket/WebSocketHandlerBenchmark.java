@@ -0,0 +1,70 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * One inbound message per type: decoding alone, and the whole of {@code handleTextMessage}
+ * (decode, buzzer arbitration, room lane, encode and broadcast to a room of 10).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebSocketHandlerBenchmark {
+
+	@Param({ "newGame", "genreChange", "playerGuess", "showAnswer", "nextRound", "guessAgain" })
+	public String type;
+
+	private GameFixture fixture;
+	private FakeWebSocketSession session;
+	private String payload;
+	private TextMessage message;
+
+	@Setup
+	public void setUp() {
+		fixture = new GameFixture();
+		List<FakeWebSocketSession> sessions = fixture.connect("BENCHX", 10);
+		session = sessions.get(0);
+		payload = switch (type) {
+			case "newGame" -> "{\"type\":\"newGame\",\"genreName\":\"Rock\","
+					+ "\"playlistContextUri\":\"https://open.spotify.com/playlist/37i9dQZF1DX4vth7idTQch\"}";
+			case "genreChange" -> "{\"type\":\"genreChange\",\"genreName\":\"  Indie   Rock \"}";
+			case "playerGuess" -> "{\"type\":\"playerGuess\",\"playerName\":\"Alice\",\"round\":1}";
+			default -> "{\"type\":\"" + type + "\",\"playerName\":\"Alice\"}";
+		};
+		message = new TextMessage(payload);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public ClientMessage decode() throws IOException {
+		return fixture.decoder.decode(payload);
+	}
+
+	@Benchmark
+	public void handleTextMessage() {
+		fixture.handler.handleTextMessage(session, message);
+	}
+}
@@ -0,0 +1,218 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * The bus between nodes: one TCP connection per node to a broker (see {@link EmbeddedGameBroker}
+ * for the protocol).
+ *
+ * If the broker goes away the node keeps playing its own rooms; messages published meanwhile are
+ * dropped (and counted), and the subscriptions are renewed once the connection is back.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cluster", name = "bus", havingValue = "broker")
+public class BrokerGameEventBus implements GameEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrokerGameEventBus.class);
+
+    private static final int CONNECT_TIMEOUT_MS = 3_000;
+
+    private final InetSocketAddress broker;
+    private final long reconnectDelayMs;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final Map<String, List<Consumer<ClusterMessage>>> listeners = new ConcurrentHashMap<>();
+
+    private final Counter published;
+    private final Counter received;
+    private final Counter dropped;
+
+    private volatile LineConnection connection;
+    private volatile boolean running = true;
+
+    @Autowired
+    public BrokerGameEventBus(ClusterProperties properties, ObjectMapper objectMapper, BlockingExecutors executors,
+            MeterRegistry registry) {
+        this(properties.getBrokerHost(), properties.getBrokerPort(), properties.getReconnectDelayMs(), objectMapper,
+                executors, registry);
+    }
+
+    public BrokerGameEventBus(String host, int port, long reconnectDelayMs, ObjectMapper objectMapper,
+            BlockingExecutors executors, MeterRegistry registry) {
+        this.broker = InetSocketAddress.createUnresolved(host, port);
+        this.reconnectDelayMs = reconnectDelayMs;
+        this.objectMapper = objectMapper;
+        this.executor = executors.newExecutor("cluster-bus-");
+        this.published = Counter.builder("cluster.bus.messages").tag("direction", "published").register(registry);
+        this.received = Counter.builder("cluster.bus.messages").tag("direction", "received").register(registry);
+        this.dropped = Counter.builder("cluster.bus.dropped")
+                .description("Messages not published because the broker was unreachable or lagging")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor.execute(this::maintainConnection);
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        LineConnection current = connection;
+        if (current != null) {
+            current.close();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * True while connected to the broker.
+     */
+    public boolean isConnected() {
+        LineConnection current = connection;
+        return current != null && !current.isClosed();
+    }
+
+    @Override
+    public void publish(String topic, ClusterMessage message) {
+        LineConnection current = connection;
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            logger.warn("Bus message for {} could not be encoded", topic, e);
+            return;
+        }
+        if (current != null && current.send("PUB " + LineConnection.encodeTopic(topic) + " " + body)) {
+            published.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public Subscription subscribe(String topic, Consumer<ClusterMessage> listener) {
+        boolean[] first = new boolean[1];
+        listeners.compute(topic, (k, subscribed) -> {
+            List<Consumer<ClusterMessage>> list = subscribed != null ? subscribed : new CopyOnWriteArrayList<>();
+            first[0] = list.isEmpty();
+            list.add(listener);
+            return list;
+        });
+        if (first[0]) {
+            sendControl("SUB", topic);
+        }
+        return () -> {
+            boolean[] last = new boolean[1];
+            listeners.computeIfPresent(topic, (k, subscribed) -> {
+                subscribed.remove(listener);
+                last[0] = subscribed.isEmpty();
+                return last[0] ? null : subscribed;
+            });
+            if (last[0]) {
+                sendControl("UNSUB", topic);
+            }
+        };
+    }
+
+    private void sendControl(String command, String topic) {
+        LineConnection current = connection;
+        if (current != null) {
+            // If this is lost the resubscription after the next reconnect catches up.
+            current.send(command + " " + LineConnection.encodeTopic(topic));
+        }
+    }
+
+    /**
+     * Connects, resubscribes and reads until the connection drops; then waits and starts over.
+     */
+    private void maintainConnection() {
+        boolean warned = false;
+        while (running) {
+            try {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(broker.getHostString(), broker.getPort()), CONNECT_TIMEOUT_MS);
+                socket.setTcpNoDelay(true);
+                LineConnection current = new LineConnection(socket, (c, line) -> onLine(line), c -> {
+                });
+                executor.execute(current::runWriter);
+                connection = current;
+                for (String topic : listeners.keySet()) {
+                    current.send("SUB " + LineConnection.encodeTopic(topic));
+                }
+                logger.info("Bus connected to broker {}", broker);
+                warned = false;
+                current.runReader();
+                connection = null;
+                if (running) {
+                    logger.warn("Bus lost the broker {}; reconnecting", broker);
+                }
+            } catch (IOException e) {
+                if (!warned) {
+                    logger.warn("Bus cannot reach broker {}: {}; retrying every {} ms", broker, e.getMessage(),
+                            reconnectDelayMs);
+                    warned = true;
+                }
+            }
+            try {
+                Thread.sleep(reconnectDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void onLine(String line) {
+        if (!line.startsWith("MSG ")) {
+            return;
+        }
+        int bodyStart = line.indexOf(' ', 4);
+        if (bodyStart < 0) {
+            return;
+        }
+        String topic = LineConnection.decodeTopic(line.substring(4, bodyStart));
+        List<Consumer<ClusterMessage>> subscribed = listeners.get(topic);
+        if (subscribed == null) {
+            return;
+        }
+        ClusterMessage message;
+        try {
+            message = objectMapper.readValue(line.substring(bodyStart + 1), ClusterMessage.class);
+        } catch (JsonProcessingException e) {
+            logger.warn("Bus message on {} could not be decoded", topic, e);
+            return;
+        }
+        received.increment();
+        for (Consumer<ClusterMessage> listener : subscribed) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                logger.warn("Bus listener on {} failed", topic, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.util.List;
+
+/**
+ * What nodes send each other about a room.
+ *
+ * Relays send {@link Kind#COMMAND} and {@link Kind#JOIN} to the owner's node topic; the owner
+ * sends {@link Kind#FRAME} and {@link Kind#WELCOME} to the room topic, which every node with
+ * players in the room subscribes to.
+ *
+ * @param origin node that sent the message; nodes ignore their own messages
+ * @param sessionId the player's WebSocket session: its id on the relay (COMMAND, JOIN), or that id
+ *            {@linkplain #qualify qualified} with the relay's node id (WELCOME)
+ * @param payload the client's raw message (COMMAND), the encoded frame (FRAME), or the resume point
+ *            {@code <log>:<seq>} of a reconnecting player (JOIN, otherwise null)
+ * @param frames the frames for one session, in order (WELCOME)
+ * @param ageNanos how long before the relay sent it the player pressed (COMMAND, buzzes); the owner
+ *            dates the buzz back by as much from its own receipt
+ */
+public record ClusterMessage(Kind kind, String origin, String roomCode, String sessionId, String payload,
+        List<String> frames, long ageNanos) {
+
+    public enum Kind {
+        /** A client message for the owner to handle. */
+        COMMAND,
+        /** A player joined on a relay and needs the join frames. */
+        JOIN,
+        /** A frame for every player in the room. */
+        FRAME,
+        /** Frames for one session: its join frames, or the reply to a command it resent. */
+        WELCOME
+    }
+
+    public static ClusterMessage command(String origin, String roomCode, String sessionId, String payload,
+            long ageNanos) {
+        return new ClusterMessage(Kind.COMMAND, origin, roomCode, sessionId, payload, null, ageNanos);
+    }
+
+    public static ClusterMessage join(String origin, String roomCode, String sessionId) {
+        return join(origin, roomCode, sessionId, null);
+    }
+
+    /**
+     * @param resumePoint {@code <log>:<seq>} if the player reconnected, otherwise null
+     */
+    public static ClusterMessage join(String origin, String roomCode, String sessionId, String resumePoint) {
+        return new ClusterMessage(Kind.JOIN, origin, roomCode, sessionId, resumePoint, null, 0);
+    }
+
+    public static ClusterMessage frame(String origin, String roomCode, String payload) {
+        return new ClusterMessage(Kind.FRAME, origin, roomCode, null, payload, null, 0);
+    }
+
+    public static ClusterMessage welcome(String origin, String roomCode, String sessionId, List<String> frames) {
+        return new ClusterMessage(Kind.WELCOME, origin, roomCode, sessionId, null, frames, 0);
+    }
+
+    /**
+     * The id the owner knows a relayed session by. Session ids are only unique per node (each
+     * server counts its own from 0), so bare ids of different nodes collide.
+     */
+    public static String qualify(String nodeId, String sessionId) {
+        return nodeId + "/" + sessionId;
+    }
+
+    /**
+     * Whether the id is one of a session connected to another node (see {@link #qualify}).
+     */
+    public static boolean isQualified(String sessionId) {
+        return sessionId.indexOf('/') >= 0;
+    }
+
+    public static String roomTopic(String roomCode) {
+        return "room:" + roomCode;
+    }
+
+    public static String nodeTopic(String nodeId) {
+        return "node:" + nodeId;
+    }
+}
@@ -0,0 +1,116 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    /**
+     * This node's id; must be one of {@link #nodes} when running as a cluster.
+     */
+    private String nodeId = "local";
+
+    /**
+     * Ids of all nodes sharing the rooms. Empty: single node, every room is hosted here.
+     */
+    private List<String> nodes = new ArrayList<>();
+
+    /**
+     * Points per node on the consistent hash ring (more: rooms spread more evenly).
+     */
+    private int virtualNodes = 128;
+
+    /**
+     * How nodes talk to each other: {@code in-memory} (one JVM) or {@code broker} (TCP).
+     */
+    private String bus = "in-memory";
+
+    /**
+     * Where the broker runs. An embedded broker listens on this address only; the broker has no
+     * authentication, so set it to an address other nodes can reach only on a private network.
+     */
+    private String brokerHost = "localhost";
+
+    private int brokerPort = 7077;
+
+    /**
+     * Run the broker inside this node (development and tests; real deployments run it on its own).
+     */
+    private boolean embeddedBroker;
+
+    /**
+     * Pause before reconnecting to a broker that went away.
+     */
+    private long reconnectDelayMs = 1_000;
+
+    public boolean isClustered() {
+        return nodes.size() > 1;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<String> nodes) {
+        this.nodes = nodes;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public String getBus() {
+        return bus;
+    }
+
+    public void setBus(String bus) {
+        this.bus = bus;
+    }
+
+    public String getBrokerHost() {
+        return brokerHost;
+    }
+
+    public void setBrokerHost(String brokerHost) {
+        this.brokerHost = brokerHost;
+    }
+
+    public int getBrokerPort() {
+        return brokerPort;
+    }
+
+    public void setBrokerPort(int brokerPort) {
+        this.brokerPort = brokerPort;
+    }
+
+    public boolean isEmbeddedBroker() {
+        return embeddedBroker;
+    }
+
+    public void setEmbeddedBroker(boolean embeddedBroker) {
+        this.embeddedBroker = embeddedBroker;
+    }
+
+    public long getReconnectDelayMs() {
+        return reconnectDelayMs;
+    }
+
+    public void setReconnectDelayMs(long reconnectDelayMs) {
+        this.reconnectDelayMs = reconnectDelayMs;
+    }
+}
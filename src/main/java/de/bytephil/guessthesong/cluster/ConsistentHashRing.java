@@ -0,0 +1,50 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps keys to nodes so that adding or removing a node only moves the keys of that node
+ * (about 1/n of all keys), instead of reshuffling everything as {@code hash % n} would.
+ *
+ * Each node is placed on the ring at {@code virtualNodes} pseudo-random points; a key belongs to
+ * the first node point at or after the key's own hash, wrapping around. Immutable.
+ */
+public final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("ring needs at least one node");
+        }
+        int points = Math.max(1, virtualNodes);
+        for (String node : nodes) {
+            for (int i = 0; i < points; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public String nodeFor(String key) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, then the SplitMix64 finalizer so that similar keys
+     * ("ROOM1", "ROOM2") land far apart on the ring.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
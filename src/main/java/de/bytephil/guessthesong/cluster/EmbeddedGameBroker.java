@@ -0,0 +1,167 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * A minimal topic broker for {@link BrokerGameEventBus}, run inside a node with
+ * {@code cluster.embedded-broker=true} (or directly by tests).
+ *
+ * It keeps nothing: a PUB goes to the current subscribers of its topic and is then forgotten.
+ * Each connection has its own write queue, so one slow node cannot hold up the others. There is no
+ * authentication, so it only listens on {@code cluster.broker-host} (loopback by default).
+ */
+@Component
+@ConditionalOnProperty(prefix = "cluster", name = "embedded-broker", havingValue = "true")
+public class EmbeddedGameBroker {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedGameBroker.class);
+
+    private final String host;
+    private final int configuredPort;
+    private final ExecutorService executor;
+    private final Map<String, Set<LineConnection>> subscribers = new ConcurrentHashMap<>();
+    private final Set<LineConnection> connections = ConcurrentHashMap.newKeySet();
+    private volatile ServerSocket server;
+
+    @Autowired
+    public EmbeddedGameBroker(ClusterProperties properties, BlockingExecutors executors) {
+        this(properties.getBrokerHost(), properties.getBrokerPort(), executors);
+    }
+
+    /**
+     * Listens on the loopback address.
+     *
+     * @param port the port to listen on; 0 picks a free one (see {@link #getPort()})
+     */
+    public EmbeddedGameBroker(int port, BlockingExecutors executors) {
+        this(null, port, executors);
+    }
+
+    /**
+     * @param host the address to listen on; null for loopback
+     * @param port the port to listen on; 0 picks a free one (see {@link #getPort()})
+     */
+    public EmbeddedGameBroker(String host, int port, BlockingExecutors executors) {
+        this.host = host;
+        this.configuredPort = port;
+        this.executor = executors.newExecutor("game-broker-");
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        try {
+            InetAddress address = host != null && !host.isBlank() ? InetAddress.getByName(host)
+                    : InetAddress.getLoopbackAddress();
+            socket.bind(new InetSocketAddress(address, configuredPort));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        server = socket;
+        executor.execute(this::acceptLoop);
+        logger.info("Game broker listening on {}", socket.getLocalSocketAddress());
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException e) {
+            // closing anyway
+        }
+        for (LineConnection connection : connections) {
+            connection.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        ServerSocket socket = server;
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                client.setTcpNoDelay(true);
+                LineConnection connection = new LineConnection(client, this::onLine, this::disconnected);
+                connections.add(connection);
+                executor.execute(connection::runWriter);
+                executor.execute(connection::runReader);
+                logger.info("Game broker: node connected from {}", client.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.warn("Game broker: accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void onLine(LineConnection from, String line) {
+        int space = line.indexOf(' ');
+        if (space < 0) {
+            return;
+        }
+        String command = line.substring(0, space);
+        int bodyStart = line.indexOf(' ', space + 1);
+        String encodedTopic = bodyStart < 0 ? line.substring(space + 1) : line.substring(space + 1, bodyStart);
+        String topic = LineConnection.decodeTopic(encodedTopic);
+        switch (command) {
+            case "SUB" -> subscribers.compute(topic, (k, set) -> {
+                Set<LineConnection> connected = set != null ? set : ConcurrentHashMap.newKeySet();
+                connected.add(from);
+                return connected;
+            });
+            case "UNSUB" -> unsubscribe(topic, from);
+            case "PUB" -> {
+                Set<LineConnection> targets = subscribers.get(topic);
+                if (targets != null && bodyStart > 0) {
+                    String message = "MSG " + encodedTopic + line.substring(bodyStart);
+                    for (LineConnection target : targets) {
+                        if (!target.send(message)) {
+                            logger.info("Game broker: message on {} dropped for a lagging node", topic);
+                        }
+                    }
+                }
+            }
+            default -> logger.info("Game broker: unknown command {}", command);
+        }
+    }
+
+    private void unsubscribe(String topic, LineConnection connection) {
+        subscribers.computeIfPresent(topic, (k, set) -> {
+            set.remove(connection);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private void disconnected(LineConnection connection) {
+        connections.remove(connection);
+        for (String topic : subscribers.keySet()) {
+            unsubscribe(topic, connection);
+        }
+    }
+}
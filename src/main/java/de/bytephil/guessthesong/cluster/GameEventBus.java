@@ -0,0 +1,26 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Topic-based publish/subscribe between nodes. Selected with {@code cluster.bus}:
+ * {@code in-memory} (default; everything in one JVM) or {@code broker} (over TCP).
+ *
+ * Delivery is best effort and at most once. Messages of one publisher to one topic arrive in
+ * publish order. Listeners run on the bus's delivery thread and must not block it.
+ */
+public interface GameEventBus {
+
+    void publish(String topic, ClusterMessage message);
+
+    /**
+     * Delivers every message published to the topic (by any node, this one included) until closed.
+     */
+    Subscription subscribe(String topic, Consumer<ClusterMessage> listener);
+
+    interface Subscription extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,53 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * The bus within one JVM: a single node, or several nodes sharing one instance (tests, benchmarks).
+ * Listeners run on the publishing thread.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cluster", name = "bus", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryGameEventBus implements GameEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryGameEventBus.class);
+
+    private final Map<String, List<Consumer<ClusterMessage>>> listeners = new ConcurrentHashMap<>();
+
+    @Override
+    public void publish(String topic, ClusterMessage message) {
+        List<Consumer<ClusterMessage>> subscribed = listeners.get(topic);
+        if (subscribed == null) {
+            return;
+        }
+        for (Consumer<ClusterMessage> listener : subscribed) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                logger.warn("Bus listener on {} failed", topic, e);
+            }
+        }
+    }
+
+    @Override
+    public Subscription subscribe(String topic, Consumer<ClusterMessage> listener) {
+        listeners.compute(topic, (k, subscribed) -> {
+            List<Consumer<ClusterMessage>> list = subscribed != null ? subscribed : new CopyOnWriteArrayList<>();
+            list.add(listener);
+            return list;
+        });
+        return () -> listeners.computeIfPresent(topic, (k, subscribed) -> {
+            subscribed.remove(listener);
+            return subscribed.isEmpty() ? null : subscribed;
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package de.bytephil.guessthesong.cluster;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * One TCP connection of the broker protocol: UTF-8 text, one command per line.
+ *
+ * <pre>
+ * client -> broker:  SUB &lt;topic&gt; | UNSUB &lt;topic&gt; | PUB &lt;topic&gt; &lt;body&gt;
+ * broker -> client:  MSG &lt;topic&gt; &lt;body&gt;
+ * </pre>
+ *
+ * Topics are URL-encoded, bodies are single-line JSON. Sends only queue the line; the writer loop
+ * writes them out, so a slow peer never blocks the sender. The caller runs {@link #runReader()}
+ * and {@link #runWriter()} on threads of its choice.
+ */
+final class LineConnection {
+
+    // A peer this far behind is not coming back; its lines are dropped.
+    private static final int MAX_QUEUED_LINES = 65_536;
+    private static final String CLOSED = new String("closed");
+
+    private final Socket socket;
+    private final BiConsumer<LineConnection, String> onLine;
+    private final Consumer<LineConnection> onClose;
+    private final BlockingQueue<String> outbound = new LinkedBlockingQueue<>(MAX_QUEUED_LINES);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    LineConnection(Socket socket, BiConsumer<LineConnection, String> onLine, Consumer<LineConnection> onClose) {
+        this.socket = socket;
+        this.onLine = onLine;
+        this.onClose = onClose;
+    }
+
+    static String encodeTopic(String topic) {
+        return URLEncoder.encode(topic, StandardCharsets.UTF_8);
+    }
+
+    static String decodeTopic(String encoded) {
+        return URLDecoder.decode(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Queues a line; false if the connection is closed or too far behind.
+     */
+    boolean send(String line) {
+        return !closed.get() && outbound.offer(line);
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Hands every received line to the callback until the connection closes.
+     */
+    void runReader() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                onLine.accept(this, line);
+            }
+        } catch (IOException e) {
+            // closed by either side
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes queued lines, flushing once the queue is drained, until the connection closes.
+     */
+    void runWriter() {
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            while (true) {
+                String line = outbound.take();
+                do {
+                    if (line == CLOSED) {
+                        return;
+                    }
+                    writer.write(line);
+                    writer.write('\n');
+                } while ((line = outbound.poll()) != null);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // closed by either side
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already gone
+        }
+        outbound.clear();
+        outbound.offer(CLOSED);
+        onClose.accept(this);
+    }
+}
@@ -0,0 +1,46 @@
+package de.bytephil.guessthesong.cluster;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Which node hosts (owns) a room. The owner runs the room's game: it arbitrates buzzes, talks to
+ * Spotify and publishes the room's frames; every other node with players in the room only relays.
+ *
+ * Ownership is decided by consistent hashing over {@code cluster.nodes}, so all nodes agree on it
+ * without talking to each other.
+ */
+@Component
+public class RoomOwnership {
+
+    private final String localNodeId;
+    private final ConsistentHashRing ring;
+
+    public RoomOwnership(ClusterProperties properties) {
+        this.localNodeId = properties.getNodeId();
+        if (properties.isClustered()) {
+            if (!properties.getNodes().contains(localNodeId)) {
+                throw new IllegalStateException("cluster.node-id '" + localNodeId + "' is not in cluster.nodes "
+                        + properties.getNodes());
+            }
+            this.ring = new ConsistentHashRing(properties.getNodes(), properties.getVirtualNodes());
+        } else {
+            this.ring = null;
+        }
+    }
+
+    public String getLocalNodeId() {
+        return localNodeId;
+    }
+
+    public boolean isClustered() {
+        return ring != null;
+    }
+
+    public String ownerOf(String roomCode) {
+        return ring != null ? ring.nodeFor(roomCode) : localNodeId;
+    }
+
+    public boolean isLocal(String roomCode) {
+        return ring == null || localNodeId.equals(ring.nodeFor(roomCode));
+    }
+}
@@ -0,0 +1,59 @@
+package de.bytephil.guessthesong.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the executors our blocking work runs on: Spotify commands, token refreshes, WebSocket
+ * writes and room lanes.
+ *
+ * With {@code spring.threads.virtual.enabled=true} (which also moves Tomcat, and with it WebSocket
+ * message handling, onto virtual threads) every task gets its own virtual thread; otherwise tasks
+ * run on cached pools of platform daemon threads. Code on these executors must not block while
+ * holding a monitor (use {@link java.util.concurrent.locks.ReentrantLock}), or it pins the carrier
+ * thread on Java 21.
+ */
+@Component
+public class BlockingExecutors {
+
+    private final boolean virtual;
+
+    @Autowired
+    public BlockingExecutors(Environment environment) {
+        this(Threading.VIRTUAL.isActive(environment));
+    }
+
+    public BlockingExecutors(boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * A new executor whose threads are named {@code <prefix><n>}.
+     */
+    public ExecutorService newExecutor(String prefix) {
+        if (virtual) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory());
+        }
+        return Executors.newCachedThreadPool(platformDaemonThreads(prefix));
+    }
+
+    private static ThreadFactory platformDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -54,7 +54,8 @@ public class ExternalConfigFileEnvironmentPostProcessor implements EnvironmentPo
                     + "spotify.client-id=\n"
                     + "spotify.client-secret=\n"
                     + "spotify.redirect-uri=http://localhost:${server.port}/spotify/callback\n"
-                    + "spotify.scopes=user-read-currently-playing user-modify-playback-state user-read-playback-state\n"
+                    + "# spotify.scopes is left to the built-in default (the scopes the game needs); set it only\n"
+                    + "# to ask for more, and keep playlist-read-private in it.\n"
                     + "\n"
                     + "# Optional: backend-only global token (refresh token)\n"
                     + "spotify.global-refresh-token=\n";
@@ -0,0 +1,67 @@
+package de.bytephil.guessthesong.game;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Closes the rooms' buzzer adjudication windows (see {@link Buzzer}): the first buzz of a round
+ * opens one, and the round is settled when it ends, or earlier if the room moves on before.
+ */
+@Component
+public class BuzzAdjudication {
+
+    private final GameProperties properties;
+    private final TaskScheduler scheduler;
+
+    public BuzzAdjudication(GameProperties properties, TaskScheduler scheduler) {
+        this.properties = properties;
+        this.scheduler = scheduler;
+    }
+
+    public long windowNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, properties.getBuzzAdjudicationWindowMs()));
+    }
+
+    /**
+     * How far back a buzz may be dated from its receipt at most, however slow the player's link looks.
+     */
+    public long maxCompensationNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, properties.getBuzzMaxCompensationMs()));
+    }
+
+    /**
+     * After a buzz opened the round: settles it once the window has closed. Call on the room's lane.
+     */
+    public void settleWhenClosed(Room room, Consumer<Buzzer.RoundState> onSettled) {
+        Buzzer.RoundState round = room.getBuzzer().current();
+        if (round.winner() == null || round.settled()) {
+            return;
+        }
+        long epoch = round.epoch();
+        long delayNanos = round.windowEndsNanos() - System.nanoTime();
+        if (delayNanos <= 0) {
+            settle(room, epoch, onSettled);
+            return;
+        }
+        scheduler.schedule(() -> room.execute(() -> settle(room, epoch, onSettled)),
+                Instant.now().plusNanos(delayNanos));
+    }
+
+    /**
+     * Settles the current round now if it is still being adjudicated (the room is moving on). Call on the room's lane.
+     */
+    public void settleNow(Room room, Consumer<Buzzer.RoundState> onSettled) {
+        settle(room, room.getBuzzer().currentEpoch(), onSettled);
+    }
+
+    private static void settle(Room room, long epoch, Consumer<Buzzer.RoundState> onSettled) {
+        Buzzer.RoundState settled = room.getBuzzer().settle(epoch);
+        if (settled != null) {
+            onSettled.accept(settled);
+        }
+    }
+}
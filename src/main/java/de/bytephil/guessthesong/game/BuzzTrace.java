@@ -0,0 +1,104 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timeline of one won buzz, from the server's receipt of the {@code playerGuess} until the music
+ * is paused. Every stage is stored as its offset from the receipt time.
+ *
+ * Stages are marked by whichever thread gets there (receiving thread, room lane, Spotify command
+ * queue) and may be read concurrently by the stats endpoint.
+ */
+public final class BuzzTrace {
+
+    public enum Stage {
+        /** The settled buzz was picked up on the room's lane (after the adjudication window and the room's other work). */
+        LANE,
+        /** The firstGuesser frame was queued to the room. */
+        BROADCAST,
+        /** The pause was handed to the account's command queue (after coalescing). */
+        DISPATCHED,
+        /** The pause started on the command queue (after other commands and rate limit waits). */
+        COMMAND_START,
+        /** Playback state is known (poller snapshot or a Spotify read). */
+        PLAYBACK_READ,
+        /** Spotify accepted the pause. */
+        PAUSED;
+
+        private static final Stage[] VALUES = values();
+    }
+
+    private final String roomCode;
+    private final long round;
+    private final String playerName;
+    private final long receivedAtNanos;
+    private final long receivedAtEpochMs;
+    private final Timer[] stageTimers;
+    private final AtomicLongArray offsets = new AtomicLongArray(Stage.VALUES.length);
+    private volatile String outcome;
+
+    BuzzTrace(String roomCode, long round, String playerName, long receivedAtNanos, Timer[] stageTimers) {
+        this.roomCode = roomCode;
+        this.round = round;
+        this.playerName = playerName;
+        this.receivedAtNanos = receivedAtNanos;
+        this.receivedAtEpochMs = System.currentTimeMillis()
+                - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedAtNanos);
+        this.stageTimers = stageTimers;
+        for (int i = 0; i < Stage.VALUES.length; i++) {
+            offsets.set(i, -1);
+        }
+    }
+
+    /**
+     * Stamps the stage with the current time (first mark wins).
+     */
+    public void mark(Stage stage) {
+        long offset = System.nanoTime() - receivedAtNanos;
+        if (offsets.compareAndSet(stage.ordinal(), -1, offset)) {
+            stageTimers[stage.ordinal()].record(offset, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Ends the trace: {@code paused}, or why the music was not paused.
+     */
+    public void finish(String outcome) {
+        if (this.outcome == null) {
+            this.outcome = outcome;
+        }
+    }
+
+    /**
+     * Nanoseconds from receipt until the stage, or -1 if it was not reached (yet).
+     */
+    public long offsetNanos(Stage stage) {
+        return offsets.get(stage.ordinal());
+    }
+
+    public String getRoomCode() {
+        return roomCode;
+    }
+
+    public long getRound() {
+        return round;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public long getReceivedAtEpochMs() {
+        return receivedAtEpochMs;
+    }
+
+    /**
+     * The outcome, or null while the pause is still on its way.
+     */
+    public String getOutcome() {
+        return outcome;
+    }
+}
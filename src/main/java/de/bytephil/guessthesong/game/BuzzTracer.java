@@ -0,0 +1,106 @@
+package de.bytephil.guessthesong.game;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Keeps the {@link BuzzTrace}s of the most recent won buzzes (all rooms) in a fixed size ring.
+ *
+ * Each stage is also recorded in the {@code game.buzz.stage} timer (by {@code stage}, with
+ * p50/p95/p99 and a histogram), so the distribution over all rounds is scraped as well.
+ */
+@Component
+public class BuzzTracer {
+
+    /**
+     * Percentiles of one stage's offset from receipt, over the traces in the ring.
+     */
+    public record StageSummary(int count, long p50Micros, long p95Micros, long p99Micros) {
+    }
+
+    private static final BuzzTrace.Stage[] STAGES = BuzzTrace.Stage.values();
+
+    private final AtomicReferenceArray<BuzzTrace> ring;
+    private final AtomicLong next = new AtomicLong();
+    private final Timer[] stageTimers = new Timer[STAGES.length];
+
+    public BuzzTracer(GameProperties properties, MeterRegistry registry) {
+        this.ring = new AtomicReferenceArray<>(Math.max(1, properties.getBuzzTraceCapacity()));
+        for (BuzzTrace.Stage stage : STAGES) {
+            stageTimers[stage.ordinal()] = Timer.builder("game.buzz.stage")
+                    .description("Time from receiving the winning buzz until the stage")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Starts the trace of a won buzz and puts it in the ring, replacing the oldest one.
+     */
+    public BuzzTrace start(String roomCode, long round, String playerName, long receivedAtNanos) {
+        BuzzTrace trace = new BuzzTrace(roomCode, round, playerName, receivedAtNanos, stageTimers);
+        ring.set((int) (next.getAndIncrement() % ring.length()), trace);
+        return trace;
+    }
+
+    /**
+     * The traces in the ring, newest first.
+     */
+    public List<BuzzTrace> recent() {
+        long end = next.get();
+        int n = (int) Math.min(end, ring.length());
+        List<BuzzTrace> traces = new ArrayList<>(n);
+        for (long i = end - 1; i >= end - n; i--) {
+            BuzzTrace trace = ring.get((int) (i % ring.length()));
+            if (trace != null) {
+                traces.add(trace);
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * p50/p95/p99 per stage over the traces in the ring (stages a trace has not reached are left out).
+     */
+    public Map<BuzzTrace.Stage, StageSummary> summary() {
+        List<BuzzTrace> traces = recent();
+        Map<BuzzTrace.Stage, StageSummary> summary = new EnumMap<>(BuzzTrace.Stage.class);
+        long[] offsets = new long[traces.size()];
+        for (BuzzTrace.Stage stage : STAGES) {
+            int count = 0;
+            for (BuzzTrace trace : traces) {
+                long offset = trace.offsetNanos(stage);
+                if (offset >= 0) {
+                    offsets[count++] = offset;
+                }
+            }
+            Arrays.sort(offsets, 0, count);
+            summary.put(stage, new StageSummary(count, percentileMicros(offsets, count, 0.50),
+                    percentileMicros(offsets, count, 0.95), percentileMicros(offsets, count, 0.99)));
+        }
+        return summary;
+    }
+
+    // Nearest rank on the sorted prefix; -1 without samples.
+    static long percentileMicros(long[] sorted, int count, double p) {
+        if (count == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(p * count);
+        return sorted[Math.max(0, rank - 1)] / 1_000;
+    }
+}
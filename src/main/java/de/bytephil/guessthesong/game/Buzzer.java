@@ -0,0 +1,139 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * First-guesser arbitration for one room.
+ *
+ * Each round is an immutable {@link RoundState} behind a single {@link AtomicReference}, changed
+ * with compare-and-set only, no locks are taken. The first buzz of a round opens a short
+ * adjudication window; until it closes, a buzz that was pressed earlier (by the latency-corrected
+ * press time) takes the lead, so a player on a slow link is not beaten by arrival order alone.
+ * The room then {@link #settle(long) settles} the round. Starting a new round bumps the epoch, so
+ * buzzes that were aimed at an earlier round are rejected as stale.
+ */
+public class Buzzer {
+
+    /**
+     * Passed as round epoch by clients that do not know the current round.
+     */
+    public static final long ANY_ROUND = -1;
+
+    public enum Outcome {
+        /** First buzz of the round: it leads, and the room has to settle the round when the window closes. */
+        OPENED,
+        /** Pressed earlier than the leader and arrived inside the window: now leads. */
+        LEADING,
+        LOST,
+        STALE
+    }
+
+    /**
+     * @param receivedAtNanos {@link System#nanoTime()} when the server received the buzz
+     * @param pressedAtNanos when the player pressed, on the same clock (the receipt time if unknown)
+     */
+    public record Buzz(String playerName, String sessionId, long receivedAtNanos, long pressedAtNanos) {
+    }
+
+    /**
+     * @param winner the leader until the round is settled, then the winner
+     * @param windowEndsNanos buzzes received from then on cannot take the lead
+     */
+    public record RoundState(long epoch, Buzz winner, Buzz runnerUp, long windowEndsNanos, boolean settled) {
+
+        /**
+         * Press time gap between winner and runner-up, or -1 if there is no runner-up yet.
+         */
+        public long runnerUpMarginNanos() {
+            if (winner == null || runnerUp == null) {
+                return -1;
+            }
+            return runnerUp.pressedAtNanos() - winner.pressedAtNanos();
+        }
+    }
+
+    private final AtomicReference<RoundState> state = new AtomicReference<>(new RoundState(1, null, null, 0, false));
+
+    public RoundState current() {
+        return state.get();
+    }
+
+    public long currentEpoch() {
+        return state.get().epoch();
+    }
+
+    /**
+     * Tries to claim the round.
+     *
+     * @param epoch the round the client buzzed for, or {@link #ANY_ROUND}
+     * @param windowNanos length of the adjudication window a first buzz opens (0: it wins outright)
+     */
+    public Outcome buzz(long epoch, String playerName, String sessionId, long receivedAtNanos, long pressedAtNanos,
+            long windowNanos) {
+        Buzz buzz = null;
+        while (true) {
+            RoundState s = state.get();
+            if (epoch != ANY_ROUND && epoch != s.epoch()) {
+                return Outcome.STALE;
+            }
+            Buzz leader = s.winner();
+            if (leader != null && leader.sessionId().equals(sessionId)) {
+                return Outcome.LOST;
+            }
+            if (buzz == null) {
+                buzz = new Buzz(playerName, sessionId, receivedAtNanos, pressedAtNanos);
+            }
+            RoundState next;
+            Outcome outcome;
+            boolean inWindow = leader != null && !s.settled() && receivedAtNanos - s.windowEndsNanos() < 0;
+            if (leader == null) {
+                next = new RoundState(s.epoch(), buzz, null, receivedAtNanos + windowNanos, false);
+                outcome = Outcome.OPENED;
+            } else if (inWindow && pressedAtNanos - leader.pressedAtNanos() < 0) {
+                next = new RoundState(s.epoch(), buzz, leader, s.windowEndsNanos(), false);
+                outcome = Outcome.LEADING;
+            } else if (s.runnerUp() == null
+                    || inWindow && pressedAtNanos - s.runnerUp().pressedAtNanos() < 0) {
+                // Only the closest runner-up is kept (the first one, once the window is closed).
+                next = new RoundState(s.epoch(), leader, buzz, s.windowEndsNanos(), s.settled());
+                outcome = Outcome.LOST;
+            } else {
+                return Outcome.LOST;
+            }
+            if (state.compareAndSet(s, next)) {
+                return outcome;
+            }
+        }
+    }
+
+    /**
+     * Closes the adjudication of the round: its leader is the winner from now on.
+     *
+     * @return the settled round, or null if the round is over, has no buzz yet or was settled before
+     */
+    public RoundState settle(long epoch) {
+        while (true) {
+            RoundState s = state.get();
+            if (s.epoch() != epoch || s.winner() == null || s.settled()) {
+                return null;
+            }
+            RoundState settled = new RoundState(s.epoch(), s.winner(), s.runnerUp(), s.windowEndsNanos(), true);
+            if (state.compareAndSet(s, settled)) {
+                return settled;
+            }
+        }
+    }
+
+    /**
+     * Opens the next round and returns its epoch.
+     */
+    public long newRound() {
+        while (true) {
+            RoundState s = state.get();
+            RoundState next = new RoundState(s.epoch() + 1, null, null, 0, false);
+            if (state.compareAndSet(s, next)) {
+                return next.epoch();
+            }
+        }
+    }
+}
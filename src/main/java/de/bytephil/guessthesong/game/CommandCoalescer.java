@@ -0,0 +1,156 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds a room's bursty playback commands (double taps, resent payloads after a reconnect) into the
+ * fewest Spotify operations that leave playback in the same state.
+ *
+ * The first command after a quiet period is dispatched at once, so single commands see no extra
+ * latency. Commands arriving within the window after it are held back and folded when the window
+ * closes (see {@link #fold(Kind, List)}). Commands that must not wait for that, like the pause after
+ * a buzz, go through {@link #dispatchNow(Kind, Runnable, Runnable, long, long)} instead. Only used
+ * from the room's lane.
+ */
+public class CommandCoalescer {
+
+    public enum Kind {
+        NEW_GAME,
+        NEXT_ROUND,
+        SHOW_ANSWER,
+        PAUSE,
+        RESUME;
+
+        boolean isTransport() {
+            return this == PAUSE || this == RESUME;
+        }
+    }
+
+    /**
+     * @param dropped runs instead of {@code dispatch} if the command is folded away
+     */
+    public record Intent(Kind kind, Runnable dispatch, Runnable dropped) {
+
+        public Intent(Kind kind, Runnable dispatch) {
+            this(kind, dispatch, () -> {
+            });
+        }
+    }
+
+    private final List<Intent> buffered = new ArrayList<>();
+    private long windowEndsNanos;
+    private boolean windowOpen;
+    private Kind leading;
+
+    /**
+     * Dispatches the command now if the room is quiet, otherwise holds it back.
+     *
+     * @return true if this command opened a batch and the caller has to {@link #flush()} at {@link #windowEndsNanos()}
+     */
+    boolean offer(Kind kind, Runnable dispatch, long nowNanos, long windowNanos) {
+        if (!windowOpen || nowNanos - windowEndsNanos >= 0) {
+            leading = kind;
+            windowOpen = true;
+            windowEndsNanos = nowNanos + windowNanos;
+            dispatch.run();
+            return false;
+        }
+        buffered.add(new Intent(kind, dispatch));
+        return buffered.size() == 1;
+    }
+
+    /**
+     * Dispatches the command now, without waiting for the window to close: what is still held back is
+     * folded together with it and dispatched first, so the command keeps its place after them.
+     *
+     * @param dropped runs instead of {@code dispatch} if the command turns out to be a double tap
+     * @return how many commands were folded away
+     */
+    int dispatchNow(Kind kind, Runnable dispatch, Runnable dropped, long nowNanos, long windowNanos) {
+        if (!windowOpen || nowNanos - windowEndsNanos >= 0) {
+            // Nothing dispatched recently that this could be a double tap of.
+            leading = null;
+            windowOpen = true;
+        }
+        buffered.add(new Intent(kind, dispatch, dropped));
+        return flush(nowNanos, windowNanos);
+    }
+
+    long windowEndsNanos() {
+        return windowEndsNanos;
+    }
+
+    /**
+     * Dispatches what is left of the held back commands; returns how many were folded away.
+     */
+    int flush(long nowNanos, long windowNanos) {
+        if (buffered.isEmpty()) {
+            return 0;
+        }
+        List<Intent> survivors = fold(leading, buffered);
+        int saved = buffered.size() - survivors.size();
+        // Survivors keep their order, so one pass finds the commands folded away.
+        int next = 0;
+        for (Intent intent : buffered) {
+            if (next < survivors.size() && survivors.get(next) == intent) {
+                next++;
+            } else {
+                intent.dropped().run();
+            }
+        }
+        buffered.clear();
+        for (Intent intent : survivors) {
+            intent.dispatch().run();
+        }
+        if (!survivors.isEmpty()) {
+            // A burst that keeps going keeps being folded.
+            leading = survivors.get(survivors.size() - 1).kind();
+            windowEndsNanos = nowNanos + windowNanos;
+        }
+        return saved;
+    }
+
+    /**
+     * The commands that still need to run, in their original order:
+     * <ul>
+     * <li>a new game makes everything before it moot,</li>
+     * <li>of several pause/resume commands only the last one counts,</li>
+     * <li>repeated skips and answers collapse into one, as does a skip right after a new game,</li>
+     * <li>a command repeating the one already dispatched for this window is a double tap and dropped.</li>
+     * </ul>
+     */
+    static List<Intent> fold(Kind leading, List<Intent> batch) {
+        int start = 0;
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (batch.get(i).kind() == Kind.NEW_GAME) {
+                start = i;
+                leading = null;
+                break;
+            }
+        }
+
+        int lastTransport = -1;
+        for (int i = start; i < batch.size(); i++) {
+            if (batch.get(i).kind().isTransport()) {
+                lastTransport = i;
+            }
+        }
+
+        List<Intent> survivors = new ArrayList<>();
+        Kind previous = leading;
+        for (int i = start; i < batch.size(); i++) {
+            Intent intent = batch.get(i);
+            Kind kind = intent.kind();
+            if (kind.isTransport() && i != lastTransport) {
+                continue;
+            }
+            if (kind == previous || (kind == Kind.NEXT_ROUND && previous == Kind.NEW_GAME)) {
+                continue;
+            }
+            survivors.add(intent);
+            previous = kind;
+        }
+        return survivors;
+    }
+}
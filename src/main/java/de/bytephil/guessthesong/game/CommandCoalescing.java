@@ -0,0 +1,77 @@
+package de.bytephil.guessthesong.game;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs rooms' playback commands through their {@link CommandCoalescer} and counts what it saved.
+ */
+@Component
+public class CommandCoalescing {
+
+    private final GameProperties properties;
+    private final TaskScheduler scheduler;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+
+    public CommandCoalescing(GameProperties properties, TaskScheduler scheduler) {
+        this.properties = properties;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Dispatches the command now or folds it into the room's current burst. Call on the room's lane.
+     */
+    public void submit(Room room, CommandCoalescer.Kind kind, Runnable dispatch) {
+        received.incrementAndGet();
+        long windowMs = properties.getCommandCoalesceWindowMs();
+        if (windowMs <= 0) {
+            dispatch.run();
+            return;
+        }
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        CommandCoalescer coalescer = room.getCoalescer();
+        if (coalescer.offer(kind, dispatch, System.nanoTime(), windowNanos)) {
+            long delayNanos = Math.max(0, coalescer.windowEndsNanos() - System.nanoTime());
+            scheduler.schedule(() -> room.execute(() -> flush(room, windowNanos)),
+                    Instant.now().plusNanos(delayNanos));
+        }
+    }
+
+    /**
+     * Dispatches the command now, folding it only with the room's commands that are still held back.
+     * For commands whose latency players notice (the pause after a buzz). Call on the room's lane.
+     *
+     * @param dropped runs instead of {@code dispatch} if the command is folded away
+     */
+    public void dispatchNow(Room room, CommandCoalescer.Kind kind, Runnable dispatch, Runnable dropped) {
+        received.incrementAndGet();
+        long windowMs = properties.getCommandCoalesceWindowMs();
+        if (windowMs <= 0) {
+            dispatch.run();
+            return;
+        }
+        saved.addAndGet(room.getCoalescer().dispatchNow(kind, dispatch, dropped, System.nanoTime(),
+                TimeUnit.MILLISECONDS.toNanos(windowMs)));
+    }
+
+    private void flush(Room room, long windowNanos) {
+        saved.addAndGet(room.getCoalescer().flush(System.nanoTime(), windowNanos));
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Commands folded away instead of being sent to Spotify.
+     */
+    public long getSaved() {
+        return saved.get();
+    }
+}
@@ -0,0 +1,123 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * The command ids a room has handled recently, so a command a client sends again (a payload
+ * replayed after a reconnect, a double tap) is answered with its original result instead of
+ * running twice.
+ *
+ * Ids are kept in arrival order and dropped once they are older than the window or beyond the
+ * capacity, so a check is a hash lookup plus expiring the few oldest ids. Commands are checked on
+ * the thread that received them (before a buzz is arbitrated), so the ids are guarded by a lock; an
+ * entry's result is only touched on the room's lane.
+ */
+public class CommandDedup {
+
+    /**
+     * A handled command: when it arrived and the frame it broadcast, if any (yet).
+     */
+    public static final class Entry {
+        private final long handledAtMs;
+        private TextMessage result;
+
+        Entry(long handledAtMs) {
+            this.handledAtMs = handledAtMs;
+        }
+
+        public TextMessage getResult() {
+            return result;
+        }
+
+        /**
+         * Keeps the first frame the command broadcast; later ones (none so far) do not replace it.
+         */
+        public void setResult(TextMessage result) {
+            if (this.result == null) {
+                this.result = result;
+            }
+        }
+    }
+
+    /**
+     * The outcome of {@link #claim}: the command's entry, and whether it is the one of an earlier
+     * command with the same id.
+     */
+    public record Claim(Entry entry, boolean resent) {
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final int capacity;
+
+    public CommandDedup(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Looks the id up and records it if it is new, in one step, so of two commands with the same id
+     * arriving at once only one is taken as new.
+     */
+    public Claim claim(String commandId, long nowMs, long windowMs) {
+        lock.lock();
+        try {
+            Entry previous = previous(commandId, nowMs, windowMs);
+            return previous != null ? new Claim(previous, true) : new Claim(add(commandId, nowMs), false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The earlier command with this id still inside the window, or null if the id is new.
+     */
+    public Entry previous(String commandId, long nowMs, long windowMs) {
+        lock.lock();
+        try {
+            return expireAndGet(commandId, nowMs - windowMs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry expireAndGet(String commandId, long cutoff) {
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (oldest.hasNext() && oldest.next().handledAtMs < cutoff) {
+            oldest.remove();
+        }
+        return entries.get(commandId);
+    }
+
+    /**
+     * Records a new command id; the oldest id is forgotten once the capacity is reached.
+     */
+    public Entry add(String commandId, long nowMs) {
+        Entry entry = new Entry(nowMs);
+        lock.lock();
+        try {
+            entries.put(commandId, entry);
+            if (entries.size() > capacity) {
+                Iterator<Entry> oldest = entries.values().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return entry;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
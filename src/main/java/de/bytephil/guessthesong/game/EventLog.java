@@ -0,0 +1,67 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * The most recent frames broadcast in a room, numbered 1, 2, 3, ... and kept in a fixed ring, so a
+ * reconnecting client can be sent just the frames it missed.
+ *
+ * The id tells logs apart: a room that was evicted and created again (or a restarted node) starts
+ * a new log, and sequence numbers of the old one mean nothing there. Only used on the room's lane.
+ */
+public class EventLog {
+
+    private final String id;
+    private final TextMessage[] frames;
+    private long lastSequence;
+
+    public EventLog(int capacity) {
+        this.id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.frames = new TextMessage[Math.max(1, capacity)];
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sequence number of the last frame appended; 0 while the log is empty.
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public long nextSequence() {
+        return lastSequence + 1;
+    }
+
+    /**
+     * Appends the frame, which must carry {@link #nextSequence()}; the oldest frame drops out once the ring is full.
+     */
+    public void append(long sequence, TextMessage frame) {
+        if (sequence != lastSequence + 1) {
+            throw new IllegalStateException("expected sequence " + (lastSequence + 1) + ", got " + sequence);
+        }
+        frames[(int) (sequence % frames.length)] = frame;
+        lastSequence = sequence;
+    }
+
+    /**
+     * The frames after the given sequence number, oldest first; null if some of them are no longer
+     * kept (or the number was never handed out), in which case the client needs a full snapshot.
+     */
+    public List<TextMessage> since(long sequence) {
+        if (sequence < 0 || sequence > lastSequence || lastSequence - sequence > frames.length) {
+            return null;
+        }
+        List<TextMessage> missed = new ArrayList<>((int) (lastSequence - sequence));
+        for (long s = sequence + 1; s <= lastSequence; s++) {
+            missed.add(frames[(int) (s % frames.length)]);
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,75 @@
+package de.bytephil.guessthesong.game;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Immutable game events broadcast to a room. Each serializes to the JSON object the client expects,
+ * with its {@code type} first; broadcast frames also carry the room's sequence number as {@code seq}
+ * (see {@link EventLog}).
+ */
+@JsonPropertyOrder({ "type" })
+public sealed interface GameEvent {
+
+    @JsonProperty("type")
+    String type();
+
+    record GenreChange(String genreName) implements GameEvent {
+        @Override
+        public String type() {
+            return "genreChange";
+        }
+    }
+
+    record NewGame(long round, String genreName) implements GameEvent {
+        @Override
+        public String type() {
+            return "newGame";
+        }
+    }
+
+    record FirstGuesser(String playerName, long round) implements GameEvent {
+        @Override
+        public String type() {
+            return "firstGuesser";
+        }
+    }
+
+    record Answer(String songTitle, String artistsText, String albumImageUrl, long round) implements GameEvent {
+        @Override
+        public String type() {
+            return "answer";
+        }
+    }
+
+    record NextRound(long round) implements GameEvent {
+        @Override
+        public String type() {
+            return "nextRound";
+        }
+    }
+
+    record GuessAgain(long round) implements GameEvent {
+        @Override
+        public String type() {
+            return "guessAgain";
+        }
+    }
+
+    /**
+     * Current room state, sent to every joining client before the replayed last event (or after the missed ones).
+     *
+     * @param log id of the room's {@link EventLog}
+     * @param seq sequence number of the last event broadcast in the room; a reconnecting client
+     *            passes log and the highest seq it saw
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record State(String roomCode, long round, boolean spotifyConnected, String genreName, String log, long seq)
+            implements GameEvent {
+        @Override
+        public String type() {
+            return "state";
+        }
+    }
+}
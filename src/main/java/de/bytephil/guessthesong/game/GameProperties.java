@@ -0,0 +1,163 @@
+package de.bytephil.guessthesong.game;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "game")
+public class GameProperties {
+
+    /**
+     * Room joined by clients that do not pass a join code.
+     */
+    private String defaultRoomCode = "LOBBY";
+
+    private int joinCodeLength = 6;
+
+    /**
+     * Rooms this node keeps at most; joins that would create another one are refused.
+     */
+    private int maxRooms = 1_000;
+
+    /**
+     * How long an empty room keeps its state (so reconnecting players find their game again).
+     */
+    private long roomIdleTimeoutMs = 30 * 60_000L;
+
+    /**
+     * Playback commands of a room arriving within this window after another are folded together (0 disables).
+     */
+    private long commandCoalesceWindowMs = 300;
+
+    /**
+     * How many of the most recent buzz-to-pause traces (all rooms) are kept for /stats/buzz.
+     */
+    private int buzzTraceCapacity = 512;
+
+    /**
+     * How many of its most recent frames a room keeps numbered for reconnecting clients; a client
+     * that missed more gets the full state instead.
+     */
+    private int eventLogCapacity = 64;
+
+    /**
+     * How long a room remembers the id of a handled command, so the same command sent again is not run twice.
+     */
+    private long commandDedupWindowMs = 10 * 60_000L;
+
+    /**
+     * How many command ids a room remembers at most (the oldest are forgotten first).
+     */
+    private int commandDedupCapacity = 256;
+
+    /**
+     * After the first buzz of a round, buzzes arriving within this window still win if they were
+     * pressed earlier (by the player's synchronized clock); 0 makes the first arrival win.
+     */
+    private long buzzAdjudicationWindowMs = 100;
+
+    /**
+     * Upper bound for how far back a buzz is dated from its receipt (it is also never dated back
+     * further than the player's measured round trip).
+     */
+    private long buzzMaxCompensationMs = 250;
+
+    /**
+     * How often the server re-measures every session's clock offset and round trip.
+     */
+    private long clockSyncIntervalMs = 30_000;
+
+    public String getDefaultRoomCode() {
+        return defaultRoomCode;
+    }
+
+    public void setDefaultRoomCode(String defaultRoomCode) {
+        this.defaultRoomCode = defaultRoomCode;
+    }
+
+    public int getJoinCodeLength() {
+        return joinCodeLength;
+    }
+
+    public void setJoinCodeLength(int joinCodeLength) {
+        this.joinCodeLength = joinCodeLength;
+    }
+
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    public void setMaxRooms(int maxRooms) {
+        this.maxRooms = maxRooms;
+    }
+
+    public long getRoomIdleTimeoutMs() {
+        return roomIdleTimeoutMs;
+    }
+
+    public void setRoomIdleTimeoutMs(long roomIdleTimeoutMs) {
+        this.roomIdleTimeoutMs = roomIdleTimeoutMs;
+    }
+
+    public long getCommandCoalesceWindowMs() {
+        return commandCoalesceWindowMs;
+    }
+
+    public void setCommandCoalesceWindowMs(long commandCoalesceWindowMs) {
+        this.commandCoalesceWindowMs = commandCoalesceWindowMs;
+    }
+
+    public int getBuzzTraceCapacity() {
+        return buzzTraceCapacity;
+    }
+
+    public void setBuzzTraceCapacity(int buzzTraceCapacity) {
+        this.buzzTraceCapacity = buzzTraceCapacity;
+    }
+
+    public int getEventLogCapacity() {
+        return eventLogCapacity;
+    }
+
+    public void setEventLogCapacity(int eventLogCapacity) {
+        this.eventLogCapacity = eventLogCapacity;
+    }
+
+    public long getCommandDedupWindowMs() {
+        return commandDedupWindowMs;
+    }
+
+    public void setCommandDedupWindowMs(long commandDedupWindowMs) {
+        this.commandDedupWindowMs = commandDedupWindowMs;
+    }
+
+    public int getCommandDedupCapacity() {
+        return commandDedupCapacity;
+    }
+
+    public void setCommandDedupCapacity(int commandDedupCapacity) {
+        this.commandDedupCapacity = commandDedupCapacity;
+    }
+
+    public long getBuzzAdjudicationWindowMs() {
+        return buzzAdjudicationWindowMs;
+    }
+
+    public void setBuzzAdjudicationWindowMs(long buzzAdjudicationWindowMs) {
+        this.buzzAdjudicationWindowMs = buzzAdjudicationWindowMs;
+    }
+
+    public long getBuzzMaxCompensationMs() {
+        return buzzMaxCompensationMs;
+    }
+
+    public void setBuzzMaxCompensationMs(long buzzMaxCompensationMs) {
+        this.buzzMaxCompensationMs = buzzMaxCompensationMs;
+    }
+
+    public long getClockSyncIntervalMs() {
+        return clockSyncIntervalMs;
+    }
+
+    public void setClockSyncIntervalMs(long clockSyncIntervalMs) {
+        this.clockSyncIntervalMs = clockSyncIntervalMs;
+    }
+}
@@ -0,0 +1,211 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * One party: its roster, its game state and the Spotify account it plays on.
+ *
+ * All state changes of a room happen on its lane (see {@link #execute(Runnable)}), so the
+ * game fields need no further locking; they are volatile only so other threads can read them.
+ * The one exception is the {@link Buzzer}, which is arbitrated lock-free on the receiving thread.
+ */
+public class Room {
+
+    private final String code;
+    private final SerialExecutor lane;
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+
+    private final Buzzer buzzer = new Buzzer();
+    private final CommandCoalescer coalescer = new CommandCoalescer();
+    private final EventLog eventLog;
+    private final CommandDedup commandDedup;
+
+    private volatile String selectedGenre;
+    private volatile GameEvent lastEvent;
+    private volatile JoinSnapshot joinSnapshot;
+    private volatile TrackDeck deck;
+
+    // HTTP session whose Spotify token this room plays on (if no global token is configured).
+    private volatile HttpSession spotifySession;
+
+    private volatile long emptySinceMs;
+
+    Room(String code, Executor laneExecutor, int eventLogCapacity, int commandDedupCapacity) {
+        this.code = code;
+        this.lane = new SerialExecutor("room-" + code, laneExecutor);
+        this.eventLog = new EventLog(eventLogCapacity);
+        this.commandDedup = new CommandDedup(commandDedupCapacity);
+        this.emptySinceMs = System.currentTimeMillis();
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Runs the task on this room's serialized lane.
+     */
+    public void execute(Runnable task) {
+        lane.execute(task);
+    }
+
+    public int queuedTasks() {
+        return lane.queuedTasks();
+    }
+
+    public Set<WebSocketSession> getSessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    /**
+     * A session is about to join: the room is not idle, even while its roster is still empty.
+     */
+    void reserve() {
+        emptySinceMs = 0;
+    }
+
+    void addSession(WebSocketSession session) {
+        sessions.add(session);
+        emptySinceMs = 0;
+    }
+
+    void removeSession(WebSocketSession session) {
+        sessions.remove(session);
+        if (sessions.isEmpty()) {
+            emptySinceMs = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Players on other nodes are active here: an empty room counts as idle from now on.
+     */
+    void markRemoteActivity() {
+        if (sessions.isEmpty()) {
+            emptySinceMs = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    long getEmptySinceMs() {
+        return emptySinceMs;
+    }
+
+    public Buzzer getBuzzer() {
+        return buzzer;
+    }
+
+    CommandCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * The winner of the current round, once its adjudication is settled.
+     */
+    public String getGuesserName() {
+        Buzzer.RoundState round = buzzer.current();
+        return round.settled() ? round.winner().playerName() : null;
+    }
+
+    /**
+     * Clears the guesser and opens the next buzzer round; returns the new round epoch.
+     */
+    public long newRound() {
+        return buzzer.newRound();
+    }
+
+    public String getSelectedGenre() {
+        return selectedGenre;
+    }
+
+    public void setSelectedGenre(String selectedGenre) {
+        this.selectedGenre = selectedGenre;
+    }
+
+    public GameEvent getLastEvent() {
+        return lastEvent;
+    }
+
+    /**
+     * The room's numbered broadcast frames, for clients resuming after a reconnect. Lane only.
+     */
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * The ids of the commands handled recently, so resent ones do not run twice. Lane only.
+     */
+    public CommandDedup getCommandDedup() {
+        return commandDedup;
+    }
+
+    /**
+     * Remembers the event for late joiners, appends its frame to the event log and drops the cached join frames.
+     *
+     * @param frame the encoded event, carrying {@code sequence}
+     */
+    public void recordEvent(GameEvent event, long sequence, TextMessage frame) {
+        eventLog.append(sequence, frame);
+        this.lastEvent = event;
+        this.joinSnapshot = null;
+    }
+
+    public JoinSnapshot getJoinSnapshot() {
+        return joinSnapshot;
+    }
+
+    public void setJoinSnapshot(JoinSnapshot joinSnapshot) {
+        this.joinSnapshot = joinSnapshot;
+    }
+
+    /**
+     * The frames a joining client receives, encoded once and reused until the state they were built from changes.
+     *
+     * @param replayFrame the enriched last event, or null if nothing happened yet
+     */
+    public record JoinSnapshot(GameEvent basedOn, long round, boolean spotifyConnected, TextMessage stateFrame,
+            TextMessage replayFrame) {
+
+        public boolean isCurrent(GameEvent lastEvent, long round, boolean spotifyConnected) {
+            return basedOn == lastEvent && this.round == round && this.spotifyConnected == spotifyConnected;
+        }
+    }
+
+    /**
+     * The deck of the playlist the current game plays from, or null outside playlist mode.
+     */
+    public TrackDeck getDeck() {
+        return deck;
+    }
+
+    /**
+     * The room's deck for the playlist; a new one if the game switched playlists.
+     */
+    public TrackDeck deckFor(String playlistUri) {
+        TrackDeck current = deck;
+        if (current == null || !current.getPlaylistUri().equals(playlistUri)) {
+            current = new TrackDeck(playlistUri);
+            deck = current;
+        }
+        return current;
+    }
+
+    public HttpSession getSpotifySession() {
+        return spotifySession;
+    }
+
+    public void setSpotifySession(HttpSession spotifySession) {
+        this.spotifySession = spotifySession;
+    }
+}
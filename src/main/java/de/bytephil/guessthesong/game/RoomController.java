@@ -0,0 +1,57 @@
+package de.bytephil.guessthesong.game;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import de.bytephil.guessthesong.cluster.RoomOwnership;
+
+@RestController
+public class RoomController {
+
+    private final RoomRegistry roomRegistry;
+    private final RoomOwnership ownership;
+
+    public RoomController(RoomRegistry roomRegistry, RoomOwnership ownership) {
+        this.roomRegistry = roomRegistry;
+        this.ownership = ownership;
+    }
+
+    @PostMapping("/rooms")
+    public Object create() {
+        Room room = roomRegistry.create();
+        if (room == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(java.util.Map.of("error", "too_many_rooms"));
+        }
+        return java.util.Map.of("code", room.getCode(), "owner", ownership.ownerOf(room.getCode()));
+    }
+
+    @GetMapping("/rooms/{code}")
+    public ResponseEntity<?> get(@PathVariable("code") String code) {
+        Room room = roomRegistry.get(code);
+        if (room == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(java.util.Map.of("error", "unknown_room"));
+        }
+        if (!ownership.isLocal(room.getCode())) {
+            // Only the owner knows the game state.
+            return ResponseEntity.ok(java.util.Map.of(
+                    "code", room.getCode(),
+                    "owner", ownership.ownerOf(room.getCode()),
+                    "players", room.getSessions().size()));
+        }
+        Buzzer.RoundState round = room.getBuzzer().current();
+        return ResponseEntity.ok(java.util.Map.of(
+                "code", room.getCode(),
+                "owner", ownership.getLocalNodeId(),
+                "players", room.getSessions().size(),
+                "round", round.epoch(),
+                "guesser", round.settled() && round.winner().playerName() != null
+                        ? round.winner().playerName() : "",
+                "runnerUpMarginMicros", round.runnerUpMarginNanos() >= 0 ? round.runnerUpMarginNanos() / 1_000 : -1));
+    }
+}
@@ -0,0 +1,227 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * All rooms with players on this node (owned here or relayed, see {@code RoomRelay}), keyed by join code.
+ */
+@Component
+public class RoomRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomRegistry.class);
+
+    // No 0/O and 1/I so codes can be read out loud. Sorted, for the binary search in isValidCode.
+    private static final char[] JOIN_CODE_ALPHABET = "23456789ABCDEFGHJKLMNPQRSTUVWXYZ".toCharArray();
+
+    private final GameProperties properties;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final ExecutorService laneExecutor;
+
+    @Autowired
+    public RoomRegistry(GameProperties properties, BlockingExecutors executors) {
+        this(properties, executors.newExecutor("room-lane-"));
+    }
+
+    /**
+     * With the given executor behind the room lanes (benchmarks run them on the caller's thread).
+     */
+    public RoomRegistry(GameProperties properties, ExecutorService laneExecutor) {
+        this.properties = properties;
+        this.laneExecutor = laneExecutor;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        laneExecutor.shutdownNow();
+    }
+
+    public static String normalizeCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        String trimmed = code.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        return trimmed.toUpperCase(Locale.ROOT);
+    }
+
+    public String defaultRoomCode() {
+        return normalizeCode(properties.getDefaultRoomCode());
+    }
+
+    /**
+     * Whether the (normalized) code can name a room: the default room's code, or a code as
+     * {@link #create()} makes them. Anything else never reaches logs, lane names or cluster topics.
+     */
+    public boolean isValidCode(String normalized) {
+        if (normalized == null) {
+            return false;
+        }
+        if (normalized.equals(defaultRoomCode())) {
+            return true;
+        }
+        if (normalized.length() != joinCodeLength()) {
+            return false;
+        }
+        for (int i = 0; i < normalized.length(); i++) {
+            if (Arrays.binarySearch(JOIN_CODE_ALPHABET, normalized.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Room get(String code) {
+        String normalized = normalizeCode(code);
+        return normalized != null ? rooms.get(normalized) : null;
+    }
+
+    public Collection<Room> getRooms() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+
+    /**
+     * Creates a room with a fresh, unused join code; null if this node has {@code game.max-rooms} already.
+     */
+    public Room create() {
+        while (true) {
+            if (rooms.size() >= properties.getMaxRooms()) {
+                logger.warn("Room not created: {} rooms open", rooms.size());
+                return null;
+            }
+            String code = randomCode();
+            Room room = newRoom(code);
+            if (rooms.putIfAbsent(code, room) == null) {
+                logger.info("Room {} created", code);
+                return room;
+            }
+        }
+    }
+
+    /**
+     * Adds the session to the room with the given code (the default room if blank), creating it on demand.
+     *
+     * The session enters the roster on the room's lane, right before {@code onJoined} runs there, so
+     * it receives every broadcast after its welcome and none before it.
+     *
+     * @return the room, or null if the code is not a valid join code or the room would be one too many
+     */
+    public Room join(String code, WebSocketSession session, Consumer<Room> onJoined) {
+        String normalized = normalizeCode(code);
+        if (normalized == null) {
+            normalized = defaultRoomCode();
+        }
+        if (!isValidCode(normalized)) {
+            return null;
+        }
+        // compute() makes join and idle eviction of the same code mutually exclusive; the room is
+        // kept from eviction until the session has entered it.
+        Room room = rooms.compute(normalized, (k, existing) -> {
+            if (existing == null && rooms.size() >= properties.getMaxRooms()) {
+                return null;
+            }
+            Room r = existing != null ? existing : newRoom(k);
+            r.reserve();
+            return r;
+        });
+        if (room == null) {
+            logger.warn("Room {} not created: {} rooms open", normalized, rooms.size());
+            return null;
+        }
+        room.execute(() -> {
+            room.addSession(session);
+            onJoined.accept(room);
+        });
+        return room;
+    }
+
+    /**
+     * The room with the given code for players connected to other nodes, created on demand; keeps
+     * it from being evicted as idle while they play.
+     *
+     * @return the room, or null if the code is not a valid join code or the room would be one too many
+     */
+    public Room host(String code) {
+        String normalized = normalizeCode(code);
+        if (normalized == null || !isValidCode(normalized)) {
+            return null;
+        }
+        return rooms.compute(normalized, (k, existing) -> {
+            if (existing == null && rooms.size() >= properties.getMaxRooms()) {
+                return null;
+            }
+            Room room = existing != null ? existing : newRoom(k);
+            room.markRemoteActivity();
+            return room;
+        });
+    }
+
+    /**
+     * Removes the session from the room, on the room's lane (after its join).
+     */
+    public void leave(Room room, WebSocketSession session) {
+        room.execute(() -> {
+            // Under the map's per-key lock, so eviction never races a half-updated roster.
+            rooms.compute(room.getCode(), (k, existing) -> {
+                room.removeSession(session);
+                return existing;
+            });
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${game.room-sweep-interval-ms:60000}")
+    void evictIdleRooms() {
+        long cutoff = System.currentTimeMillis() - properties.getRoomIdleTimeoutMs();
+        for (Room room : rooms.values()) {
+            rooms.computeIfPresent(room.getCode(), (k, existing) -> {
+                long emptySince = existing.getEmptySinceMs();
+                if (existing.isEmpty() && emptySince > 0 && emptySince < cutoff) {
+                    logger.info("Room {} evicted (idle)", k);
+                    return null;
+                }
+                return existing;
+            });
+        }
+    }
+
+    private Room newRoom(String code) {
+        return new Room(code, laneExecutor, properties.getEventLogCapacity(), properties.getCommandDedupCapacity());
+    }
+
+    private int joinCodeLength() {
+        return Math.max(4, properties.getJoinCodeLength());
+    }
+
+    private String randomCode() {
+        int length = joinCodeLength();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = JOIN_CODE_ALPHABET[random.nextInt(JOIN_CODE_ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+}
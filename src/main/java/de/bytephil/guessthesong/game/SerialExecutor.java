@@ -0,0 +1,76 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs submitted tasks one at a time, in submission order, on a shared delegate executor.
+ *
+ * Many lanes can share one thread pool: a lane only occupies a thread while it has queued work,
+ * and no lock is shared between lanes.
+ */
+public class SerialExecutor implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+    // Upper bound of tasks drained per turn, so one busy lane cannot monopolize a pool thread.
+    private static final int MAX_TASKS_PER_TURN = 64;
+
+    private final String name;
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public SerialExecutor(String name, Executor delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        scheduleIfIdle();
+    }
+
+    public int queuedTasks() {
+        return tasks.size();
+    }
+
+    private void scheduleIfIdle() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(this::drain);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    logger.warn("Lane {} -> task failed", name, t);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // A task may have been added after the last poll but before the flag was cleared.
+            if (!tasks.isEmpty()) {
+                scheduleIfIdle();
+            }
+        }
+    }
+}
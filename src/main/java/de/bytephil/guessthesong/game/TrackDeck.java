@@ -0,0 +1,125 @@
+package de.bytephil.guessthesong.game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A room's shuffled, repeat-free run through one playlist.
+ *
+ * Every track is drawn once before any track comes up again; when the deck runs out it is
+ * reshuffled, making sure the last song of the old cycle does not open the new one. Reloading the
+ * deck with a newer playlist snapshot keeps the tracks already played in the current cycle out.
+ */
+public class TrackDeck {
+
+    private final String playlistUri;
+    private final Random random;
+
+    // Guards the fields below; decks are used from Spotify commands, which may run on virtual threads.
+    private final ReentrantLock lock = new ReentrantLock();
+    private String snapshotId;
+    private List<String> tracks = List.of();
+    private final List<String> remaining = new ArrayList<>();
+    private final Set<String> played = new HashSet<>();
+    private String last;
+
+    public TrackDeck(String playlistUri) {
+        this(playlistUri, ThreadLocalRandom.current());
+    }
+
+    TrackDeck(String playlistUri, Random random) {
+        this.playlistUri = playlistUri;
+        this.random = random;
+    }
+
+    public String getPlaylistUri() {
+        return playlistUri;
+    }
+
+    public String getSnapshotId() {
+        lock.lock();
+        try {
+            return snapshotId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        lock.lock();
+        try {
+            return !tracks.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int remaining() {
+        lock.lock();
+        try {
+            return remaining.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the playlist's tracks; a no-op if the snapshot did not change.
+     */
+    public void load(String snapshotId, List<String> trackUris) {
+        lock.lock();
+        try {
+            if (snapshotId != null && Objects.equals(this.snapshotId, snapshotId) && !tracks.isEmpty()) {
+                return;
+            }
+            this.snapshotId = snapshotId;
+            this.tracks = List.copyOf(new LinkedHashSet<>(trackUris));
+            played.retainAll(tracks);
+            remaining.clear();
+            for (String uri : tracks) {
+                if (!played.contains(uri)) {
+                    remaining.add(uri);
+                }
+            }
+            Collections.shuffle(remaining, random);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The next track to play, or null if the deck is empty.
+     */
+    public String next() {
+        lock.lock();
+        try {
+            if (tracks.isEmpty()) {
+                return null;
+            }
+            if (remaining.isEmpty()) {
+                played.clear();
+                remaining.addAll(tracks);
+                Collections.shuffle(remaining, random);
+                // Drawn from the end: keep the previous cycle's last track from coming straight back.
+                int end = remaining.size() - 1;
+                if (end > 0 && remaining.get(end).equals(last)) {
+                    Collections.swap(remaining, end, random.nextInt(end));
+                }
+            }
+            String uri = remaining.remove(remaining.size() - 1);
+            played.add(uri);
+            last = uri;
+            return uri;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
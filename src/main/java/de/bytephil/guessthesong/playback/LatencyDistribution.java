@@ -0,0 +1,45 @@
+package de.bytephil.guessthesong.playback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+/**
+ * Response time of one simulated call.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    long sampleNanos(RandomGenerator random);
+
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    static LatencyDistribution fixed(long millis) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return random -> nanos;
+    }
+
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        long min = TimeUnit.MILLISECONDS.toNanos(minMillis);
+        long max = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        if (max <= min) {
+            return random -> min;
+        }
+        return random -> random.nextLong(min, max + 1);
+    }
+
+    /**
+     * Log-normal, the usual shape of HTTP response times: most calls near the median, a long tail
+     * up to (and, one in a hundred, beyond) the given 99th percentile.
+     */
+    static LatencyDistribution logNormal(long medianMillis, long p99Millis) {
+        if (medianMillis <= 0) {
+            return none();
+        }
+        double mu = Math.log(TimeUnit.MILLISECONDS.toNanos(medianMillis));
+        // 2.3263: z-score of the 99th percentile of the standard normal distribution.
+        double sigma = p99Millis > medianMillis ? Math.log((double) p99Millis / medianMillis) / 2.3263 : 0;
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+}
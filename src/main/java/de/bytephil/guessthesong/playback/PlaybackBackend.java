@@ -0,0 +1,24 @@
+package de.bytephil.guessthesong.playback;
+
+import de.bytephil.guessthesong.spotify.SpotifyAccount;
+
+/**
+ * Hands out the {@link PlaybackController} of an account. Selected with {@code playback.backend}:
+ * {@code spotify} (default) or {@code simulated}.
+ */
+public interface PlaybackBackend {
+
+    /**
+     * The account's controller, or null if the account cannot play (e.g. no usable token).
+     * Called on the account's command queue; may refresh tokens.
+     */
+    PlaybackController controllerFor(SpotifyAccount account);
+
+    /**
+     * An account the backend provides for the room by itself, without a connected Spotify login;
+     * null (the default) if rooms have to bring their own.
+     */
+    default SpotifyAccount accountForRoom(String roomCode) {
+        return null;
+    }
+}
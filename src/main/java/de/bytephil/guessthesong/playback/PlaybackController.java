@@ -0,0 +1,59 @@
+package de.bytephil.guessthesong.playback;
+
+import java.util.List;
+
+import de.bytephil.guessthesong.spotify.PlaybackState;
+
+/**
+ * The playback operations the game engine needs from one account's player, independent of who
+ * plays the music (Spotify, or the {@link SimulatedPlaybackBackend} in load tests).
+ *
+ * All methods block for the duration of the call, so they are only used from a command queue.
+ * A backend that rate limits the caller throws
+ * {@link se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException}, which the queue
+ * turns into back-off for the account.
+ */
+public interface PlaybackController {
+
+    /**
+     * One page of a playlist's playable tracks.
+     *
+     * @param nextOffset offset of the next page, or -1 if this was the last one
+     */
+    record TrackPage(List<String> uris, int nextOffset) {
+    }
+
+    /**
+     * Full playback snapshot: track, progress, device and the actions currently allowed.
+     */
+    PlaybackState getState() throws Exception;
+
+    /**
+     * Just the current track and progress (no device information).
+     */
+    PlaybackState getCurrentTrack() throws Exception;
+
+    void playContext(String contextUri) throws Exception;
+
+    void playUris(List<String> trackUris) throws Exception;
+
+    void pause() throws Exception;
+
+    void resume() throws Exception;
+
+    void skip() throws Exception;
+
+    void setVolume(int percent) throws Exception;
+
+    void setShuffle(boolean shuffle) throws Exception;
+
+    /**
+     * The playlist's current {@code snapshot_id}; changes whenever its tracks change.
+     */
+    String playlistSnapshotId(String playlistId) throws Exception;
+
+    /**
+     * One page (one request) of the playlist's playable track URIs, in playlist order, from {@code offset}.
+     */
+    TrackPage playlistTracks(String playlistId, int offset) throws Exception;
+}
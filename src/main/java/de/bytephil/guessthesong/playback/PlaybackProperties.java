@@ -0,0 +1,146 @@
+package de.bytephil.guessthesong.playback;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "playback")
+public class PlaybackProperties {
+
+    /**
+     * Who plays the music: {@code spotify}, or {@code simulated} for load tests without network.
+     */
+    private String backend = "spotify";
+
+    private final Simulated simulated = new Simulated();
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    public Simulated getSimulated() {
+        return simulated;
+    }
+
+    /**
+     * Behaviour of the simulated backend. Latencies are log-normal with the given median and 99th percentile.
+     */
+    public static class Simulated {
+
+        /**
+         * Advance a virtual clock by the simulated latency instead of waiting it out.
+         */
+        private boolean virtualClock = false;
+
+        private long readLatencyMedianMs = 80;
+        private long readLatencyP99Ms = 400;
+        private long writeLatencyMedianMs = 150;
+        private long writeLatencyP99Ms = 800;
+
+        /**
+         * Share of calls answered with 429, on top of {@link #rateLimitPerSecond}.
+         */
+        private double rateLimitProbability = 0;
+
+        /**
+         * Calls per account and second before answering 429 (0 disables).
+         */
+        private int rateLimitPerSecond = 0;
+
+        private int retryAfterSeconds = 1;
+
+        private int playlistSize = 50;
+        private long trackDurationMs = 180_000;
+        private long seed = 42;
+
+        public boolean isVirtualClock() {
+            return virtualClock;
+        }
+
+        public void setVirtualClock(boolean virtualClock) {
+            this.virtualClock = virtualClock;
+        }
+
+        public long getReadLatencyMedianMs() {
+            return readLatencyMedianMs;
+        }
+
+        public void setReadLatencyMedianMs(long readLatencyMedianMs) {
+            this.readLatencyMedianMs = readLatencyMedianMs;
+        }
+
+        public long getReadLatencyP99Ms() {
+            return readLatencyP99Ms;
+        }
+
+        public void setReadLatencyP99Ms(long readLatencyP99Ms) {
+            this.readLatencyP99Ms = readLatencyP99Ms;
+        }
+
+        public long getWriteLatencyMedianMs() {
+            return writeLatencyMedianMs;
+        }
+
+        public void setWriteLatencyMedianMs(long writeLatencyMedianMs) {
+            this.writeLatencyMedianMs = writeLatencyMedianMs;
+        }
+
+        public long getWriteLatencyP99Ms() {
+            return writeLatencyP99Ms;
+        }
+
+        public void setWriteLatencyP99Ms(long writeLatencyP99Ms) {
+            this.writeLatencyP99Ms = writeLatencyP99Ms;
+        }
+
+        public double getRateLimitProbability() {
+            return rateLimitProbability;
+        }
+
+        public void setRateLimitProbability(double rateLimitProbability) {
+            this.rateLimitProbability = rateLimitProbability;
+        }
+
+        public int getRateLimitPerSecond() {
+            return rateLimitPerSecond;
+        }
+
+        public void setRateLimitPerSecond(int rateLimitPerSecond) {
+            this.rateLimitPerSecond = rateLimitPerSecond;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public void setRetryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getPlaylistSize() {
+            return playlistSize;
+        }
+
+        public void setPlaylistSize(int playlistSize) {
+            this.playlistSize = playlistSize;
+        }
+
+        public long getTrackDurationMs() {
+            return trackDurationMs;
+        }
+
+        public void setTrackDurationMs(long trackDurationMs) {
+            this.trackDurationMs = trackDurationMs;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public void setSeed(long seed) {
+            this.seed = seed;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.bytephil.guessthesong.playback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time source of the simulated backend. The system clock really waits out simulated latency; the
+ * virtual clock just advances by it, so a load test covers hours of Spotify round trips in seconds.
+ */
+public abstract class SimulatedClock {
+
+    public abstract long nanoTime();
+
+    /**
+     * Lets the given time pass.
+     */
+    public abstract void sleep(long nanos) throws InterruptedException;
+
+    public long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime());
+    }
+
+    public static SimulatedClock system() {
+        return SystemClock.INSTANCE;
+    }
+
+    public static Virtual virtual() {
+        return new Virtual();
+    }
+
+    private static final class SystemClock extends SimulatedClock {
+
+        static final SystemClock INSTANCE = new SystemClock();
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    /**
+     * Starts at zero and only moves when someone sleeps or calls {@link #advance(long)}. Sleeps of
+     * concurrent callers add up, as if all calls went through one connection.
+     */
+    public static final class Virtual extends SimulatedClock {
+
+        private final AtomicLong now = new AtomicLong();
+
+        @Override
+        public long nanoTime() {
+            return now.get();
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            advance(nanos);
+        }
+
+        public void advance(long nanos) {
+            if (nanos > 0) {
+                now.addAndGet(nanos);
+            }
+        }
+    }
+}
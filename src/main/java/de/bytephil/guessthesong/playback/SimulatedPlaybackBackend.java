@@ -0,0 +1,327 @@
+package de.bytephil.guessthesong.playback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import de.bytephil.guessthesong.spotify.PlaybackState;
+import de.bytephil.guessthesong.spotify.SpotifyAccount;
+import se.michaelthelin.spotify.enums.Action;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+/**
+ * An in-process stand-in for Spotify: one simulated player per account, answering after a sampled
+ * latency, and with 429s injected at random and/or above a per-second call rate.
+ *
+ * Every room gets its own simulated account (see {@link #accountForRoom(String)}), so the whole game
+ * engine can be driven without a Spotify login or network. Playlists are generated: any playlist id
+ * has {@code playback.simulated.playlist-size} tracks.
+ */
+@Component
+@ConditionalOnProperty(prefix = "playback", name = "backend", havingValue = "simulated")
+public class SimulatedPlaybackBackend implements PlaybackBackend {
+
+    public enum Call {
+        GET_STATE,
+        GET_CURRENT_TRACK,
+        PLAY_CONTEXT,
+        PLAY_URIS,
+        PAUSE,
+        RESUME,
+        SKIP,
+        SET_VOLUME,
+        SET_SHUFFLE,
+        PLAYLIST_SNAPSHOT,
+        PLAYLIST_TRACKS;
+
+        boolean isWrite() {
+            return this != GET_STATE && this != GET_CURRENT_TRACK && this != PLAYLIST_SNAPSHOT
+                    && this != PLAYLIST_TRACKS;
+        }
+    }
+
+    private static final String ACCOUNT_PREFIX = "simulated:";
+    private static final String PLAYLIST_URI_PREFIX = "spotify:playlist:";
+
+    // Tracks per playlist page, as the Web API serves them.
+    private static final int PAGE_SIZE = 100;
+    private static final String TRACK_URI_PREFIX = "spotify:track:";
+
+    private final PlaybackProperties.Simulated settings;
+    private final SimulatedClock clock;
+    private final LatencyDistribution readLatency;
+    private final LatencyDistribution writeLatency;
+    private final Random random;
+    private final Map<String, Player> players = new ConcurrentHashMap<>();
+
+    private final Map<Call, AtomicLong> calls = new EnumMap<>(Call.class);
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    @Autowired
+    public SimulatedPlaybackBackend(PlaybackProperties properties) {
+        this(properties.getSimulated(),
+                properties.getSimulated().isVirtualClock() ? SimulatedClock.virtual() : SimulatedClock.system(),
+                LatencyDistribution.logNormal(properties.getSimulated().getReadLatencyMedianMs(),
+                        properties.getSimulated().getReadLatencyP99Ms()),
+                LatencyDistribution.logNormal(properties.getSimulated().getWriteLatencyMedianMs(),
+                        properties.getSimulated().getWriteLatencyP99Ms()));
+    }
+
+    public SimulatedPlaybackBackend(PlaybackProperties.Simulated settings, SimulatedClock clock,
+            LatencyDistribution readLatency, LatencyDistribution writeLatency) {
+        this.settings = settings;
+        this.clock = clock;
+        this.readLatency = readLatency;
+        this.writeLatency = writeLatency;
+        this.random = new Random(settings.getSeed());
+        for (Call call : Call.values()) {
+            calls.put(call, new AtomicLong());
+        }
+    }
+
+    @Override
+    public PlaybackController controllerFor(SpotifyAccount account) {
+        return players.computeIfAbsent(account.key(), k -> new Player());
+    }
+
+    @Override
+    public SpotifyAccount accountForRoom(String roomCode) {
+        return new SpotifyAccount(ACCOUNT_PREFIX + roomCode, null);
+    }
+
+    public SimulatedClock getClock() {
+        return clock;
+    }
+
+    public long getCalls(Call call) {
+        return calls.get(call).get();
+    }
+
+    public long getCalls() {
+        long total = 0;
+        for (AtomicLong n : calls.values()) {
+            total += n.get();
+        }
+        return total;
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public static List<String> playlistTracks(String playlistId, int size) {
+        List<String> uris = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            uris.add(TRACK_URI_PREFIX + playlistId + "-" + i);
+        }
+        return uris;
+    }
+
+    /**
+     * One account's player. Playback moves on with the simulated clock: a playing track ends after
+     * {@code track-duration-ms} and the next one of the queue starts.
+     */
+    private final class Player implements PlaybackController {
+
+        // Guarded by this.
+        private List<String> queue = List.of();
+        private int index;
+        private boolean playing;
+        private long positionMs;
+        private long positionAtMs;
+        private int volume = 100;
+        private boolean shuffle;
+        private long windowStartMs;
+        private int windowCalls;
+
+        @Override
+        public PlaybackState getState() throws Exception {
+            call(Call.GET_STATE);
+            return snapshot(true);
+        }
+
+        @Override
+        public PlaybackState getCurrentTrack() throws Exception {
+            call(Call.GET_CURRENT_TRACK);
+            return snapshot(false);
+        }
+
+        @Override
+        public void playContext(String contextUri) throws Exception {
+            call(Call.PLAY_CONTEXT);
+            String playlistId = contextUri.startsWith(PLAYLIST_URI_PREFIX)
+                    ? contextUri.substring(PLAYLIST_URI_PREFIX.length())
+                    : contextUri;
+            List<String> tracks = SimulatedPlaybackBackend.playlistTracks(playlistId, settings.getPlaylistSize());
+            synchronized (this) {
+                if (shuffle) {
+                    tracks = new ArrayList<>(tracks);
+                    Collections.shuffle(tracks, random);
+                }
+                start(tracks);
+            }
+        }
+
+        @Override
+        public void playUris(List<String> trackUris) throws Exception {
+            call(Call.PLAY_URIS);
+            synchronized (this) {
+                start(List.copyOf(trackUris));
+            }
+        }
+
+        @Override
+        public void pause() throws Exception {
+            call(Call.PAUSE);
+            synchronized (this) {
+                long now = clock.millis();
+                settle(now);
+                positionMs = progressAt(now);
+                positionAtMs = now;
+                playing = false;
+            }
+        }
+
+        @Override
+        public void resume() throws Exception {
+            call(Call.RESUME);
+            synchronized (this) {
+                long now = clock.millis();
+                settle(now);
+                if (index >= queue.size()) {
+                    throw new NotFoundException("Player command failed: No active device found");
+                }
+                positionMs = progressAt(now);
+                positionAtMs = now;
+                playing = true;
+            }
+        }
+
+        @Override
+        public void skip() throws Exception {
+            call(Call.SKIP);
+            synchronized (this) {
+                long now = clock.millis();
+                settle(now);
+                if (index < queue.size()) {
+                    index = (index + 1) % queue.size();
+                    positionMs = 0;
+                    positionAtMs = now;
+                }
+            }
+        }
+
+        @Override
+        public void setVolume(int percent) throws Exception {
+            call(Call.SET_VOLUME);
+            synchronized (this) {
+                volume = Math.max(0, Math.min(100, percent));
+            }
+        }
+
+        @Override
+        public void setShuffle(boolean shuffle) throws Exception {
+            call(Call.SET_SHUFFLE);
+            synchronized (this) {
+                this.shuffle = shuffle;
+            }
+        }
+
+        @Override
+        public String playlistSnapshotId(String playlistId) throws Exception {
+            call(Call.PLAYLIST_SNAPSHOT);
+            return "simulated-" + settings.getPlaylistSize();
+        }
+
+        @Override
+        public TrackPage playlistTracks(String playlistId, int offset) throws Exception {
+            call(Call.PLAYLIST_TRACKS);
+            List<String> tracks = SimulatedPlaybackBackend.playlistTracks(playlistId, settings.getPlaylistSize());
+            int end = Math.min(tracks.size(), offset + PAGE_SIZE);
+            return new TrackPage(tracks.subList(Math.min(offset, end), end), end < tracks.size() ? end : -1);
+        }
+
+        /**
+         * Counts the call, injects 429s and lets the sampled latency pass.
+         */
+        private void call(Call call) throws TooManyRequestsException, InterruptedException {
+            calls.get(call).incrementAndGet();
+            if (isRateLimited()) {
+                rateLimited.incrementAndGet();
+                throw new TooManyRequestsException("API rate limit exceeded", settings.getRetryAfterSeconds());
+            }
+            LatencyDistribution latency = call.isWrite() ? writeLatency : readLatency;
+            clock.sleep(latency.sampleNanos(random));
+        }
+
+        private synchronized boolean isRateLimited() {
+            if (settings.getRateLimitProbability() > 0 && random.nextDouble() < settings.getRateLimitProbability()) {
+                return true;
+            }
+            if (settings.getRateLimitPerSecond() <= 0) {
+                return false;
+            }
+            long now = clock.millis();
+            if (now - windowStartMs >= 1_000) {
+                windowStartMs = now;
+                windowCalls = 0;
+            }
+            return ++windowCalls > settings.getRateLimitPerSecond();
+        }
+
+        private void start(List<String> tracks) {
+            queue = tracks;
+            index = 0;
+            positionMs = 0;
+            positionAtMs = clock.millis();
+            playing = !tracks.isEmpty();
+        }
+
+        /**
+         * Moves past the tracks that have ended since the last call.
+         */
+        private void settle(long now) {
+            long duration = settings.getTrackDurationMs();
+            while (playing && index < queue.size() && positionMs + (now - positionAtMs) >= duration) {
+                positionAtMs += duration - positionMs;
+                positionMs = 0;
+                index++;
+                if (index >= queue.size()) {
+                    playing = false;
+                }
+            }
+        }
+
+        private long progressAt(long now) {
+            return playing ? positionMs + (now - positionAtMs) : positionMs;
+        }
+
+        private synchronized PlaybackState snapshot(boolean withDevice) {
+            long now = clock.millis();
+            settle(now);
+            long fetchedAtMs = System.currentTimeMillis();
+            if (index >= queue.size()) {
+                return new PlaybackState(null, null, null, "", null, null, null, Collections.emptySet(), false,
+                        fetchedAtMs);
+            }
+            String uri = queue.get(index);
+            String id = uri.substring(uri.lastIndexOf(':') + 1);
+            Set<Action> disallowed = Collections.unmodifiableSet(EnumSet.of(playing ? Action.RESUMING : Action.PAUSING));
+            return new PlaybackState(playing, uri, "Simulated song " + id, "Simulated artist", null,
+                    (int) progressAt(now), (int) settings.getTrackDurationMs(), disallowed, withDevice,
+                    fetchedAtMs);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import se.michaelthelin.spotify.enums.Action;
+import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlaying;
+import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
+import se.michaelthelin.spotify.model_objects.miscellaneous.Device;
+import se.michaelthelin.spotify.model_objects.special.Actions;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Disallows;
+import se.michaelthelin.spotify.model_objects.specification.Image;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+/**
+ * Immutable snapshot of an account's playback, as far as the game needs it.
+ *
+ * @param playing null if unknown (e.g. no active device)
+ * @param progressMs position in the track at {@code fetchedAtMs}, or null
+ */
+public record PlaybackState(
+        Boolean playing,
+        String trackUri,
+        String songTitle,
+        String artistsText,
+        String albumImageUrl,
+        Integer progressMs,
+        Integer durationMs,
+        Set<Action> disallowedActions,
+        boolean supportsVolume,
+        long fetchedAtMs) {
+
+    /**
+     * Nothing known: every action is allowed, as if Spotify returned no playback.
+     */
+    public static final PlaybackState UNKNOWN = new PlaybackState(null, null, null, "", null, null, null,
+            Collections.emptySet(), false, 0);
+
+    public static PlaybackState from(CurrentlyPlayingContext playback, long nowMs) {
+        if (playback == null) {
+            return new PlaybackState(null, null, null, "", null, null, null, Collections.emptySet(), false, nowMs);
+        }
+
+        Track track = playback.getItem() instanceof Track t ? t : null;
+        Device device = playback.getDevice();
+        return new PlaybackState(
+                playback.getIs_playing(),
+                track != null ? track.getUri() : null,
+                track != null ? track.getName() : null,
+                track != null ? artistsToText(track.getArtists()) : "",
+                firstAlbumImageUrl(track),
+                playback.getProgress_ms(),
+                track != null ? track.getDurationMs() : null,
+                disallowedActions(playback.getActions()),
+                device != null && Boolean.TRUE.equals(device.getSupports_volume()),
+                nowMs);
+    }
+
+    /**
+     * From the lighter currently-playing read: no device, so volume support is unknown (false).
+     */
+    public static PlaybackState from(CurrentlyPlaying playing, long nowMs) {
+        if (playing == null) {
+            return new PlaybackState(null, null, null, "", null, null, null, Collections.emptySet(), false, nowMs);
+        }
+
+        Track track = playing.getItem() instanceof Track t ? t : null;
+        return new PlaybackState(
+                playing.getIs_playing(),
+                track != null ? track.getUri() : null,
+                track != null ? track.getName() : null,
+                track != null ? artistsToText(track.getArtists()) : "",
+                firstAlbumImageUrl(track),
+                playing.getProgress_ms(),
+                track != null ? track.getDurationMs() : null,
+                disallowedActions(playing.getActions()),
+                false,
+                nowMs);
+    }
+
+    public boolean canPause() {
+        return !disallowedActions.contains(Action.PAUSING);
+    }
+
+    public boolean canResume() {
+        return !disallowedActions.contains(Action.RESUMING);
+    }
+
+    public long ageMs(long nowMs) {
+        return nowMs - fetchedAtMs;
+    }
+
+    /**
+     * Whether the track in this snapshot is still the one playing: true while paused, or while
+     * playing and the track cannot have ended since the snapshot was taken.
+     */
+    public boolean isTrackCurrent(long nowMs) {
+        if (trackUri == null) {
+            return false;
+        }
+        if (Boolean.FALSE.equals(playing)) {
+            return true;
+        }
+        if (progressMs == null || durationMs == null) {
+            return false;
+        }
+        return progressMs + ageMs(nowMs) < durationMs;
+    }
+
+    /**
+     * The state after we paused or resumed playback ourselves; progress is carried forward, and
+     * Spotify's pausing/resuming disallow (it always disallows the one that matches the state) flips.
+     */
+    public PlaybackState withPlaying(boolean nowPlaying, long nowMs) {
+        Integer progress = progressMs;
+        if (progress != null && Boolean.TRUE.equals(playing)) {
+            progress = (int) Math.min(Integer.MAX_VALUE, progress + ageMs(nowMs));
+        }
+        Set<Action> disallowed = disallowedActions;
+        if (disallowed.contains(Action.PAUSING) || disallowed.contains(Action.RESUMING)) {
+            EnumSet<Action> flipped = EnumSet.copyOf(disallowed);
+            flipped.remove(Action.PAUSING);
+            flipped.remove(Action.RESUMING);
+            flipped.add(nowPlaying ? Action.RESUMING : Action.PAUSING);
+            disallowed = Collections.unmodifiableSet(flipped);
+        }
+        return new PlaybackState(nowPlaying, trackUri, songTitle, artistsText, albumImageUrl, progress, durationMs,
+                disallowed, supportsVolume, nowMs);
+    }
+
+    private static Set<Action> disallowedActions(Actions actions) {
+        if (actions == null) {
+            return Collections.emptySet();
+        }
+        Disallows disallows = actions.getDisallows();
+        if (disallows == null || disallows.getDisallowedActions() == null
+                || disallows.getDisallowedActions().isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(EnumSet.copyOf(disallows.getDisallowedActions()));
+    }
+
+    public static String artistsToText(ArtistSimplified[] artists) {
+        if (artists == null || artists.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (ArtistSimplified a : artists) {
+            if (a == null || a.getName() == null || a.getName().isBlank()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(a.getName());
+        }
+        return sb.toString();
+    }
+
+    public static String firstAlbumImageUrl(Track track) {
+        if (track == null || track.getAlbum() == null) {
+            return null;
+        }
+        Image[] images = track.getAlbum().getImages();
+        if (images == null || images.length == 0 || images[0] == null) {
+            return null;
+        }
+        return images[0].getUrl();
+    }
+}
@@ -0,0 +1,175 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-account {@link PlaybackState}, kept fresh by a background poller so game handlers can read
+ * playback without a Spotify round trip and only go to Spotify to write.
+ *
+ * Accounts are polled every {@code spotify.playback-poll-active-ms} while a game is being played
+ * on them; once idle, the interval doubles per poll up to {@code spotify.playback-poll-idle-max-ms},
+ * and polling stops entirely after {@code spotify.playback-poll-stop-after-ms} without activity.
+ * Polls run on the account's command queue, so they never overtake a queued write.
+ */
+@Component
+public class PlaybackStateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaybackStateCache.class);
+
+    // Give Spotify a moment to apply a skip/start before reading it back.
+    private static final long REFRESH_AFTER_WRITE_MS = 400;
+
+    // A newer poll makes a still queued one pointless.
+    private static final String POLL_KEY = "pollPlayback";
+
+    private static final class Entry {
+        final SpotifyAccount account;
+        final AtomicBoolean polling = new AtomicBoolean(false);
+        volatile PlaybackState state;
+        volatile long lastActiveMs;
+        volatile long intervalMs;
+        volatile long nextPollAtMs;
+
+        Entry(SpotifyAccount account, long nowMs) {
+            this.account = account;
+            // Counts as activity, so the entry is not evicted before its first poll.
+            this.lastActiveMs = nowMs;
+        }
+    }
+
+    private final SpotifyCommandQueue spotifyCommands;
+    private final SpotifyProperties properties;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public PlaybackStateCache(SpotifyCommandQueue spotifyCommands, SpotifyProperties properties) {
+        this.spotifyCommands = spotifyCommands;
+        this.properties = properties;
+    }
+
+    /**
+     * The cached state, or null if the account has not been read yet.
+     */
+    public PlaybackState get(SpotifyAccount account) {
+        Entry e = entries.get(account.key());
+        return e != null ? e.state : null;
+    }
+
+    /**
+     * The cached state if it is at most {@code spotify.playback-max-age-ms} old, else null.
+     */
+    public PlaybackState getFresh(SpotifyAccount account) {
+        PlaybackState state = get(account);
+        if (state == null || state.ageMs(System.currentTimeMillis()) > properties.getPlaybackMaxAgeMs()) {
+            return null;
+        }
+        return state;
+    }
+
+    /**
+     * Drops the cached state, e.g. when it is known to be outdated; the next read goes to Spotify.
+     */
+    public void invalidate(SpotifyAccount account) {
+        Entry e = entries.get(account.key());
+        if (e != null) {
+            e.state = null;
+        }
+    }
+
+    /**
+     * Marks the account as in an active game: polls at the active rate from now on.
+     */
+    public void markActive(SpotifyAccount account) {
+        long now = System.currentTimeMillis();
+        Entry e = entries.computeIfAbsent(account.key(), k -> new Entry(account, now));
+        e.lastActiveMs = now;
+        long active = properties.getPlaybackPollActiveMs();
+        if (e.intervalMs != active) {
+            e.intervalMs = active;
+            e.nextPollAtMs = Math.min(e.nextPollAtMs == 0 ? now : e.nextPollAtMs, now + active);
+        }
+    }
+
+    /**
+     * Stores a state read by a handler (e.g. when the cache was empty or too old).
+     */
+    public void put(SpotifyAccount account, PlaybackState state) {
+        entries.computeIfAbsent(account.key(), k -> new Entry(account, System.currentTimeMillis())).state = state;
+    }
+
+    /**
+     * Applies a local change after one of our own writes (e.g. pause), so readers see it before the next poll.
+     */
+    public void update(SpotifyAccount account, UnaryOperator<PlaybackState> change) {
+        Entry e = entries.get(account.key());
+        if (e != null && e.state != null) {
+            e.state = change.apply(e.state);
+        }
+    }
+
+    /**
+     * Schedules an early poll after a write whose effect we cannot predict locally (skip, start).
+     * The cached state describes the previous track, so it is dropped until then.
+     */
+    public void refreshSoon(SpotifyAccount account) {
+        long now = System.currentTimeMillis();
+        Entry e = entries.computeIfAbsent(account.key(), k -> new Entry(account, now));
+        e.state = null;
+        e.nextPollAtMs = now + REFRESH_AFTER_WRITE_MS;
+    }
+
+    @Scheduled(fixedDelayString = "${spotify.playback-poll-tick-ms:200}")
+    void pollDueAccounts() {
+        long now = System.currentTimeMillis();
+        for (Entry e : entries.values()) {
+            if (now - e.lastActiveMs > properties.getPlaybackPollStopAfterMs()) {
+                entries.remove(e.account.key(), e);
+                continue;
+            }
+            if (now < e.nextPollAtMs || !e.polling.compareAndSet(false, true)) {
+                continue;
+            }
+            poll(e);
+        }
+    }
+
+    private void poll(Entry e) {
+        spotifyCommands.submit(e.account, "pollPlayback", SpotifyCommandQueue.Endpoint.PLAYER_READ, POLL_KEY,
+                player -> player.getState())
+                .whenComplete((playback, error) -> {
+                    long now = System.currentTimeMillis();
+                    if (error == null) {
+                        e.state = playback;
+                    } else {
+                        logger.debug("Spotify {} -> playback poll failed", e.account.key(), error);
+                    }
+                    e.intervalMs = nextInterval(e, now);
+                    e.nextPollAtMs = now + e.intervalMs;
+                    e.polling.set(false);
+                });
+    }
+
+    /**
+     * The account's current poll interval (0 before its first poll), or -1 if it is not polled.
+     */
+    long pollIntervalMs(SpotifyAccount account) {
+        Entry e = entries.get(account.key());
+        return e != null ? e.intervalMs : -1;
+    }
+
+    private long nextInterval(Entry e, long now) {
+        long active = properties.getPlaybackPollActiveMs();
+        if (now - e.lastActiveMs <= properties.getPlaybackActiveWindowMs()) {
+            return active;
+        }
+        long backedOff = Math.max(active, e.intervalMs) * 2;
+        return Math.min(backedOff, properties.getPlaybackPollIdleMaxMs());
+    }
+}
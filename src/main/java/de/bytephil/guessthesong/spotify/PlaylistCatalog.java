@@ -0,0 +1,70 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import de.bytephil.guessthesong.playback.PlaybackController;
+
+/**
+ * Track lists of the playlists games are played from, paged in once and kept per playlist
+ * {@code snapshot_id}. A cached list is re-validated (one small request for the snapshot id) at most
+ * every {@code spotify.playlist-revalidate-ms}; the tracks are only paged again if it changed.
+ */
+@Component
+public class PlaylistCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaylistCatalog.class);
+
+    private static final String PLAYLIST_URI_PREFIX = "spotify:playlist:";
+
+    public record Tracks(String snapshotId, List<String> uris, long checkedAtMs) {
+    }
+
+    private final SpotifyProperties properties;
+    private final Map<String, Tracks> playlists = new ConcurrentHashMap<>();
+
+    public PlaylistCatalog(SpotifyProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * The playable track URIs of the playlist ({@code spotify:playlist:<id>}). Blocking; call on a command queue.
+     */
+    public Tracks tracks(PlaybackController player, String playlistUri) throws Exception {
+        String playlistId = playlistUri.startsWith(PLAYLIST_URI_PREFIX)
+                ? playlistUri.substring(PLAYLIST_URI_PREFIX.length())
+                : playlistUri;
+        long now = System.currentTimeMillis();
+
+        Tracks cached = playlists.get(playlistId);
+        if (cached != null && now - cached.checkedAtMs() < properties.getPlaylistRevalidateMs()) {
+            return cached;
+        }
+
+        String snapshotId = player.playlistSnapshotId(playlistId);
+        if (cached != null && snapshotId != null && snapshotId.equals(cached.snapshotId())) {
+            Tracks checked = new Tracks(snapshotId, cached.uris(), now);
+            playlists.put(playlistId, checked);
+            return checked;
+        }
+
+        List<String> uris = new ArrayList<>();
+        int offset = 0;
+        while (offset >= 0) {
+            // One request per page, each charged to the account's catalog budget by the command queue.
+            PlaybackController.TrackPage page = player.playlistTracks(playlistId, offset);
+            uris.addAll(page.uris());
+            offset = page.nextOffset();
+        }
+        Tracks tracks = new Tracks(snapshotId, List.copyOf(uris), now);
+        playlists.put(playlistId, tracks);
+        logger.info("Spotify playlist {} -> {} tracks cached (snapshot {})", playlistId, uris.size(), snapshotId);
+        return tracks;
+    }
+}
@@ -0,0 +1,76 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent identical reads into one: while a call for a key is in flight, further
+ * callers with the same key wait for its result instead of issuing their own request.
+ *
+ * Results are not cached beyond the in-flight call; a caller arriving after completion runs a new call.
+ */
+public class SingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Runs the call, or joins the one already running for the key. Blocks until the result is there.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> call) throws Exception {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        executed.incrementAndGet();
+        try {
+            T result = call.call();
+            mine.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Calls that actually went out.
+     */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * Calls that were answered by another caller's in-flight request.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private static Exception unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return cause instanceof Exception ex ? ex : e;
+    }
+}
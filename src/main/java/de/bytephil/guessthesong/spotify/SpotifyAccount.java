@@ -0,0 +1,29 @@
+package de.bytephil.guessthesong.spotify;
+
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Identifies the Spotify account a command runs against: the backend-wide global token,
+ * or the token stored in one HTTP session.
+ *
+ * Resolving an account to its {@link de.bytephil.guessthesong.playback.PlaybackController} may refresh tokens,
+ * so that happens on the account's command queue, never on the caller's thread.
+ */
+public record SpotifyAccount(String key, HttpSession session) {
+
+    public static final String GLOBAL_KEY = "global";
+
+    private static final SpotifyAccount GLOBAL = new SpotifyAccount(GLOBAL_KEY, null);
+
+    public static SpotifyAccount global() {
+        return GLOBAL;
+    }
+
+    public static SpotifyAccount forSession(HttpSession session) {
+        return new SpotifyAccount("session:" + session.getId(), session);
+    }
+
+    public boolean isGlobal() {
+        return session == null;
+    }
+}
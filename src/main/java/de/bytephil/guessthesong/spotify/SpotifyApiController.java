@@ -1,5 +1,11 @@
 package de.bytephil.guessthesong.spotify;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -7,25 +13,46 @@ import org.springframework.web.bind.annotation.RestController;
 
 import org.springframework.core.env.Environment;
 
-import se.michaelthelin.spotify.SpotifyApi;
-import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
-import se.michaelthelin.spotify.model_objects.specification.Image;
-import se.michaelthelin.spotify.model_objects.specification.Track;
-import se.michaelthelin.spotify.requests.data.player.GetUsersCurrentlyPlayingTrackRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
 
 import jakarta.servlet.http.HttpSession;
 
 @RestController
 public class SpotifyApiController {
 
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyApiController.class);
+
     private final SpotifyService spotifyService;
+    private final SpotifyCommandQueue spotifyCommands;
+    private final PlaybackStateCache playbackCache;
     private final SpotifyProperties spotifyProperties;
     private final Environment environment;
 
-    public SpotifyApiController(SpotifyService spotifyService, SpotifyProperties spotifyProperties, Environment environment) {
+    // Results of /spotify/current; its latency is in http.server.requests, the Spotify read in spotify.api.requests.
+    private final Counter currentPlaying;
+    private final Counter currentNotPlaying;
+    private final Counter currentNotAuthenticated;
+
+    public SpotifyApiController(SpotifyService spotifyService, SpotifyCommandQueue spotifyCommands,
+            PlaybackStateCache playbackCache, SpotifyProperties spotifyProperties, Environment environment,
+            MeterRegistry registry) {
         this.spotifyService = spotifyService;
+        this.spotifyCommands = spotifyCommands;
+        this.playbackCache = playbackCache;
         this.spotifyProperties = spotifyProperties;
         this.environment = environment;
+        this.currentPlaying = currentCounter(registry, "playing");
+        this.currentNotPlaying = currentCounter(registry, "not_playing");
+        this.currentNotAuthenticated = currentCounter(registry, "not_authenticated");
+    }
+
+    private static Counter currentCounter(MeterRegistry registry, String result) {
+        return Counter.builder("spotify.current.requests")
+                .description("Requests for the currently playing track")
+                .tag("result", result)
+                .register(registry);
     }
 
     @GetMapping("/spotify/status")
@@ -50,46 +77,77 @@ public class SpotifyApiController {
                 "scopes", spotifyProperties.getScopes());
     }
 
+    /**
+     * Served from the playback cache while it is fresh; otherwise read on the account's command
+     * queue, so the read is charged to the account's rate limit and never runs on the request thread.
+     */
     @GetMapping("/spotify/current")
-    public ResponseEntity<?> current(HttpSession session) throws Exception {
-        SpotifyApi api = spotifyService.apiForGlobal();
-        if (api == null) {
-            api = spotifyService.apiForSession(session);
-        }
-        if (api == null) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(java.util.Map.of("error", "not_authenticated"));
+    public CompletableFuture<ResponseEntity<?>> current(HttpSession session) {
+        SpotifyAccount account = spotifyService.accountFor(session);
+        if (account == null) {
+            return CompletableFuture.completedFuture(notAuthenticated());
         }
-
-        GetUsersCurrentlyPlayingTrackRequest request = api.getUsersCurrentlyPlayingTrack().build();
-        var currentlyPlaying = request.execute();
-        if (currentlyPlaying == null || currentlyPlaying.getItem() == null) {
-            return ResponseEntity.ok(java.util.Map.of("playing", false));
+        PlaybackState cached = playbackCache.getFresh(account);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(currentResponse(cached));
         }
+        return spotifyCommands.submit(account, "currentPlayback", SpotifyCommandQueue.Endpoint.PLAYER_READ, null,
+                player -> player.getState())
+                .handle((playback, error) -> {
+                    if (error == null) {
+                        playbackCache.put(account, playback);
+                        return currentResponse(playback);
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error;
+                    if (cause instanceof SpotifyCommandQueue.NotConnectedException) {
+                        return notAuthenticated();
+                    }
+                    if (cause instanceof TooManyRequestsException e) {
+                        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter())))
+                                .body(java.util.Map.of("error", "rate_limited"));
+                    }
+                    logger.warn("Spotify {} -> current playback failed", account.key(), cause);
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .body(java.util.Map.of("error", "spotify_unavailable"));
+                });
+    }
 
-        Track track = (Track) currentlyPlaying.getItem();
-
-        String artistsText = "";
-        if (track.getArtists() != null) {
-            artistsText = java.util.Arrays.stream(track.getArtists())
-                    .map(ArtistSimplified::getName)
-                    .filter(n -> n != null && !n.isBlank())
-                    .reduce((a, b) -> a + ", " + b)
-                    .orElse("");
-        }
+    private ResponseEntity<?> notAuthenticated() {
+        currentNotAuthenticated.increment();
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(java.util.Map.of("error", "not_authenticated"));
+    }
 
-        String albumImageUrl = null;
-        if (track.getAlbum() != null && track.getAlbum().getImages() != null) {
-            Image[] images = track.getAlbum().getImages();
-            if (images.length > 0) {
-                albumImageUrl = images[0].getUrl();
-            }
+    private ResponseEntity<?> currentResponse(PlaybackState playback) {
+        if (playback.trackUri() == null) {
+            currentNotPlaying.increment();
+            return ResponseEntity.ok(java.util.Map.of("playing", false));
         }
 
+        currentPlaying.increment();
         return ResponseEntity.ok(java.util.Map.of(
                 "type", "answer",
-                "songTitle", track.getName(),
-            "artistsText", artistsText,
-                "albumImageUrl", albumImageUrl));
+                "songTitle", playback.songTitle() != null ? playback.songTitle() : "",
+                "artistsText", playback.artistsText(),
+                "albumImageUrl", playback.albumImageUrl() != null ? playback.albumImageUrl() : ""));
+    }
+
+    @GetMapping("/spotify/stats")
+    public Object stats() {
+        SingleFlight reads = spotifyService.getReads();
+        return java.util.Map.ofEntries(
+                java.util.Map.entry("readsExecuted", reads.getExecuted()),
+                java.util.Map.entry("readsCoalesced", reads.getCoalesced()),
+                java.util.Map.entry("readsInFlight", reads.getInFlight()),
+                java.util.Map.entry("commandsExecuted", spotifyCommands.getExecuted()),
+                java.util.Map.entry("commandsQueued", spotifyCommands.queueDepth()),
+                java.util.Map.entry("commandsDeferred", spotifyCommands.getDeferrals()),
+                java.util.Map.entry("commandsSuperseded", spotifyCommands.getSuperseded()),
+                java.util.Map.entry("commandsExpired", spotifyCommands.getExpired()),
+                java.util.Map.entry("rateLimited", spotifyCommands.getRateLimited()),
+                java.util.Map.entry("meanWaitMicros", spotifyCommands.getMeanWaitMicros()),
+                java.util.Map.entry("maxWaitMicros", spotifyCommands.getMaxWaitMicros()));
     }
 }
@@ -44,6 +44,10 @@ public class SpotifyAuthController {
 
         SpotifyApi api = spotifyService.newBaseApi();
         String scopes = properties.getScopes();
+        if (scopes == null || !scopes.contains("playlist-read-private")) {
+            // Typically a config/application.properties generated by an older version.
+            logger.warn("spotify.scopes lacks playlist-read-private: private playlists cannot be played");
+        }
 
         String authUrl = api.authorizationCodeUri()
                 .state(state)
@@ -0,0 +1,194 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.SpotifyHttpManager;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+
+/**
+ * Long-lived {@link SpotifyApi} clients, one per account, all on one pooled HTTP connection manager.
+ *
+ * A client is rebuilt only when its account's access token changed; the new client replaces the
+ * old one in a single reference swap, so requests already in flight finish with the token they
+ * started with. Connections are kept alive and reused across accounts, with bounded connect,
+ * socket and pool-wait timeouts so a hanging Spotify call cannot stall an account's command queue.
+ */
+@Component
+public class SpotifyClients {
+
+    private static final long IDLE_CLIENT_EVICT_MS = 30 * 60_000L;
+
+    private static final class Holder {
+        final AtomicReference<SpotifyApi> api = new AtomicReference<>();
+        volatile long lastUsedMs;
+    }
+
+    private final SpotifyProperties properties;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final IHttpManager httpManager;
+    private final SpotifyApi baseApi;
+    private final Map<String, Holder> clients = new ConcurrentHashMap<>();
+
+    public SpotifyClients(SpotifyProperties properties) {
+        this.properties = properties;
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getHttpMaxConnections())
+                .setMaxConnPerRoute(properties.getHttpMaxConnections())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(properties.getHttpConnectTimeoutMs(), TimeUnit.MILLISECONDS)
+                        .setSocketTimeout((int) properties.getHttpSocketTimeoutMs(), TimeUnit.MILLISECONDS)
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+        IHttpManager pooled = new SpotifyHttpManager.Builder()
+                .setConnectionManager(connectionManager)
+                .setSocketTimeout((int) properties.getHttpSocketTimeoutMs())
+                .setConnectionRequestTimeout((int) properties.getHttpConnectionRequestTimeoutMs())
+                .build();
+        String tokenUri = properties.getTokenUri();
+        this.httpManager = tokenUri != null && !tokenUri.isBlank()
+                ? new TokenEndpointOverride(pooled, URI.create(tokenUri.trim()))
+                : pooled;
+        this.baseApi = builder().build();
+    }
+
+    @PreDestroy
+    void close() {
+        connectionManager.close();
+    }
+
+    /**
+     * Client without user token (authorize URL, code exchange).
+     */
+    public SpotifyApi base() {
+        return baseApi;
+    }
+
+    /**
+     * The account's client for the given token; rebuilt only if the access token changed.
+     */
+    public SpotifyApi forToken(String accountKey, SpotifySessionToken token) {
+        Holder holder = clients.computeIfAbsent(accountKey, k -> new Holder());
+        holder.lastUsedMs = System.currentTimeMillis();
+        SpotifySessionToken.Credentials credentials = token.getCredentials();
+        String accessToken = credentials.accessToken();
+        String refreshToken = credentials.refreshToken();
+        return holder.api.updateAndGet(current -> current != null
+                && Objects.equals(current.getAccessToken(), accessToken)
+                && Objects.equals(current.getRefreshToken(), refreshToken)
+                        ? current
+                        : builder().setAccessToken(accessToken).setRefreshToken(refreshToken).build());
+    }
+
+    /**
+     * Client to refresh the given token with. Only used off the request path, so not cached.
+     */
+    public SpotifyApi forRefresh(String refreshToken) {
+        return builder().setRefreshToken(refreshToken).build();
+    }
+
+    public void evict(String accountKey) {
+        clients.remove(accountKey);
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    public PoolStats poolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    void evictIdleClients() {
+        long cutoff = System.currentTimeMillis() - IDLE_CLIENT_EVICT_MS;
+        clients.values().removeIf(h -> h.lastUsedMs < cutoff);
+        connectionManager.closeExpired();
+    }
+
+    private SpotifyApi.Builder builder() {
+        SpotifyApi.Builder builder = new SpotifyApi.Builder()
+                .setHttpManager(httpManager)
+                .setClientId(properties.getClientId())
+                .setClientSecret(properties.getClientSecret());
+        if (properties.getRedirectUri() != null && !properties.getRedirectUri().isBlank()) {
+            builder.setRedirectUri(URI.create(properties.getRedirectUri()));
+        }
+        String apiBaseUri = properties.getApiBaseUri();
+        if (apiBaseUri != null && !apiBaseUri.isBlank()) {
+            // e.g. a local stub for tests and benchmarks
+            URI uri = URI.create(apiBaseUri.trim());
+            builder.setScheme(uri.getScheme()).setHost(uri.getHost());
+            if (uri.getPort() != -1) {
+                builder.setPort(uri.getPort());
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Sends token requests to {@code spotify.token-uri}. The client library builds them for
+     * accounts.spotify.com regardless of the API host, so they are redirected here instead.
+     */
+    private static final class TokenEndpointOverride implements IHttpManager {
+
+        private static final String TOKEN_HOST = "accounts.spotify.com";
+        private static final String TOKEN_PATH = "/api/token";
+
+        private final IHttpManager delegate;
+        private final URI tokenUri;
+
+        TokenEndpointOverride(IHttpManager delegate, URI tokenUri) {
+            this.delegate = delegate;
+            this.tokenUri = tokenUri;
+        }
+
+        private URI route(URI uri) {
+            return TOKEN_HOST.equals(uri.getHost()) && TOKEN_PATH.equals(uri.getPath()) ? tokenUri : uri;
+        }
+
+        @Override
+        public String get(URI uri, Header[] headers) throws IOException, SpotifyWebApiException, ParseException {
+            return delegate.get(route(uri), headers);
+        }
+
+        @Override
+        public String post(URI uri, Header[] headers, HttpEntity body)
+                throws IOException, SpotifyWebApiException, ParseException {
+            return delegate.post(route(uri), headers, body);
+        }
+
+        @Override
+        public String put(URI uri, Header[] headers, HttpEntity body)
+                throws IOException, SpotifyWebApiException, ParseException {
+            return delegate.put(route(uri), headers, body);
+        }
+
+        @Override
+        public String delete(URI uri, Header[] headers, HttpEntity body)
+                throws IOException, SpotifyWebApiException, ParseException {
+            return delegate.delete(route(uri), headers, body);
+        }
+    }
+}
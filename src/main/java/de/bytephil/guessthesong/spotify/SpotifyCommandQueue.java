@@ -0,0 +1,574 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import de.bytephil.guessthesong.playback.PlaybackBackend;
+import de.bytephil.guessthesong.playback.PlaybackController;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+/**
+ * Runs blocking playback calls (see {@link PlaybackController}) out of band, one queue per Spotify account.
+ *
+ * Commands for the same account execute strictly in submission order (a pause never overtakes
+ * the resume before it); different accounts never wait on each other. Each account has a
+ * {@link SpotifyRateLimiter}, charged per Web API request: a command only starts once the endpoint
+ * of its first request has budget, and each further request it makes (a newGame pages the whole
+ * playlist) waits for its own endpoint's budget. Nothing is dropped for lack of budget, only for
+ * the deadline: commands still waiting when it passes are failed. A command can also supersede
+ * queued ones of the same kind (a resume makes a pause that has not run yet pointless).
+ *
+ * A 429 rejects just the request that got it, so that request is sent again once the
+ * {@code Retry-After} is over (once); the requests before it are not repeated.
+ */
+@Component
+public class SpotifyCommandQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyCommandQueue.class);
+
+    private static final long IDLE_LANE_EVICT_MS = 10 * 60_000L;
+    private static final int MAX_COMMANDS_PER_TURN = 64;
+
+    @FunctionalInterface
+    public interface SpotifyCommand<T> {
+        T execute(PlaybackController player) throws Exception;
+    }
+
+    /**
+     * Rate limit budget a request is charged against.
+     */
+    public enum Endpoint {
+        /** GET /me/player and friends. */
+        PLAYER_READ,
+        /** Playback control: play, pause, skip, volume, shuffle. */
+        PLAYER_WRITE,
+        /** Playlists and tracks. */
+        CATALOG_READ
+    }
+
+    @FunctionalInterface
+    private interface Request<R> {
+        R send() throws Exception;
+    }
+
+    /**
+     * Thrown (wrapped in the future) when a command, or one of its requests, was still waiting for rate
+     * limit budget at its deadline.
+     */
+    public static class DeadlineExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String action, long waitedMs) {
+            super("Spotify " + action + " skipped (rate limited, deadline passed after " + waitedMs + " ms)");
+        }
+    }
+
+    /**
+     * Thrown (wrapped in the future) when a queued command was replaced by a later one of the same kind.
+     */
+    public static class SupersededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public SupersededException(String action, String by) {
+            super("Spotify " + action + " skipped (superseded by " + by + ")");
+        }
+    }
+
+    /**
+     * Thrown (wrapped in the future) when the account has no usable token anymore.
+     */
+    public static class NotConnectedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public NotConnectedException(String action) {
+            super("Spotify " + action + " skipped (no Spotify session connected)");
+        }
+    }
+
+    private static final class Pending<T> {
+        final String action;
+        final Endpoint endpoint;
+        final String supersedeKey;
+        final SpotifyCommand<T> command;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+        final long deadlineNanos;
+
+        Pending(String action, Endpoint endpoint, String supersedeKey, long deadlineMs, SpotifyCommand<T> command) {
+            this.action = action;
+            this.endpoint = endpoint;
+            this.supersedeKey = supersedeKey;
+            this.command = command;
+            this.deadlineNanos = enqueuedNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        }
+    }
+
+    private final class AccountLane implements Runnable {
+        final SpotifyAccount account;
+        final SpotifyRateLimiter limiter;
+        // Guards queue, draining and limiter. Never held across a Spotify call.
+        final ReentrantLock lock = new ReentrantLock();
+        final Deque<Pending<?>> queue = new ArrayDeque<>();
+        // True from the first queued command until the lane ran dry, including while a command runs.
+        boolean draining;
+        // Set once the lane is evicted; commands then go to a fresh lane.
+        boolean retired;
+        volatile long lastUsedMs = System.currentTimeMillis();
+
+        AccountLane(SpotifyAccount account) {
+            this.account = account;
+            this.limiter = new SpotifyRateLimiter(properties, System.nanoTime());
+        }
+
+        /**
+         * @return false if the lane was retired meanwhile and the command has to go to a new one
+         */
+        boolean enqueue(Pending<?> pending) {
+            boolean start;
+            lock.lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                if (pending.supersedeKey != null) {
+                    for (Iterator<Pending<?>> it = queue.iterator(); it.hasNext();) {
+                        Pending<?> queued = it.next();
+                        if (pending.supersedeKey.equals(queued.supersedeKey)) {
+                            it.remove();
+                            superseded.incrementAndGet();
+                            queued.future.completeExceptionally(new SupersededException(queued.action, pending.action));
+                        }
+                    }
+                }
+                queue.addLast(pending);
+                start = !draining;
+                draining = true;
+            } finally {
+                lock.unlock();
+            }
+            if (start) {
+                executor.execute(this);
+            }
+            return true;
+        }
+
+        /**
+         * Retires the lane if nothing was submitted to it since the cutoff and nothing is queued or running.
+         */
+        boolean retireIfIdle(long cutoffMs) {
+            lock.lock();
+            try {
+                if (draining || !queue.isEmpty() || lastUsedMs >= cutoffMs) {
+                    return false;
+                }
+                retired = true;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int depth() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_COMMANDS_PER_TURN; i++) {
+                Pending<?> next;
+                long waitNanos;
+                lock.lock();
+                try {
+                    next = queue.peekFirst();
+                    if (next == null) {
+                        draining = false;
+                        return;
+                    }
+                    long now = System.nanoTime();
+                    if (now >= next.deadlineNanos) {
+                        queue.pollFirst();
+                        expired.incrementAndGet();
+                        next.future.completeExceptionally(new DeadlineExceededException(next.action,
+                                TimeUnit.NANOSECONDS.toMillis(now - next.enqueuedNanos)));
+                        continue;
+                    }
+                    // The command's first request takes the token itself (see RateLimitedController).
+                    waitNanos = limiter.waitNanos(next.endpoint, now);
+                    if (waitNanos == 0) {
+                        queue.pollFirst();
+                    } else {
+                        // Stay "draining": the timer picks the lane up again.
+                        waitNanos = Math.min(waitNanos, next.deadlineNanos - now);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (waitNanos > 0) {
+                    deferrals.incrementAndGet();
+                    timer.schedule(() -> executor.execute(this), waitNanos, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                execute(this, next);
+            }
+            // Yield the pooled thread; continue in a fresh task.
+            executor.execute(this);
+        }
+    }
+
+    private final PlaybackBackend playbackBackend;
+    private final SpotifyProperties properties;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final Map<String, AccountLane> lanes = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong deferrals = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final Timer waitTimer;
+
+    public SpotifyCommandQueue(PlaybackBackend playbackBackend, SpotifyProperties properties, MeterRegistry registry,
+            BlockingExecutors executors) {
+        this.playbackBackend = playbackBackend;
+        this.properties = properties;
+        this.waitTimer = Timer.builder("spotify.commands.wait")
+                .description("Time from submit until a Spotify command starts")
+                .register(registry);
+        Gauge.builder("spotify.commands.queued", this, SpotifyCommandQueue::queueDepth).register(registry);
+        commandCounter(registry, "executed", executed);
+        commandCounter(registry, "deferred", deferrals);
+        commandCounter(registry, "superseded", superseded);
+        commandCounter(registry, "expired", expired);
+        commandCounter(registry, "rate_limited", rateLimited);
+        this.executor = executors.newExecutor("spotify-cmd-");
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "spotify-cmd-timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static void commandCounter(MeterRegistry registry, String outcome, AtomicLong count) {
+        FunctionCounter.builder("spotify.commands", count, AtomicLong::get)
+                .description("Spotify commands by what became of them")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a playback control command (starting with a write) with the default deadline.
+     *
+     * @see #submit(SpotifyAccount, String, Endpoint, String, SpotifyCommand)
+     */
+    public <T> CompletableFuture<T> submit(SpotifyAccount account, String action, SpotifyCommand<T> command) {
+        return submit(account, action, Endpoint.PLAYER_WRITE, null, command);
+    }
+
+    /**
+     * Queues the command on the account's lane. The future completes with the command's result,
+     * or exceptionally with {@link DeadlineExceededException}, {@link SupersededException},
+     * {@link NotConnectedException} or the Spotify error.
+     *
+     * @param endpoint of the command's first request: the command is not started before it has budget
+     * @param supersedeKey if not null, queued commands with the same key that have not started yet are dropped
+     */
+    public <T> CompletableFuture<T> submit(SpotifyAccount account, String action, Endpoint endpoint,
+            String supersedeKey, SpotifyCommand<T> command) {
+        Pending<T> pending = new Pending<>(action, endpoint, supersedeKey, properties.getCommandDeadlineMs(), command);
+        while (true) {
+            AccountLane lane = lanes.computeIfAbsent(account.key(), k -> new AccountLane(account));
+            lane.lastUsedMs = System.currentTimeMillis();
+            if (lane.enqueue(pending)) {
+                return pending.future;
+            }
+        }
+    }
+
+    public boolean isRateLimitedNow(SpotifyAccount account) {
+        AccountLane lane = lanes.get(account.key());
+        if (lane == null) {
+            return false;
+        }
+        lane.lock.lock();
+        try {
+            return lane.limiter.isBlocked(System.nanoTime());
+        } finally {
+            lane.lock.unlock();
+        }
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (AccountLane lane : lanes.values()) {
+            depth += lane.depth();
+        }
+        return depth;
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * Times a command had to wait for rate limit budget.
+     */
+    public long getDeferrals() {
+        return deferrals.get();
+    }
+
+    public long getSuperseded() {
+        return superseded.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    /**
+     * Mean time from submit to start of execution, over all executed commands.
+     */
+    public long getMeanWaitMicros() {
+        long n = executed.get();
+        return n == 0 ? 0 : totalWaitNanos.get() / n / 1_000;
+    }
+
+    public long getMaxWaitMicros() {
+        return maxWaitNanos.get() / 1_000;
+    }
+
+    private <T> void execute(AccountLane lane, Pending<T> pending) {
+        long waited = System.nanoTime() - pending.enqueuedNanos;
+        executed.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        waitTimer.record(waited, TimeUnit.NANOSECONDS);
+
+        try {
+            PlaybackController player = playbackBackend.controllerFor(lane.account);
+            if (player == null) {
+                pending.future.completeExceptionally(new NotConnectedException(pending.action));
+                return;
+            }
+            pending.future.complete(pending.command.execute(new RateLimitedController(lane, pending, player)));
+        } catch (DeadlineExceededException e) {
+            expired.incrementAndGet();
+            pending.future.completeExceptionally(e);
+        } catch (Throwable t) {
+            pending.future.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * The account's controller as a command sees it: every request first takes a token of its
+     * endpoint's budget (waiting for it, on the lane's thread, up to the command's deadline), and a
+     * request rejected with a 429 is sent again after the {@code Retry-After}.
+     */
+    private final class RateLimitedController implements PlaybackController {
+
+        private final AccountLane lane;
+        private final Pending<?> pending;
+        private final PlaybackController player;
+
+        RateLimitedController(AccountLane lane, Pending<?> pending, PlaybackController player) {
+            this.lane = lane;
+            this.pending = pending;
+            this.player = player;
+        }
+
+        private <R> R send(Endpoint endpoint, Request<R> request) throws Exception {
+            boolean retried = false;
+            while (true) {
+                acquire(endpoint);
+                try {
+                    R result = request.send();
+                    lane.lock.lock();
+                    try {
+                        lane.limiter.onSuccess(endpoint);
+                    } finally {
+                        lane.lock.unlock();
+                    }
+                    return result;
+                } catch (TooManyRequestsException e) {
+                    onRateLimited(lane, endpoint, pending.action, e);
+                    if (retried) {
+                        throw e;
+                    }
+                    retried = true;
+                }
+            }
+        }
+
+        private void acquire(Endpoint endpoint) throws InterruptedException {
+            while (true) {
+                long now = System.nanoTime();
+                long waitNanos;
+                lane.lock.lock();
+                try {
+                    waitNanos = lane.limiter.tryAcquire(endpoint, now);
+                } finally {
+                    lane.lock.unlock();
+                }
+                if (waitNanos == 0) {
+                    return;
+                }
+                if (now + waitNanos - pending.deadlineNanos > 0) {
+                    throw new DeadlineExceededException(pending.action,
+                            TimeUnit.NANOSECONDS.toMillis(now - pending.enqueuedNanos));
+                }
+                deferrals.incrementAndGet();
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        @Override
+        public PlaybackState getState() throws Exception {
+            return send(Endpoint.PLAYER_READ, player::getState);
+        }
+
+        @Override
+        public PlaybackState getCurrentTrack() throws Exception {
+            return send(Endpoint.PLAYER_READ, player::getCurrentTrack);
+        }
+
+        @Override
+        public void playContext(String contextUri) throws Exception {
+            send(Endpoint.PLAYER_WRITE, () -> {
+                player.playContext(contextUri);
+                return null;
+            });
+        }
+
+        @Override
+        public void playUris(List<String> trackUris) throws Exception {
+            send(Endpoint.PLAYER_WRITE, () -> {
+                player.playUris(trackUris);
+                return null;
+            });
+        }
+
+        @Override
+        public void pause() throws Exception {
+            send(Endpoint.PLAYER_WRITE, () -> {
+                player.pause();
+                return null;
+            });
+        }
+
+        @Override
+        public void resume() throws Exception {
+            send(Endpoint.PLAYER_WRITE, () -> {
+                player.resume();
+                return null;
+            });
+        }
+
+        @Override
+        public void skip() throws Exception {
+            send(Endpoint.PLAYER_WRITE, () -> {
+                player.skip();
+                return null;
+            });
+        }
+
+        @Override
+        public void setVolume(int percent) throws Exception {
+            send(Endpoint.PLAYER_WRITE, () -> {
+                player.setVolume(percent);
+                return null;
+            });
+        }
+
+        @Override
+        public void setShuffle(boolean shuffle) throws Exception {
+            send(Endpoint.PLAYER_WRITE, () -> {
+                player.setShuffle(shuffle);
+                return null;
+            });
+        }
+
+        @Override
+        public String playlistSnapshotId(String playlistId) throws Exception {
+            return send(Endpoint.CATALOG_READ, () -> player.playlistSnapshotId(playlistId));
+        }
+
+        @Override
+        public TrackPage playlistTracks(String playlistId, int offset) throws Exception {
+            return send(Endpoint.CATALOG_READ, () -> player.playlistTracks(playlistId, offset));
+        }
+    }
+
+    private void onRateLimited(AccountLane lane, Endpoint endpoint, String action, TooManyRequestsException e) {
+        int retryAfterSeconds = e.getRetryAfter();
+        rateLimited.incrementAndGet();
+        lane.lock.lock();
+        try {
+            lane.limiter.onRateLimited(endpoint, retryAfterSeconds, System.nanoTime());
+        } finally {
+            lane.lock.unlock();
+        }
+        logger.warn("Spotify {} -> rate limited during {} (retryAfter={}s)", lane.account.key(), action,
+                retryAfterSeconds);
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    void evictIdleLanes() {
+        evictLanesIdleSince(System.currentTimeMillis() - IDLE_LANE_EVICT_MS);
+    }
+
+    /**
+     * Drops the lanes of accounts without commands since the cutoff. A lane still running a command
+     * is kept, so a later command of the account cannot start on a second lane next to it.
+     */
+    void evictLanesIdleSince(long cutoffMs) {
+        for (Map.Entry<String, AccountLane> entry : lanes.entrySet()) {
+            AccountLane lane = entry.getValue();
+            if (lane.retireIfIdle(cutoffMs)) {
+                lanes.remove(entry.getKey(), lane);
+            }
+        }
+    }
+
+    int laneCount() {
+        return lanes.size();
+    }
+}
@@ -0,0 +1,113 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import se.michaelthelin.spotify.exceptions.detailed.BadGatewayException;
+import se.michaelthelin.spotify.exceptions.detailed.BadRequestException;
+import se.michaelthelin.spotify.exceptions.detailed.ForbiddenException;
+import se.michaelthelin.spotify.exceptions.detailed.InternalServerErrorException;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import se.michaelthelin.spotify.exceptions.detailed.ServiceUnavailableException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.exceptions.detailed.UnauthorizedException;
+
+/**
+ * Meters for the calls we make to Spotify.
+ *
+ * <ul>
+ * <li>{@code spotify.api.requests} (timer): one Web API request, by {@code operation} and {@code outcome}</li>
+ * <li>{@code spotify.api.rate.limited} (counter): 429 responses, by {@code operation}</li>
+ * <li>{@code spotify.api.retry.after} (summary, seconds): the {@code Retry-After} of those responses</li>
+ * <li>{@code spotify.token.refresh} (timer): OAuth token refreshes, by {@code outcome}</li>
+ * </ul>
+ */
+@Component
+public class SpotifyMetrics {
+
+    private final MeterRegistry registry;
+    // Keyed by "operation|outcome"; the set of operations is small and fixed.
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rateLimitCounters = new ConcurrentHashMap<>();
+    private final DistributionSummary retryAfter;
+    private final Timer refreshSuccess;
+    private final Timer refreshFailure;
+
+    public SpotifyMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.retryAfter = DistributionSummary.builder("spotify.api.retry.after")
+                .description("Retry-After of Spotify 429 responses")
+                .baseUnit("seconds")
+                .register(registry);
+        this.refreshSuccess = refreshTimer("success");
+        this.refreshFailure = refreshTimer("error");
+    }
+
+    /**
+     * Runs one Web API request and records its latency and outcome. Exceptions pass through.
+     */
+    public <T> T record(String operation, Callable<T> request) throws Exception {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return request.call();
+        } catch (TooManyRequestsException e) {
+            outcome = "rate_limited";
+            rateLimitCounters.computeIfAbsent(operation, op -> Counter.builder("spotify.api.rate.limited")
+                    .description("Spotify 429 responses")
+                    .tag("operation", op)
+                    .register(registry)).increment();
+            retryAfter.record(e.getRetryAfter());
+            throw e;
+        } catch (Exception e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            requestTimer(operation, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordTokenRefresh(long nanos, boolean success) {
+        (success ? refreshSuccess : refreshFailure).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer requestTimer(String operation, String outcome) {
+        return requestTimers.computeIfAbsent(operation + '|' + outcome, k -> Timer.builder("spotify.api.requests")
+                .description("Spotify Web API requests")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry));
+    }
+
+    private Timer refreshTimer(String outcome) {
+        return Timer.builder("spotify.token.refresh")
+                .description("Spotify OAuth token refreshes")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static String outcomeOf(Exception e) {
+        if (e instanceof UnauthorizedException) {
+            return "unauthorized";
+        }
+        if (e instanceof NotFoundException) {
+            return "not_found";
+        }
+        if (e instanceof BadRequestException || e instanceof ForbiddenException) {
+            return "client_error";
+        }
+        if (e instanceof InternalServerErrorException || e instanceof BadGatewayException
+                || e instanceof ServiceUnavailableException) {
+            return "server_error";
+        }
+        return "error";
+    }
+}
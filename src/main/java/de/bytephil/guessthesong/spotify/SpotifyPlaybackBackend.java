@@ -0,0 +1,131 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.JsonArray;
+
+import de.bytephil.guessthesong.playback.PlaybackBackend;
+import de.bytephil.guessthesong.playback.PlaybackController;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+/**
+ * Plays on the Spotify Web API, with the account's pooled client (see {@link SpotifyClients}).
+ */
+@Component
+@ConditionalOnProperty(prefix = "playback", name = "backend", havingValue = "spotify", matchIfMissing = true)
+public class SpotifyPlaybackBackend implements PlaybackBackend {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final SpotifyService spotifyService;
+    private final SpotifyMetrics metrics;
+
+    public SpotifyPlaybackBackend(SpotifyService spotifyService, SpotifyMetrics metrics) {
+        this.spotifyService = spotifyService;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public PlaybackController controllerFor(SpotifyAccount account) {
+        SpotifyApi api = spotifyService.apiFor(account);
+        return api != null ? new Controller(account, api) : null;
+    }
+
+    private final class Controller implements PlaybackController {
+
+        private final SpotifyAccount account;
+        private final SpotifyApi api;
+
+        Controller(SpotifyAccount account, SpotifyApi api) {
+            this.account = account;
+            this.api = api;
+        }
+
+        @Override
+        public PlaybackState getState() throws Exception {
+            // Single-flight: concurrent reads of the same account share one request.
+            return PlaybackState.from(spotifyService.currentPlayback(account, api), System.currentTimeMillis());
+        }
+
+        @Override
+        public PlaybackState getCurrentTrack() throws Exception {
+            return PlaybackState.from(metrics.record("getCurrentlyPlaying",
+                    () -> api.getUsersCurrentlyPlayingTrack().build().execute()), System.currentTimeMillis());
+        }
+
+        @Override
+        public void playContext(String contextUri) throws Exception {
+            metrics.record("play", () -> api.startResumeUsersPlayback().context_uri(contextUri).build().execute());
+        }
+
+        @Override
+        public void playUris(List<String> trackUris) throws Exception {
+            JsonArray uris = new JsonArray();
+            for (String uri : trackUris) {
+                uris.add(uri);
+            }
+            metrics.record("play", () -> api.startResumeUsersPlayback().uris(uris).build().execute());
+        }
+
+        @Override
+        public void pause() throws Exception {
+            metrics.record("pause", () -> api.pauseUsersPlayback().build().execute());
+        }
+
+        @Override
+        public void resume() throws Exception {
+            metrics.record("resume", () -> api.startResumeUsersPlayback().build().execute());
+        }
+
+        @Override
+        public void skip() throws Exception {
+            metrics.record("skip", () -> api.skipUsersPlaybackToNextTrack().build().execute());
+        }
+
+        @Override
+        public void setVolume(int percent) throws Exception {
+            metrics.record("setVolume", () -> api.setVolumeForUsersPlayback(percent).build().execute());
+        }
+
+        @Override
+        public void setShuffle(boolean shuffle) throws Exception {
+            metrics.record("setShuffle", () -> api.toggleShuffleForUsersPlayback(shuffle).build().execute());
+        }
+
+        @Override
+        public String playlistSnapshotId(String playlistId) throws Exception {
+            return metrics.record("getPlaylist",
+                    () -> api.getPlaylist(playlistId).fields("snapshot_id").build().execute()).getSnapshotId();
+        }
+
+        @Override
+        public TrackPage playlistTracks(String playlistId, int offset) throws Exception {
+            Paging<PlaylistTrack> page = metrics.record("getPlaylistItems", () -> api.getPlaylistsItems(playlistId)
+                    .fields("items(is_local,track(type,uri)),next")
+                    .limit(PAGE_SIZE)
+                    .offset(offset)
+                    .build()
+                    .execute());
+            PlaylistTrack[] items = page.getItems();
+            List<String> uris = new ArrayList<>();
+            if (items != null) {
+                for (PlaylistTrack item : items) {
+                    // Local files and podcast episodes cannot be started by URI.
+                    if (item != null && !Boolean.TRUE.equals(item.getIsLocal())
+                            && item.getTrack() instanceof Track t && t.getUri() != null) {
+                        uris.add(t.getUri());
+                    }
+                }
+            }
+            boolean last = page.getNext() == null || items == null || items.length == 0;
+            return new TrackPage(uris, last ? -1 : offset + items.length);
+        }
+    }
+}
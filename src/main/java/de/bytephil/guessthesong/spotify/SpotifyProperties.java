@@ -16,6 +16,74 @@ public class SpotifyProperties {
      */
     private String globalRefreshToken;
 
+    /**
+     * Optional: base URI of the Web API (e.g. a local stub); blank means api.spotify.com.
+     */
+    private String apiBaseUri;
+    /**
+     * Optional: token endpoint (refresh and code exchange); blank means https://accounts.spotify.com/api/token.
+     */
+    private String tokenUri;
+    /**
+     * Where the global token is kept across restarts; blank disables the store.
+     */
+    private String tokenStorePath = "config/spotify-token.properties";
+    /**
+     * Tokens are refreshed in the background this long before they expire, minus a random jitter.
+     */
+    private long tokenRefreshLeadMs = 5 * 60_000L;
+    private long tokenRefreshJitterMs = 60_000;
+    /**
+     * Session tokens not used for this long are no longer refreshed.
+     */
+    private long tokenIdleUntrackMs = 2 * 60 * 60_000L;
+    /**
+     * Pooled HTTP connections shared by all Spotify clients.
+     */
+    private int httpMaxConnections = 20;
+    private long httpConnectTimeoutMs = 3_000;
+    private long httpSocketTimeoutMs = 5_000;
+    /**
+     * How long a call waits for a free pooled connection.
+     */
+    private long httpConnectionRequestTimeoutMs = 2_000;
+
+    /**
+     * Playback polling interval while a game is active on the account.
+     */
+    private long playbackPollActiveMs = 5_000;
+    /**
+     * Cached playback older than this is re-read before a command decides on it.
+     */
+    private long playbackMaxAgeMs = 15_000;
+    /**
+     * How long after the last game action an account counts as active.
+     */
+    private long playbackActiveWindowMs = 120_000;
+    /**
+     * Upper bound for the idle polling interval (doubles per poll while idle).
+     */
+    private long playbackPollIdleMaxMs = 60_000;
+    /**
+     * Polling stops for accounts without game activity for this long.
+     */
+    private long playbackPollStopAfterMs = 30 * 60_000L;
+    /**
+     * How long a cached playlist track list is used before its snapshot id is checked again.
+     */
+    private long playlistRevalidateMs = 10 * 60_000L;
+
+    /**
+     * Per-account rate limit budgets, one per {@link SpotifyCommandQueue.Endpoint}.
+     */
+    private final Budget playerReadBudget = new Budget(4, 8);
+    private final Budget playerWriteBudget = new Budget(3, 6);
+    private final Budget catalogReadBudget = new Budget(5, 20);
+    /**
+     * How long a command may wait in its account's queue for rate limit budget before it is dropped.
+     */
+    private long commandDeadlineMs = 10_000;
+
     public String getClientId() {
         return clientId;
     }
@@ -63,4 +131,193 @@ public class SpotifyProperties {
     public void setGlobalRefreshToken(String globalRefreshToken) {
         this.globalRefreshToken = globalRefreshToken;
     }
+
+    public long getPlaybackPollActiveMs() {
+        return playbackPollActiveMs;
+    }
+
+    public void setPlaybackPollActiveMs(long playbackPollActiveMs) {
+        this.playbackPollActiveMs = playbackPollActiveMs;
+    }
+
+    public long getPlaybackMaxAgeMs() {
+        return playbackMaxAgeMs;
+    }
+
+    public void setPlaybackMaxAgeMs(long playbackMaxAgeMs) {
+        this.playbackMaxAgeMs = playbackMaxAgeMs;
+    }
+
+    public long getPlaybackActiveWindowMs() {
+        return playbackActiveWindowMs;
+    }
+
+    public void setPlaybackActiveWindowMs(long playbackActiveWindowMs) {
+        this.playbackActiveWindowMs = playbackActiveWindowMs;
+    }
+
+    public long getPlaybackPollIdleMaxMs() {
+        return playbackPollIdleMaxMs;
+    }
+
+    public void setPlaybackPollIdleMaxMs(long playbackPollIdleMaxMs) {
+        this.playbackPollIdleMaxMs = playbackPollIdleMaxMs;
+    }
+
+    public long getPlaybackPollStopAfterMs() {
+        return playbackPollStopAfterMs;
+    }
+
+    public void setPlaybackPollStopAfterMs(long playbackPollStopAfterMs) {
+        this.playbackPollStopAfterMs = playbackPollStopAfterMs;
+    }
+
+    public long getPlaylistRevalidateMs() {
+        return playlistRevalidateMs;
+    }
+
+    public void setPlaylistRevalidateMs(long playlistRevalidateMs) {
+        this.playlistRevalidateMs = playlistRevalidateMs;
+    }
+
+    public String getApiBaseUri() {
+        return apiBaseUri;
+    }
+
+    public void setApiBaseUri(String apiBaseUri) {
+        this.apiBaseUri = apiBaseUri;
+    }
+
+    public String getTokenUri() {
+        return tokenUri;
+    }
+
+    public void setTokenUri(String tokenUri) {
+        this.tokenUri = tokenUri;
+    }
+
+    public int getHttpMaxConnections() {
+        return httpMaxConnections;
+    }
+
+    public void setHttpMaxConnections(int httpMaxConnections) {
+        this.httpMaxConnections = httpMaxConnections;
+    }
+
+    public long getHttpConnectTimeoutMs() {
+        return httpConnectTimeoutMs;
+    }
+
+    public void setHttpConnectTimeoutMs(long httpConnectTimeoutMs) {
+        this.httpConnectTimeoutMs = httpConnectTimeoutMs;
+    }
+
+    public long getHttpSocketTimeoutMs() {
+        return httpSocketTimeoutMs;
+    }
+
+    public void setHttpSocketTimeoutMs(long httpSocketTimeoutMs) {
+        this.httpSocketTimeoutMs = httpSocketTimeoutMs;
+    }
+
+    public long getHttpConnectionRequestTimeoutMs() {
+        return httpConnectionRequestTimeoutMs;
+    }
+
+    public void setHttpConnectionRequestTimeoutMs(long httpConnectionRequestTimeoutMs) {
+        this.httpConnectionRequestTimeoutMs = httpConnectionRequestTimeoutMs;
+    }
+
+    public long getTokenRefreshLeadMs() {
+        return tokenRefreshLeadMs;
+    }
+
+    public void setTokenRefreshLeadMs(long tokenRefreshLeadMs) {
+        this.tokenRefreshLeadMs = tokenRefreshLeadMs;
+    }
+
+    public long getTokenRefreshJitterMs() {
+        return tokenRefreshJitterMs;
+    }
+
+    public void setTokenRefreshJitterMs(long tokenRefreshJitterMs) {
+        this.tokenRefreshJitterMs = tokenRefreshJitterMs;
+    }
+
+    public long getTokenIdleUntrackMs() {
+        return tokenIdleUntrackMs;
+    }
+
+    public void setTokenIdleUntrackMs(long tokenIdleUntrackMs) {
+        this.tokenIdleUntrackMs = tokenIdleUntrackMs;
+    }
+
+    public String getTokenStorePath() {
+        return tokenStorePath;
+    }
+
+    public void setTokenStorePath(String tokenStorePath) {
+        this.tokenStorePath = tokenStorePath;
+    }
+
+    public Budget getPlayerReadBudget() {
+        return playerReadBudget;
+    }
+
+    public Budget getPlayerWriteBudget() {
+        return playerWriteBudget;
+    }
+
+    public Budget getCatalogReadBudget() {
+        return catalogReadBudget;
+    }
+
+    public Budget budgetFor(SpotifyCommandQueue.Endpoint endpoint) {
+        return switch (endpoint) {
+            case PLAYER_READ -> playerReadBudget;
+            case PLAYER_WRITE -> playerWriteBudget;
+            case CATALOG_READ -> catalogReadBudget;
+        };
+    }
+
+    public long getCommandDeadlineMs() {
+        return commandDeadlineMs;
+    }
+
+    public void setCommandDeadlineMs(long commandDeadlineMs) {
+        this.commandDeadlineMs = commandDeadlineMs;
+    }
+
+    /**
+     * A token bucket: sustained calls per second, and how many calls may go out back to back.
+     */
+    public static class Budget {
+
+        private double perSecond;
+        private int burst;
+
+        public Budget() {
+        }
+
+        public Budget(double perSecond, int burst) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+        }
+
+        public double getPerSecond() {
+            return perSecond;
+        }
+
+        public void setPerSecond(double perSecond) {
+            this.perSecond = perSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+    }
 }
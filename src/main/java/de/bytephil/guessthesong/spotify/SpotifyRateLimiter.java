@@ -0,0 +1,106 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets for one Spotify account, one per {@link SpotifyCommandQueue.Endpoint}; every Web API
+ * request takes one token of its endpoint's bucket.
+ *
+ * Each bucket starts at its configured budget. A 429 blocks the whole account for its
+ * {@code Retry-After}, empties the bucket that was hit and halves its refill rate; every call that
+ * goes through afterwards wins back a tenth of the configured rate. So after a 429 the account
+ * settles just below the rate Spotify actually allows instead of hitting the limit again.
+ *
+ * Not thread-safe; used from the account's lane only.
+ */
+class SpotifyRateLimiter {
+
+    private static final double MIN_RATE_FRACTION = 0.1;
+
+    static final class Bucket {
+        final double configuredPerSecond;
+        final int burst;
+        double perSecond;
+        double tokens;
+        long lastRefillNanos;
+
+        Bucket(SpotifyProperties.Budget budget, long nowNanos) {
+            this.configuredPerSecond = Math.max(0.01, budget.getPerSecond());
+            this.burst = Math.max(1, budget.getBurst());
+            this.perSecond = configuredPerSecond;
+            this.tokens = burst;
+            this.lastRefillNanos = nowNanos;
+        }
+
+        void refill(long nowNanos) {
+            double elapsedSeconds = (nowNanos - lastRefillNanos) / 1e9;
+            if (elapsedSeconds > 0) {
+                tokens = Math.min(burst, tokens + elapsedSeconds * perSecond);
+                lastRefillNanos = nowNanos;
+            }
+        }
+    }
+
+    private final Map<SpotifyCommandQueue.Endpoint, Bucket> buckets = new EnumMap<>(SpotifyCommandQueue.Endpoint.class);
+    private long blockedUntilNanos;
+
+    SpotifyRateLimiter(SpotifyProperties properties, long nowNanos) {
+        for (SpotifyCommandQueue.Endpoint endpoint : SpotifyCommandQueue.Endpoint.values()) {
+            buckets.put(endpoint, new Bucket(properties.budgetFor(endpoint), nowNanos));
+        }
+    }
+
+    /**
+     * Takes a token for the endpoint. Returns 0 if one was available, otherwise how many nanoseconds
+     * to wait before trying again (nothing is taken then).
+     */
+    long tryAcquire(SpotifyCommandQueue.Endpoint endpoint, long nowNanos) {
+        long wait = waitNanos(endpoint, nowNanos);
+        if (wait == 0) {
+            buckets.get(endpoint).tokens -= 1;
+        }
+        return wait;
+    }
+
+    /**
+     * How many nanoseconds until the endpoint has a token (0: now), without taking it.
+     */
+    long waitNanos(SpotifyCommandQueue.Endpoint endpoint, long nowNanos) {
+        if (nowNanos < blockedUntilNanos) {
+            return blockedUntilNanos - nowNanos;
+        }
+        Bucket bucket = buckets.get(endpoint);
+        bucket.refill(nowNanos);
+        if (bucket.tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - bucket.tokens) / bucket.perSecond * 1e9);
+    }
+
+    void onSuccess(SpotifyCommandQueue.Endpoint endpoint) {
+        Bucket bucket = buckets.get(endpoint);
+        if (bucket.perSecond < bucket.configuredPerSecond) {
+            bucket.perSecond = Math.min(bucket.configuredPerSecond,
+                    bucket.perSecond + bucket.configuredPerSecond * 0.1);
+        }
+    }
+
+    void onRateLimited(SpotifyCommandQueue.Endpoint endpoint, int retryAfterSeconds, long nowNanos) {
+        blockedUntilNanos = Math.max(blockedUntilNanos,
+                nowNanos + TimeUnit.SECONDS.toNanos(Math.max(1, retryAfterSeconds)));
+        Bucket bucket = buckets.get(endpoint);
+        bucket.tokens = 0;
+        bucket.lastRefillNanos = blockedUntilNanos;
+        bucket.perSecond = Math.max(bucket.configuredPerSecond * MIN_RATE_FRACTION, bucket.perSecond / 2);
+    }
+
+    boolean isBlocked(long nowNanos) {
+        return nowNanos < blockedUntilNanos;
+    }
+
+    double currentRate(SpotifyCommandQueue.Endpoint endpoint) {
+        return buckets.get(endpoint).perSecond;
+    }
+}
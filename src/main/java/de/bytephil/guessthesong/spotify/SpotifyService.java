@@ -1,6 +1,5 @@
 package de.bytephil.guessthesong.spotify;
 
-import java.net.URI;
 import java.time.Instant;
 
 import org.slf4j.Logger;
@@ -11,6 +10,7 @@ import jakarta.annotation.PostConstruct;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
 import se.michaelthelin.spotify.model_objects.credentials.AuthorizationCodeCredentials;
+import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
 
 import jakarta.servlet.http.HttpSession;
 
@@ -23,40 +23,63 @@ public class SpotifyService {
     public static final String SESSION_STATE_KEY = "SPOTIFY_OAUTH_STATE";
 
     private final SpotifyProperties properties;
+    private final SpotifyClients clients;
+    private final SpotifyTokenRefresher tokenRefresher;
+    private final SpotifyTokenStore tokenStore;
+    private final SpotifyMetrics metrics;
 
-    // In-memory token shared across the whole backend process.
+    // Token shared across the whole backend process.
     // This makes Spotify control independent of any particular browser/HTTP session.
-    // Note: This is not persisted; restarting the server loses the token.
+    // Persisted by the SpotifyTokenStore, so a restart picks it up again.
     private volatile SpotifySessionToken globalToken;
 
-    public SpotifyService(SpotifyProperties properties) {
+    // Concurrent identical reads per account (poller, rooms, REST) share one request.
+    private final SingleFlight reads = new SingleFlight();
+
+    public SpotifyService(SpotifyProperties properties, SpotifyClients clients,
+            SpotifyTokenRefresher tokenRefresher, SpotifyTokenStore tokenStore, SpotifyMetrics metrics) {
         this.properties = properties;
+        this.clients = clients;
+        this.tokenRefresher = tokenRefresher;
+        this.tokenStore = tokenStore;
+        this.metrics = metrics;
     }
 
+    /**
+     * Picks up the stored global token (or the configured refresh token) without any network I/O:
+     * a still valid access token is served at once, an expired one is refreshed in the background.
+     */
     @PostConstruct
-    void initGlobalTokenFromConfig() {
-        String refreshToken = properties.getGlobalRefreshToken();
-        if (refreshToken == null || refreshToken.isBlank()) {
+    void initGlobalToken() {
+        String configured = properties.getGlobalRefreshToken();
+        configured = configured != null && !configured.isBlank() ? configured.trim() : null;
+
+        SpotifySessionToken token = tokenStore.load();
+        if (token != null && configured != null && !configured.equals(token.getRefreshToken())) {
+            // The configured token was changed since the store was written: it wins.
+            token = null;
+        }
+        if (token == null && configured != null) {
+            // Expired on purpose so the refresher fetches an access token right away.
+            token = new SpotifySessionToken(null, configured, 0);
+        }
+        if (token == null) {
             return;
         }
 
-        // Mark as expired so refreshGlobal() will fetch a fresh access token.
-        globalToken = new SpotifySessionToken(null, refreshToken.trim(), 0);
-        try {
-            refreshGlobal();
-            logger.info("Initialized global Spotify token from config refresh token");
-        } catch (Exception e) {
-            globalToken = null;
-            logger.warn("Failed to initialize global Spotify token from config (global token disabled)", e);
+        globalToken = token;
+        tokenRefresher.track(SpotifyAccount.GLOBAL_KEY, token);
+        if (token.getAccessToken() != null && !token.isExpiredOrNearExpiry(System.currentTimeMillis(), 0)) {
+            logger.info("Global Spotify token restored (valid for {}s)",
+                    (token.getExpiresAtEpochMs() - System.currentTimeMillis()) / 1000);
+        } else {
+            logger.info("Global Spotify token will be refreshed in the background");
+            tokenRefresher.refreshIfExpired(SpotifyAccount.GLOBAL_KEY);
         }
     }
 
     public SpotifyApi newBaseApi() {
-        return new SpotifyApi.Builder()
-                .setClientId(properties.getClientId())
-                .setClientSecret(properties.getClientSecret())
-                .setRedirectUri(URI.create(properties.getRedirectUri()))
-                .build();
+        return clients.base();
     }
 
     public SpotifySessionToken getToken(HttpSession session) {
@@ -69,32 +92,22 @@ public class SpotifyService {
 
     public void setToken(HttpSession session, SpotifySessionToken token) {
         session.setAttribute(SESSION_TOKEN_KEY, token);
+        tokenRefresher.track(SpotifyAccount.forSession(session).key(), token);
     }
 
     public void clearToken(HttpSession session) {
         session.removeAttribute(SESSION_TOKEN_KEY);
+        String key = SpotifyAccount.forSession(session).key();
+        tokenRefresher.untrack(key);
+        clients.evict(key);
     }
 
-    public SpotifyApi apiForSession(HttpSession session) throws SpotifyWebApiException {
+    public SpotifyApi apiForSession(HttpSession session) {
         SpotifySessionToken token = getToken(session);
-        if (token == null) {
+        if (token == null || token.getAccessToken() == null) {
             return null;
         }
-
-        long now = Instant.now().toEpochMilli();
-        // refresh 60s before expiry
-        if (token.getRefreshToken() != null && token.isExpiredOrNearExpiry(now, 60_000)) {
-            refresh(session);
-            token = getToken(session);
-        }
-
-        return new SpotifyApi.Builder()
-                .setClientId(properties.getClientId())
-                .setClientSecret(properties.getClientSecret())
-                .setRedirectUri(URI.create(properties.getRedirectUri()))
-                .setAccessToken(token.getAccessToken())
-                .setRefreshToken(token.getRefreshToken())
-                .build();
+        return clientFor(SpotifyAccount.forSession(session).key(), token);
     }
 
     public SpotifySessionToken getGlobalToken() {
@@ -103,102 +116,108 @@ public class SpotifyService {
 
     public void setGlobalToken(SpotifySessionToken token) {
         this.globalToken = token;
+        tokenRefresher.track(SpotifyAccount.GLOBAL_KEY, token);
+        tokenStore.save(token);
     }
 
     public void clearGlobalToken() {
         this.globalToken = null;
+        tokenRefresher.untrack(SpotifyAccount.GLOBAL_KEY);
+        clients.evict(SpotifyAccount.GLOBAL_KEY);
+        tokenStore.delete();
     }
 
-    public SpotifyApi apiForGlobal() throws SpotifyWebApiException {
+    public SpotifyApi apiForGlobal() {
         SpotifySessionToken token = globalToken;
-        if (token == null) {
+        if (token == null || token.getAccessToken() == null) {
             return null;
         }
+        return clientFor(SpotifyAccount.GLOBAL_KEY, token);
+    }
 
-        long now = Instant.now().toEpochMilli();
-        // refresh 60s before expiry
-        if (token.getRefreshToken() != null && token.isExpiredOrNearExpiry(now, 60_000)) {
-            refreshGlobal();
-            token = globalToken;
+    /**
+     * The account's client with its current token. Tokens are refreshed ahead of expiry by the
+     * {@link SpotifyTokenRefresher}; if one is already expired, a refresh is started but not waited for.
+     */
+    private SpotifyApi clientFor(String accountKey, SpotifySessionToken token) {
+        tokenRefresher.touch(accountKey, token);
+        if (token.isExpiredOrNearExpiry(System.currentTimeMillis(), 0)) {
+            tokenRefresher.refreshIfExpired(accountKey);
         }
+        return clients.forToken(accountKey, token);
+    }
 
-        if (token == null) {
+    /**
+     * The API client for the account, or null if it has no usable token. Never waits on an OAuth call.
+     */
+    public SpotifyApi apiFor(SpotifyAccount account) {
+        if (account.isGlobal()) {
+            return apiForGlobal();
+        }
+        return apiForSession(account.session());
+    }
+
+    /**
+     * The account a room should play on: the global token if present, otherwise the given
+     * HTTP session if it holds a token. Never does I/O.
+     */
+    public SpotifyAccount accountFor(HttpSession session) {
+        SpotifySessionToken global = globalToken;
+        if (global != null && global.getAccessToken() != null) {
+            return SpotifyAccount.global();
+        }
+        if (session == null) {
             return null;
         }
+        try {
+            return getToken(session) != null ? SpotifyAccount.forSession(session) : null;
+        } catch (IllegalStateException e) {
+            // session invalidated
+            return null;
+        }
+    }
 
-        return new SpotifyApi.Builder()
-                .setClientId(properties.getClientId())
-                .setClientSecret(properties.getClientSecret())
-                .setRedirectUri(URI.create(properties.getRedirectUri()))
-                .setAccessToken(token.getAccessToken())
-                .setRefreshToken(token.getRefreshToken())
-                .build();
+    /**
+     * Reads the account's current playback. Concurrent callers for the same account share one request.
+     */
+    public CurrentlyPlayingContext currentPlayback(SpotifyAccount account, SpotifyApi api) throws Exception {
+        return reads.execute(account.key() + "|playback",
+                () -> metrics.record("getPlayback",
+                        () -> api.getInformationAboutUsersCurrentPlayback().build().execute()));
+    }
+
+    public SingleFlight getReads() {
+        return reads;
     }
 
     public SpotifySessionToken exchangeCodeForToken(String code) throws Exception {
         SpotifyApi api = newBaseApi();
-        AuthorizationCodeCredentials creds = api.authorizationCode(code).build().execute();
+        AuthorizationCodeCredentials creds = metrics.record("authorizationCode",
+                () -> api.authorizationCode(code).build().execute());
 
         long expiresAt = Instant.now().toEpochMilli() + (creds.getExpiresIn() * 1000L);
         return new SpotifySessionToken(creds.getAccessToken(), creds.getRefreshToken(), expiresAt);
     }
 
+    /**
+     * Refreshes the session's token now (blocking). Normally the background refresher does this.
+     */
     public void refresh(HttpSession session) throws SpotifyWebApiException {
-        SpotifySessionToken token = getToken(session);
-        if (token == null || token.getRefreshToken() == null) {
-            return;
-        }
+        refreshNow(SpotifyAccount.forSession(session).key());
+    }
+
+    /**
+     * Refreshes the global token now (blocking). Normally the background refresher does this.
+     */
+    public void refreshGlobal() throws SpotifyWebApiException {
+        refreshNow(SpotifyAccount.GLOBAL_KEY);
+    }
 
+    private void refreshNow(String accountKey) throws SpotifyWebApiException {
         try {
-            SpotifyApi api = new SpotifyApi.Builder()
-                    .setClientId(properties.getClientId())
-                    .setClientSecret(properties.getClientSecret())
-                    .setRedirectUri(URI.create(properties.getRedirectUri()))
-                    .setRefreshToken(token.getRefreshToken())
-                    .build();
-
-            AuthorizationCodeCredentials refreshed = api.authorizationCodeRefresh().build().execute();
-            long expiresAt = Instant.now().toEpochMilli() + (refreshed.getExpiresIn() * 1000L);
-
-            // Spotify may not always return a refresh token on refresh
-            token.setAccessToken(refreshed.getAccessToken());
-            token.setExpiresAtEpochMs(expiresAt);
-            setToken(session, token);
+            tokenRefresher.refreshNow(accountKey);
         } catch (Exception e) {
             throw new SpotifyWebApiException("Failed to refresh Spotify token", e);
         }
     }
-
-    public void refreshGlobal() throws SpotifyWebApiException {
-        // Only one refresh at a time.
-        synchronized (this) {
-            SpotifySessionToken token = globalToken;
-            if (token == null || token.getRefreshToken() == null) {
-                return;
-            }
-
-            long now = Instant.now().toEpochMilli();
-            if (!token.isExpiredOrNearExpiry(now, 60_000)) {
-                return;
-            }
-
-            try {
-                SpotifyApi api = new SpotifyApi.Builder()
-                        .setClientId(properties.getClientId())
-                        .setClientSecret(properties.getClientSecret())
-                        .setRedirectUri(URI.create(properties.getRedirectUri()))
-                        .setRefreshToken(token.getRefreshToken())
-                        .build();
-
-                AuthorizationCodeCredentials refreshed = api.authorizationCodeRefresh().build().execute();
-                long expiresAt = Instant.now().toEpochMilli() + (refreshed.getExpiresIn() * 1000L);
-
-                token.setAccessToken(refreshed.getAccessToken());
-                token.setExpiresAtEpochMs(expiresAt);
-                globalToken = token;
-            } catch (Exception e) {
-                throw new SpotifyWebApiException("Failed to refresh Spotify token", e);
-            }
-        }
-    }
 }
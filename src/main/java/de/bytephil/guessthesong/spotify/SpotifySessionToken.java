@@ -2,48 +2,53 @@ package de.bytephil.guessthesong.spotify;
 
 import java.io.Serializable;
 
+/**
+ * An account's tokens. A refresh replaces all three values at once, so readers on other threads
+ * never see a new access token with the old expiry or refresh token.
+ */
 public class SpotifySessionToken implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private String accessToken;
-    private String refreshToken;
-    private long expiresAtEpochMs;
-
-    public SpotifySessionToken() {
+    /**
+     * One consistent set of the token's values.
+     */
+    public record Credentials(String accessToken, String refreshToken, long expiresAtEpochMs)
+            implements Serializable {
     }
 
+    private volatile Credentials credentials;
+
     public SpotifySessionToken(String accessToken, String refreshToken, long expiresAtEpochMs) {
-        this.accessToken = accessToken;
-        this.refreshToken = refreshToken;
-        this.expiresAtEpochMs = expiresAtEpochMs;
+        this.credentials = new Credentials(accessToken, refreshToken, expiresAtEpochMs);
     }
 
-    public String getAccessToken() {
-        return accessToken;
+    public Credentials getCredentials() {
+        return credentials;
     }
 
-    public void setAccessToken(String accessToken) {
-        this.accessToken = accessToken;
+    /**
+     * Replaces the token's values after a refresh. Spotify does not always hand out a new refresh
+     * token, so a null or blank one keeps the current one.
+     */
+    public void refreshed(String accessToken, String refreshToken, long expiresAtEpochMs) {
+        String keep = refreshToken != null && !refreshToken.isBlank() ? refreshToken : credentials.refreshToken();
+        credentials = new Credentials(accessToken, keep, expiresAtEpochMs);
     }
 
-    public String getRefreshToken() {
-        return refreshToken;
+    public String getAccessToken() {
+        return credentials.accessToken();
     }
 
-    public void setRefreshToken(String refreshToken) {
-        this.refreshToken = refreshToken;
+    public String getRefreshToken() {
+        return credentials.refreshToken();
     }
 
     public long getExpiresAtEpochMs() {
-        return expiresAtEpochMs;
-    }
-
-    public void setExpiresAtEpochMs(long expiresAtEpochMs) {
-        this.expiresAtEpochMs = expiresAtEpochMs;
+        return credentials.expiresAtEpochMs();
     }
 
     public boolean isExpiredOrNearExpiry(long nowEpochMs, long safetyWindowMs) {
-        return expiresAtEpochMs <= (nowEpochMs + safetyWindowMs);
+        return credentials.expiresAtEpochMs() <= (nowEpochMs + safetyWindowMs);
     }
 }
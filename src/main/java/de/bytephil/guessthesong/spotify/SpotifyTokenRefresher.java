@@ -0,0 +1,203 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import jakarta.annotation.PreDestroy;
+import se.michaelthelin.spotify.model_objects.credentials.AuthorizationCodeCredentials;
+
+/**
+ * Refreshes every known {@link SpotifySessionToken} in the background, ahead of its expiry.
+ *
+ * Each token is refreshed {@code spotify.token-refresh-lead-ms} before it expires, minus a random
+ * jitter so tokens obtained together do not all refresh in the same tick. At most one refresh per
+ * token is in flight; callers that need one while it runs share its future. Callers on the request
+ * path only ever trigger a refresh, they never wait for it.
+ */
+@Component
+public class SpotifyTokenRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyTokenRefresher.class);
+
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    private static final class Tracked {
+        final SpotifySessionToken token;
+        final AtomicReference<CompletableFuture<Void>> inFlight = new AtomicReference<>();
+        volatile long refreshAtMs;
+        volatile long lastUsedMs = System.currentTimeMillis();
+        volatile int failures;
+
+        Tracked(SpotifySessionToken token) {
+            this.token = token;
+        }
+    }
+
+    private final SpotifyClients clients;
+    private final SpotifyProperties properties;
+    private final SpotifyTokenStore tokenStore;
+    private final SpotifyMetrics metrics;
+    // Keyed by account; one token can back several accounts (login sets the session and the global token).
+    private final Map<String, Tracked> tokens = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public SpotifyTokenRefresher(SpotifyClients clients, SpotifyProperties properties,
+            SpotifyTokenStore tokenStore, SpotifyMetrics metrics, BlockingExecutors executors) {
+        this.clients = clients;
+        this.properties = properties;
+        this.tokenStore = tokenStore;
+        this.metrics = metrics;
+        this.executor = executors.newExecutor("spotify-token-");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts refreshing the token for the account (replacing the account's previous token).
+     */
+    public void track(String accountKey, SpotifySessionToken token) {
+        Tracked tracked = null;
+        for (Tracked t : tokens.values()) {
+            if (t.token == token) {
+                tracked = t;
+                break;
+            }
+        }
+        if (tracked == null) {
+            tracked = new Tracked(token);
+            tracked.refreshAtMs = nextRefreshAt(token);
+        }
+        tokens.put(accountKey, tracked);
+    }
+
+    public void untrack(String accountKey) {
+        tokens.remove(accountKey);
+    }
+
+    /**
+     * Notes that the account's token is in use; tokens of accounts unused for
+     * {@code spotify.token-idle-untrack-ms} stop being refreshed (except the global one), until
+     * they are used again.
+     */
+    public void touch(String accountKey, SpotifySessionToken token) {
+        Tracked t = tokens.get(accountKey);
+        if (t == null) {
+            // Untracked while idle: refresh it again from now on.
+            track(accountKey, token);
+            t = tokens.get(accountKey);
+        }
+        if (t != null) {
+            t.lastUsedMs = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Starts a refresh now if the token is already (nearly) expired, e.g. because the scheduler fell
+     * behind. Never blocks.
+     */
+    public void refreshIfExpired(String accountKey) {
+        Tracked t = tokens.get(accountKey);
+        if (t != null && t.token.isExpiredOrNearExpiry(System.currentTimeMillis(), 0)) {
+            refreshAsync(t);
+        }
+    }
+
+    /**
+     * Refreshes the account's token now, joining a refresh already in flight. Blocking; not for request threads.
+     */
+    public void refreshNow(String accountKey) {
+        Tracked t = tokens.get(accountKey);
+        if (t != null) {
+            refreshAsync(t).join();
+        }
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    @Scheduled(fixedDelayString = "${spotify.token-refresh-tick-ms:5000}")
+    void refreshDueTokens() {
+        long now = System.currentTimeMillis();
+        long idleCutoff = now - properties.getTokenIdleUntrackMs();
+        tokens.entrySet().removeIf(e -> !SpotifyAccount.GLOBAL_KEY.equals(e.getKey())
+                && e.getValue().lastUsedMs < idleCutoff);
+        for (Tracked t : tokens.values()) {
+            if (now >= t.refreshAtMs) {
+                refreshAsync(t);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> refreshAsync(Tracked t) {
+        while (true) {
+            CompletableFuture<Void> running = t.inFlight.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<Void> mine = new CompletableFuture<>();
+            if (t.inFlight.compareAndSet(null, mine)) {
+                executor.execute(() -> {
+                    try {
+                        refresh(t);
+                        mine.complete(null);
+                    } catch (Exception e) {
+                        mine.completeExceptionally(e);
+                    } finally {
+                        t.inFlight.set(null);
+                    }
+                });
+                return mine;
+            }
+        }
+    }
+
+    private void refresh(Tracked t) throws Exception {
+        SpotifySessionToken token = t.token;
+        if (token.getRefreshToken() == null) {
+            t.refreshAtMs = Long.MAX_VALUE;
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            AuthorizationCodeCredentials refreshed = clients.forRefresh(token.getRefreshToken())
+                    .authorizationCodeRefresh().build().execute();
+            long expiresAt = System.currentTimeMillis() + (refreshed.getExpiresIn() * 1000L);
+            token.refreshed(refreshed.getAccessToken(), refreshed.getRefreshToken(), expiresAt);
+            metrics.recordTokenRefresh(System.nanoTime() - start, true);
+            t.failures = 0;
+            t.refreshAtMs = nextRefreshAt(token);
+            if (tokens.get(SpotifyAccount.GLOBAL_KEY) == t) {
+                tokenStore.save(token);
+            }
+            logger.debug("Spotify token refreshed (expires in {}s)", refreshed.getExpiresIn());
+        } catch (Exception e) {
+            metrics.recordTokenRefresh(System.nanoTime() - start, false);
+            int failures = ++t.failures;
+            long delay = Math.min(MAX_RETRY_DELAY_MS, 1_000L << Math.min(failures, 16));
+            t.refreshAtMs = System.currentTimeMillis() + delay;
+            logger.warn("Spotify token refresh failed ({} in a row, retry in {} ms)", failures, delay, e);
+            throw e;
+        }
+    }
+
+    private long nextRefreshAt(SpotifySessionToken token) {
+        long jitter = properties.getTokenRefreshJitterMs() > 0
+                ? ThreadLocalRandom.current().nextLong(properties.getTokenRefreshJitterMs())
+                : 0;
+        return token.getExpiresAtEpochMs() - properties.getTokenRefreshLeadMs() - jitter;
+    }
+}
@@ -0,0 +1,142 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the global Spotify token on disk (by default next to the external config, in
+ * {@code config/spotify-token.properties}), so a restart can serve with the last access token
+ * right away instead of waiting for a refresh.
+ *
+ * The file is a plain properties file, replaced atomically on every write; {@link #read(Path)} and
+ * {@link #write(Path, SpotifySessionToken)} work without Spring (e.g. for scripts or tests).
+ */
+@Component
+public class SpotifyTokenStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyTokenStore.class);
+
+    private static final String ACCESS_TOKEN = "access-token";
+    private static final String REFRESH_TOKEN = "refresh-token";
+    private static final String EXPIRES_AT = "expires-at-epoch-ms";
+
+    private final Path path;
+
+    public SpotifyTokenStore(SpotifyProperties properties) {
+        String configured = properties.getTokenStorePath();
+        this.path = configured != null && !configured.isBlank() ? Path.of(configured.trim()) : null;
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * The stored token, or null if there is none (or the store is disabled or unreadable).
+     */
+    public SpotifySessionToken load() {
+        if (path == null) {
+            return null;
+        }
+        try {
+            return read(path);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read stored Spotify token from '{}'", path, e);
+            return null;
+        }
+    }
+
+    public void save(SpotifySessionToken token) {
+        if (path == null || token == null) {
+            return;
+        }
+        try {
+            write(path, token);
+        } catch (IOException e) {
+            logger.warn("Failed to store Spotify token at '{}'", path, e);
+        }
+    }
+
+    public void delete() {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete stored Spotify token at '{}'", path, e);
+        }
+    }
+
+    public static SpotifySessionToken read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        String refreshToken = blankToNull(props.getProperty(REFRESH_TOKEN));
+        if (refreshToken == null) {
+            return null;
+        }
+        String expiresAt = blankToNull(props.getProperty(EXPIRES_AT));
+        return new SpotifySessionToken(blankToNull(props.getProperty(ACCESS_TOKEN)), refreshToken,
+                expiresAt != null ? Long.parseLong(expiresAt) : 0);
+    }
+
+    /**
+     * Writes to a temporary file in the same directory, then moves it over the old file, so readers
+     * only ever see a complete token.
+     */
+    public static void write(Path path, SpotifySessionToken token) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+
+        Properties props = new Properties();
+        if (token.getAccessToken() != null) {
+            props.setProperty(ACCESS_TOKEN, token.getAccessToken());
+        }
+        props.setProperty(REFRESH_TOKEN, token.getRefreshToken() != null ? token.getRefreshToken() : "");
+        props.setProperty(EXPIRES_AT, Long.toString(token.getExpiresAtEpochMs()));
+
+        Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            restrictToOwner(tmp);
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                props.store(writer, "Spotify token (written by the server, do not edit while it runs)");
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void restrictToOwner(Path file) {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            // not a POSIX file system
+        }
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+}
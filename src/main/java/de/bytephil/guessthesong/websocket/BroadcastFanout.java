@@ -0,0 +1,142 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Wraps sessions in {@link OutboundSession}s and fans broadcasts out to them in parallel.
+ *
+ * A broadcast only queues the frame per session (O(1) each); the writes run concurrently on the
+ * shared sender pool. Fan-out time is measured from the first enqueue until the last recipient's
+ * write has finished.
+ */
+@Component
+public class BroadcastFanout {
+
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastFanout.class);
+
+    /**
+     * Result of queueing one broadcast.
+     */
+    public record Result(int recipients, int queued, int dropped, int disconnected) {
+    }
+
+    private final WebSocketProperties properties;
+    private final ExecutorService senderPool;
+
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong disconnectedSessions = new AtomicLong();
+    private final AtomicLong lastFanoutNanos = new AtomicLong();
+    private final AtomicLong maxFanoutNanos = new AtomicLong();
+    private final Timer fanoutTimer;
+
+    public BroadcastFanout(WebSocketProperties properties, MeterRegistry registry, BlockingExecutors executors) {
+        this.properties = properties;
+        this.fanoutTimer = Timer.builder("ws.broadcast.fanout")
+                .description("Time from the first enqueue of a broadcast until its last write finished")
+                .register(registry);
+        FunctionCounter.builder("ws.broadcasts", broadcasts, AtomicLong::get).register(registry);
+        FunctionCounter.builder("ws.broadcast.failures", droppedMessages, AtomicLong::get)
+                .description("Frames not delivered to a recipient")
+                .tag("reason", "dropped")
+                .register(registry);
+        FunctionCounter.builder("ws.broadcast.failures", disconnectedSessions, AtomicLong::get)
+                .description("Frames not delivered to a recipient")
+                .tag("reason", "disconnected")
+                .register(registry);
+        this.senderPool = executors.newExecutor("ws-send-");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        senderPool.shutdownNow();
+    }
+
+    public OutboundSession decorate(WebSocketSession session) {
+        return new OutboundSession(session, senderPool, properties.getSendTimeLimitMs(),
+                properties.getBufferSizeLimit(), properties.getSlowConsumerPolicy());
+    }
+
+    public Result broadcast(Collection<? extends WebSocketSession> sessions, TextMessage message) {
+        long startNanos = System.nanoTime();
+        int recipients = sessions.size();
+        // +1 for the enqueue loop itself, so an empty or instant fan-out still completes once.
+        AtomicInteger pending = new AtomicInteger(recipients + 1);
+        Runnable onDone = () -> {
+            if (pending.decrementAndGet() == 0) {
+                recordFanout(System.nanoTime() - startNanos);
+            }
+        };
+
+        int queued = 0;
+        int dropped = 0;
+        int disconnected = 0;
+        for (WebSocketSession s : sessions) {
+            OutboundSession.Outcome outcome = s instanceof OutboundSession out
+                    ? out.enqueue(message, onDone)
+                    : OutboundSession.Outcome.CLOSED;
+            switch (outcome) {
+                case QUEUED -> queued++;
+                case DROPPED -> dropped++;
+                case DISCONNECTED -> disconnected++;
+                case CLOSED -> {
+                }
+            }
+            if (outcome != OutboundSession.Outcome.QUEUED) {
+                onDone.run();
+            }
+        }
+        onDone.run();
+
+        broadcasts.incrementAndGet();
+        if (dropped > 0 || disconnected > 0) {
+            droppedMessages.addAndGet(dropped);
+            disconnectedSessions.addAndGet(disconnected);
+            logger.info("Broadcast to {} sessions: {} laggards dropped the frame (closing), {} disconnected",
+                    recipients, dropped, disconnected);
+        }
+        return new Result(recipients, queued, dropped, disconnected);
+    }
+
+    private void recordFanout(long nanos) {
+        lastFanoutNanos.set(nanos);
+        maxFanoutNanos.accumulateAndGet(nanos, Math::max);
+        fanoutTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getBroadcasts() {
+        return broadcasts.get();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getDisconnectedSessions() {
+        return disconnectedSessions.get();
+    }
+
+    public long getLastFanoutNanos() {
+        return lastFanoutNanos.get();
+    }
+
+    public long getMaxFanoutNanos() {
+        return maxFanoutNanos.get();
+    }
+}
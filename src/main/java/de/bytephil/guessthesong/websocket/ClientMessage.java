@@ -1,10 +1,27 @@
 package de.bytephil.guessthesong.websocket;
 
+import de.bytephil.guessthesong.game.Buzzer;
+import de.bytephil.guessthesong.game.CommandDedup;
+
 public class ClientMessage {
-	public String type;
+	public MessageType type = MessageType.UNKNOWN;
 	public String playerName;
 	public String genreName;
 	public String playlistContextUri;
+	// Buzzer round the client is acting on (echoed from the last server message carrying "round").
+	public Long round;
+	// Client-chosen id, the same when a message is resent; a room runs each id only once.
+	public String commandId;
+	// Client clock (ms) when the buzzer was pressed or the clock sync probe answered ("at").
+	public double clientTimeMs = Double.NaN;
+	// Server time of the clock sync probe being answered, echoed back ("t0").
+	public long syncT0 = -1;
+
+	// Set by the server on receipt, not sent by clients.
+	public long receivedAtNanos;
+	public Buzzer.Outcome buzzOutcome;
+	public long pressedAtNanos;
+	public CommandDedup.Entry dedupEntry;
 
 	public ClientMessage() {
 	}
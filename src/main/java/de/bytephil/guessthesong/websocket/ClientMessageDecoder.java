@@ -0,0 +1,131 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.io.IOException;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Decodes inbound client messages with Jackson's streaming parser.
+ *
+ * Only the fields a message type needs are materialized; everything else is skipped token by
+ * token. The optional {@code answer:} prefix is skipped by offset, and the payload is parsed out
+ * of one char array the size of the message. That array is not pooled per thread: messages are
+ * decoded on virtual threads, which would each fill a pool slot of their own and never reuse it.
+ */
+@Component
+public class ClientMessageDecoder {
+
+    static final String ANSWER_PREFIX = "answer:";
+
+    private final JsonFactory jsonFactory;
+
+    public ClientMessageDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Returns null for payloads that are not a JSON object (e.g. {@code name:...} messages).
+     *
+     * @throws IOException if the payload starts like JSON but is malformed
+     */
+    public ClientMessage decode(String payload) throws IOException {
+        if (payload == null) {
+            return null;
+        }
+        int start = payload.startsWith(ANSWER_PREFIX) ? ANSWER_PREFIX.length() : 0;
+        int length = payload.length();
+        while (start < length && Character.isWhitespace(payload.charAt(start))) {
+            start++;
+        }
+        if (start >= length || payload.charAt(start) != '{') {
+            return null;
+        }
+
+        int contentLength = length - start;
+        char[] buffer = new char[contentLength];
+        payload.getChars(start, length, buffer, 0);
+
+        try (JsonParser parser = jsonFactory.createParser(buffer, 0, contentLength)) {
+            return read(parser);
+        }
+    }
+
+    private static ClientMessage read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        ClientMessage message = new ClientMessage();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "type" -> message.type = MessageType.fromWireName(textOrNull(parser, value));
+                case "playerName" -> message.playerName = textOrNull(parser, value);
+                case "commandId" -> message.commandId = textOrNull(parser, value);
+                case "at" -> {
+                    if (value.isNumeric()) {
+                        message.clientTimeMs = parser.getDoubleValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "t0" -> {
+                    if (value.isNumeric()) {
+                        message.syncT0 = parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "round" -> {
+                    if (value.isNumeric()) {
+                        message.round = parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                // Only game setup needs these; buzzes and round controls skip them unread.
+                case "genreName" -> {
+                    if (needsSetupFields(message.type)) {
+                        message.genreName = textOrNull(parser, value);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "playlistContextUri" -> {
+                    if (needsSetupFields(message.type)) {
+                        message.playlistContextUri = textOrNull(parser, value);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected token " + token + " in client message");
+        }
+        return message;
+    }
+
+    // Clients send "type" first; if it comes later the setup fields are kept just in case.
+    private static boolean needsSetupFields(MessageType type) {
+        return type == MessageType.UNKNOWN || type == MessageType.NEW_GAME || type == MessageType.GENRE_CHANGE;
+    }
+
+    private static String textOrNull(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.bytephil.guessthesong.game.GameEvent;
+
+/**
+ * Turns {@link GameEvent}s into ready-to-send frames, using one reusable {@link ObjectWriter}
+ * per event type from the application's {@link ObjectMapper}.
+ */
+@Component
+public class GameFrameEncoder {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public GameFrameEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public TextMessage encode(GameEvent event) throws JsonProcessingException {
+        return new TextMessage(writerFor(event.getClass()).writeValueAsString(event));
+    }
+
+    /**
+     * The event as broadcast: its JSON object with the room's sequence number appended as {@code seq}.
+     */
+    public TextMessage encode(GameEvent event, long seq) throws JsonProcessingException {
+        String json = writerFor(event.getClass()).writeValueAsString(event);
+        // Every event is a JSON object with at least its type, so the number goes in before the closing brace.
+        StringBuilder frame = new StringBuilder(json.length() + 28);
+        frame.append(json, 0, json.length() - 1).append(",\"seq\":").append(seq).append('}');
+        return new TextMessage(frame.toString());
+    }
+
+    /**
+     * The last event as replayed to late joiners: the event with its sequence number plus the current
+     * connection state and genre.
+     */
+    public TextMessage encodeReplay(GameEvent event, long seq, boolean spotifyConnected, String genreName)
+            throws JsonProcessingException {
+        ObjectNode node = objectMapper.valueToTree(event);
+        node.put("seq", seq);
+        node.put("spotifyConnected", spotifyConnected);
+        if (genreName != null) {
+            node.put("genreName", genreName);
+        }
+        return new TextMessage(objectMapper.writeValueAsString(node));
+    }
+
+    private ObjectWriter writerFor(Class<?> type) {
+        return writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+}
@@ -0,0 +1,43 @@
+package de.bytephil.guessthesong.websocket;
+
+/**
+ * Inbound message types, by their wire name in the {@code type} field.
+ */
+public enum MessageType {
+
+    NEW_GAME("newGame"),
+    GENRE_CHANGE("genreChange"),
+    PLAYER_GUESS("playerGuess"),
+    SHOW_ANSWER("showAnswer"),
+    NEXT_ROUND("nextRound"),
+    GUESS_AGAIN("guessAgain"),
+    // A client's answer to the server's clock sync probe (see SessionClocks).
+    TIME_SYNC("timeSync"),
+    UNKNOWN(null);
+
+    private final String wireName;
+
+    MessageType(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String getWireName() {
+        return wireName;
+    }
+
+    public static MessageType fromWireName(String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+        return switch (name) {
+            case "newGame" -> NEW_GAME;
+            case "genreChange" -> GENRE_CHANGE;
+            case "playerGuess" -> PLAYER_GUESS;
+            case "showAnswer" -> SHOW_ANSWER;
+            case "nextRound" -> NEXT_ROUND;
+            case "guessAgain" -> GUESS_AGAIN;
+            case "timeSync" -> TIME_SYNC;
+            default -> UNKNOWN;
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import de.bytephil.guessthesong.game.SerialExecutor;
+
+/**
+ * Session decorator with its own outbound queue, modelled on Spring's
+ * {@code ConcurrentWebSocketSessionDecorator}.
+ *
+ * Sends never block the caller: messages are queued and written in order by a per-session lane on
+ * a shared sender pool, so a slow client only holds up itself. When the current write has been
+ * running longer than the send-time limit, or the queue exceeds the buffer-size limit, the
+ * session is a laggard and the overflow strategy applies: TERMINATE closes the session at once,
+ * abandoning what is queued; DROP discards the new message and every later one, and closes the
+ * session once the messages queued before it are written. Either way the client never sees a gap
+ * in the frame sequence: it reconnects and resumes from the last frame it got.
+ */
+public class OutboundSession extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundSession.class);
+
+    public enum Outcome {
+        QUEUED,
+        /** Not sent; the session closes after its queued messages (DROP). */
+        DROPPED,
+        DISCONNECTED,
+        CLOSED
+    }
+
+    private final SerialExecutor sender;
+    private final Executor closer;
+    private final int sendTimeLimitMs;
+    private final int bufferSizeLimit;
+    private final OverflowStrategy overflowStrategy;
+
+    private final AtomicInteger bufferedBytes = new AtomicInteger();
+    private volatile long sendStartedAtMs;
+    private volatile boolean terminated;
+    // Nothing more is queued; the session closes once the queued messages are written.
+    private volatile boolean closing;
+    private volatile long lastSeenMs = System.currentTimeMillis();
+
+    public OutboundSession(WebSocketSession delegate, Executor senderPool, int sendTimeLimitMs, int bufferSizeLimit,
+            OverflowStrategy overflowStrategy) {
+        super(delegate);
+        this.sender = new SerialExecutor("ws-send-" + delegate.getId(), senderPool);
+        this.closer = senderPool;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.overflowStrategy = overflowStrategy;
+    }
+
+    public int getBufferSize() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * Records that the client was heard from (any message, or a pong).
+     */
+    public void markSeen() {
+        lastSeenMs = System.currentTimeMillis();
+    }
+
+    public long getLastSeenMs() {
+        return lastSeenMs;
+    }
+
+    /**
+     * Queues the message; {@code onDone} (may be null) runs after the write finished or was abandoned.
+     */
+    public Outcome enqueue(WebSocketMessage<?> message, Runnable onDone) {
+        if (terminated || closing || !isOpen()) {
+            return Outcome.CLOSED;
+        }
+
+        int size = message.getPayloadLength();
+        long started = sendStartedAtMs;
+        boolean slow = started > 0 && System.currentTimeMillis() - started > sendTimeLimitMs;
+        if (slow || bufferedBytes.get() + size > bufferSizeLimit) {
+            if (overflowStrategy == OverflowStrategy.DROP) {
+                closeAfterQueued(CloseStatus.SESSION_NOT_RELIABLE);
+                return Outcome.DROPPED;
+            }
+            terminate(CloseStatus.SESSION_NOT_RELIABLE);
+            return Outcome.DISCONNECTED;
+        }
+
+        bufferedBytes.addAndGet(size);
+        sender.execute(() -> {
+            try {
+                if (!terminated && isOpen()) {
+                    sendStartedAtMs = System.currentTimeMillis();
+                    getDelegate().sendMessage(message);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.info("WS {} -> send failed", getId(), e);
+            } finally {
+                sendStartedAtMs = 0;
+                bufferedBytes.addAndGet(-size);
+                if (onDone != null) {
+                    onDone.run();
+                }
+            }
+        });
+        return Outcome.QUEUED;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        enqueue(message, null);
+    }
+
+    /**
+     * Closes the session after the messages queued so far; nothing more is queued from now on.
+     */
+    private void closeAfterQueued(CloseStatus status) {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        sender.execute(() -> {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            try {
+                getDelegate().close(status);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("WS {} -> close ({}) failed", getId(), status, e);
+            }
+        });
+    }
+
+    /**
+     * Stops all sends and closes the session in the background; nothing more is queued from now on.
+     */
+    public void terminate(CloseStatus status) {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        // Not on the session's own lane: that one may be stuck in a slow write.
+        closer.execute(() -> {
+            try {
+                getDelegate().close(status);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("WS {} -> close ({}) failed", getId(), status, e);
+            }
+        });
+    }
+}
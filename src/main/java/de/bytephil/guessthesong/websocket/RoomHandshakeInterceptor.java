@@ -0,0 +1,52 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.Map;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Copies the join code from {@code /ws?room=<code>} into the WebSocket session attributes, and the
+ * resume point of a reconnecting client ({@code &log=<id>&since=<seq>}, see {@code EventLog}).
+ */
+public class RoomHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String ROOM_CODE_ATTR = "ROOM_CODE";
+    public static final String RESUME_LOG_ATTR = "RESUME_LOG";
+    public static final String RESUME_SEQ_ATTR = "RESUME_SEQ";
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Map<String, Object> attributes) {
+
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams();
+        String code = params.getFirst("room");
+        if (code != null && !code.isBlank()) {
+            attributes.put(ROOM_CODE_ATTR, code);
+        }
+
+        String log = params.getFirst("log");
+        String since = params.getFirst("since");
+        if (log != null && !log.isBlank() && since != null) {
+            try {
+                attributes.put(RESUME_SEQ_ATTR, Long.parseLong(since));
+                attributes.put(RESUME_LOG_ATTR, log);
+            } catch (NumberFormatException e) {
+                // not resumable: the client gets the full state
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Exception exception) {
+        // no-op
+    }
+}
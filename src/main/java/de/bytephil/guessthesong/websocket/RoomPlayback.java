@@ -0,0 +1,155 @@
+package de.bytephil.guessthesong.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import de.bytephil.guessthesong.game.CommandCoalescing;
+import de.bytephil.guessthesong.game.Room;
+import de.bytephil.guessthesong.game.TrackDeck;
+import de.bytephil.guessthesong.playback.PlaybackBackend;
+import de.bytephil.guessthesong.playback.PlaybackController;
+import de.bytephil.guessthesong.spotify.PlaybackState;
+import de.bytephil.guessthesong.spotify.PlaybackStateCache;
+import de.bytephil.guessthesong.spotify.PlaylistCatalog;
+import de.bytephil.guessthesong.spotify.SpotifyAccount;
+import de.bytephil.guessthesong.spotify.SpotifyCommandQueue;
+import de.bytephil.guessthesong.spotify.SpotifyService;
+import jakarta.servlet.http.HttpSession;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+/**
+ * The Spotify side of the rooms: which account a room plays on, the account's playback state, and
+ * the way its commands go (coalesced per room, then queued per account).
+ */
+@Component
+public class RoomPlayback {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomPlayback.class);
+
+    private final SpotifyService spotifyService;
+    private final SpotifyCommandQueue commands;
+    private final PlaybackStateCache cache;
+    private final PlaylistCatalog playlistCatalog;
+    private final CommandCoalescing coalescing;
+    private final PlaybackBackend playbackBackend;
+
+    public RoomPlayback(SpotifyService spotifyService, SpotifyCommandQueue commands, PlaybackStateCache cache,
+            PlaylistCatalog playlistCatalog, CommandCoalescing coalescing, PlaybackBackend playbackBackend) {
+        this.spotifyService = spotifyService;
+        this.commands = commands;
+        this.cache = cache;
+        this.playlistCatalog = playlistCatalog;
+        this.coalescing = coalescing;
+        this.playbackBackend = playbackBackend;
+    }
+
+    public SpotifyCommandQueue getCommands() {
+        return commands;
+    }
+
+    public PlaybackStateCache getCache() {
+        return cache;
+    }
+
+    public CommandCoalescing getCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Whether the server-wide Spotify account is connected.
+     */
+    boolean isSpotifyConnected() {
+        return spotifyService.getGlobalToken() != null;
+    }
+
+    /**
+     * The Spotify account the room plays on. Runs on the room's lane and never does I/O; the
+     * token itself is resolved (and refreshed) later on the account's command queue.
+     */
+    SpotifyAccount accountFor(Room room) {
+        SpotifyAccount account = resolveAccount(room);
+        if (account != null) {
+            cache.markActive(account);
+        }
+        return account;
+    }
+
+    private SpotifyAccount resolveAccount(Room room) {
+        SpotifyAccount provided = playbackBackend.accountForRoom(room.getCode());
+        if (provided != null) {
+            return provided;
+        }
+
+        SpotifyAccount global = spotifyService.accountFor(null);
+        if (global != null) {
+            return global;
+        }
+
+        HttpSession bound = room.getSpotifySession();
+        if (bound != null) {
+            SpotifyAccount account = spotifyService.accountFor(bound);
+            if (account != null) {
+                return account;
+            }
+            room.setSpotifySession(null);
+        }
+
+        for (WebSocketSession s : room.getSessions()) {
+            HttpSession httpSession = (HttpSession) s.getAttributes()
+                    .get(HttpSessionHandshakeInterceptor.HTTP_SESSION_ATTR);
+            if (httpSession == null) {
+                continue;
+            }
+
+            SpotifyAccount account = spotifyService.accountFor(httpSession);
+            if (account != null) {
+                logger.info("WS -> Room {} bound to Spotify token from HTTP session {} (ws={})",
+                        room.getCode(), httpSession.getId(), s.getId());
+                room.setSpotifySession(httpSession);
+                return account;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The account's playback state: the poller's snapshot if it is fresh enough, otherwise one
+     * read (stored for the next caller). A 429 propagates so the command queue backs off for the account.
+     */
+    PlaybackState playbackFor(SpotifyAccount account, PlaybackController player, String wsId)
+            throws TooManyRequestsException {
+        PlaybackState cached = cache.getFresh(account);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            PlaybackState state = player.getState();
+            cache.put(account, state);
+            return state;
+        } catch (TooManyRequestsException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.warn("WS {} -> spotify get playback failed", wsId, e);
+            return PlaybackState.UNKNOWN;
+        }
+    }
+
+    /**
+     * Draws the next track of the room's deck, (re)loading the playlist first if needed.
+     * Returns null if the playlist cannot be read; a 429 propagates.
+     */
+    String drawFromPlaylist(PlaybackController player, TrackDeck deck, String wsId)
+            throws TooManyRequestsException {
+        try {
+            PlaylistCatalog.Tracks tracks = playlistCatalog.tracks(player, deck.getPlaylistUri());
+            deck.load(tracks.snapshotId(), tracks.uris());
+        } catch (TooManyRequestsException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.warn("WS {} -> spotify playlist {} could not be read", wsId, deck.getPlaylistUri(), e);
+        }
+        return deck.next();
+    }
+}
@@ -0,0 +1,164 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import de.bytephil.guessthesong.cluster.ClusterMessage;
+import de.bytephil.guessthesong.cluster.GameEventBus;
+import de.bytephil.guessthesong.cluster.RoomOwnership;
+import de.bytephil.guessthesong.game.Room;
+import de.bytephil.guessthesong.game.RoomRegistry;
+
+/**
+ * Connects the rooms of this node to the other nodes of the cluster.
+ *
+ * For rooms owned elsewhere this node only relays: client messages go to the owner, and the
+ * owner's frames are fanned out to the room's sessions here. For rooms owned here, every frame
+ * is also published for the relays. Without {@code cluster.nodes} every room is owned here and
+ * nothing goes over the bus.
+ */
+@Component
+public class RoomRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomRelay.class);
+
+    private final GameEventBus bus;
+    private final RoomOwnership ownership;
+    private final RoomRegistry roomRegistry;
+    private final BroadcastFanout broadcastFanout;
+
+    // Room topics this node follows as a relay, while it has sessions in the room.
+    private final Map<String, GameEventBus.Subscription> relayed = new ConcurrentHashMap<>();
+
+    public RoomRelay(GameEventBus bus, RoomOwnership ownership, RoomRegistry roomRegistry,
+            BroadcastFanout broadcastFanout) {
+        this.bus = bus;
+        this.ownership = ownership;
+        this.roomRegistry = roomRegistry;
+        this.broadcastFanout = broadcastFanout;
+    }
+
+    /**
+     * Receives the COMMAND and JOIN messages relays send for rooms owned here.
+     */
+    public void listenAsOwner(Consumer<ClusterMessage> listener) {
+        String self = ownership.getLocalNodeId();
+        bus.subscribe(ClusterMessage.nodeTopic(self), message -> {
+            if (!self.equals(message.origin())) {
+                listener.accept(message);
+            }
+        });
+    }
+
+    public boolean isRelayed(Room room) {
+        return !ownership.isLocal(room.getCode());
+    }
+
+    /**
+     * A session joined a room owned elsewhere: follow the room and ask the owner for the join frames.
+     *
+     * @param resumePoint {@code <log>:<seq>} of a reconnecting client, or null
+     */
+    public void joined(Room room, WebSocketSession session, String resumePoint) {
+        String code = room.getCode();
+        relayed.compute(code, (k, subscription) -> subscription != null
+                ? subscription
+                : bus.subscribe(ClusterMessage.roomTopic(code), this::onRoomMessage));
+        send(code, ClusterMessage.join(ownership.getLocalNodeId(), code, session.getId(), resumePoint));
+    }
+
+    /**
+     * A session left a relayed room; stops following the room once nobody here plays in it.
+     */
+    public void left(Room room) {
+        relayed.computeIfPresent(room.getCode(), (k, subscription) -> {
+            if (!room.isEmpty()) {
+                return subscription;
+            }
+            subscription.close();
+            return null;
+        });
+    }
+
+    /**
+     * @param pressedAtNanos when the player pressed, for buzzes (see {@link ClusterMessage#ageNanos()})
+     */
+    public void forward(Room room, WebSocketSession session, String payload, long pressedAtNanos) {
+        send(room.getCode(), ClusterMessage.command(ownership.getLocalNodeId(), room.getCode(), session.getId(),
+                payload, System.nanoTime() - pressedAtNanos));
+    }
+
+    /**
+     * Owner side: passes a frame of the room on to the relays.
+     */
+    public void publish(Room room, TextMessage frame) {
+        if (ownership.isClustered()) {
+            bus.publish(ClusterMessage.roomTopic(room.getCode()),
+                    ClusterMessage.frame(ownership.getLocalNodeId(), room.getCode(), frame.getPayload()));
+        }
+    }
+
+    /**
+     * Owner side: frames for one session connected to another node (its join frames, or the reply
+     * to a command it resent).
+     *
+     * @param sessionId the session's {@linkplain ClusterMessage#qualify qualified} id
+     */
+    public void sendTo(Room room, String sessionId, List<TextMessage> frames) {
+        List<String> payloads = new ArrayList<>(frames.size());
+        for (TextMessage frame : frames) {
+            payloads.add(frame.getPayload());
+        }
+        bus.publish(ClusterMessage.roomTopic(room.getCode()), ClusterMessage.welcome(ownership.getLocalNodeId(),
+                room.getCode(), sessionId, payloads));
+    }
+
+    private void send(String roomCode, ClusterMessage message) {
+        bus.publish(ClusterMessage.nodeTopic(ownership.ownerOf(roomCode)), message);
+    }
+
+    private void onRoomMessage(ClusterMessage message) {
+        if (ownership.getLocalNodeId().equals(message.origin())) {
+            return;
+        }
+        Room room = roomRegistry.get(message.roomCode());
+        if (room == null) {
+            return;
+        }
+        // On the room's lane, like frames of rooms owned here: the welcome of a session that just
+        // joined and the frames broadcast around it reach it in the owner's order.
+        switch (message.kind()) {
+            case FRAME -> room.execute(
+                    () -> broadcastFanout.broadcast(room.getSessions(), new TextMessage(message.payload())));
+            case WELCOME -> room.execute(() -> {
+                String self = ownership.getLocalNodeId();
+                for (WebSocketSession session : room.getSessions()) {
+                    if (ClusterMessage.qualify(self, session.getId()).equals(message.sessionId())) {
+                        sendWelcome(session, message);
+                        break;
+                    }
+                }
+            });
+            default -> logger.debug("Room {} -> unexpected {} on the room topic", room.getCode(), message.kind());
+        }
+    }
+
+    private static void sendWelcome(WebSocketSession session, ClusterMessage message) {
+        try {
+            for (String frame : message.frames()) {
+                session.sendMessage(new TextMessage(frame));
+            }
+        } catch (Exception e) {
+            logger.info("WS {} -> welcome failed", session.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import de.bytephil.guessthesong.game.BuzzAdjudication;
+import de.bytephil.guessthesong.game.Room;
+import de.bytephil.guessthesong.game.RoomRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * NTP-style clock sync with every client connected to this node, over its WebSocket, so buzzes can
+ * be dated by when they were pressed rather than when they arrived.
+ *
+ * The server sends {@code {"type":"timeSync","t0":<server µs>}} and the client answers at once with
+ * the same t0 and its own clock as {@code at} (ms). Each answer is one sample of the round trip and
+ * of the client's clock offset, assuming the link is symmetric; the estimate is the sample with the
+ * shortest round trip of the last few, the one least distorted by queuing. A few probes go out right
+ * after connecting, then one per session every {@code game.clock-sync-interval-ms}.
+ */
+@Component
+public class SessionClocks {
+
+    private static final String CLOCK_ATTR = "CLOCK";
+
+    private static final int SAMPLES = 8;
+    private static final int INITIAL_PROBES = 4;
+
+    // Server time goes on the wire as microseconds since this base, well inside JavaScript's exact integers.
+    private static final long BASE_NANOS = System.nanoTime();
+
+    /**
+     * One session's samples. Written only from the session's inbound messages (which arrive one at a time).
+     */
+    static final class Clock {
+        private final long[] rttNanos = new long[SAMPLES];
+        private final long[] offsetNanos = new long[SAMPLES];
+        private int samples;
+        private volatile long bestRttNanos = -1;
+        private volatile long bestOffsetNanos;
+
+        void add(long rtt, long offset) {
+            int slot = samples % SAMPLES;
+            rttNanos[slot] = rtt;
+            offsetNanos[slot] = offset;
+            samples++;
+            int best = 0;
+            for (int i = 1; i < Math.min(samples, SAMPLES); i++) {
+                if (rttNanos[i] < rttNanos[best]) {
+                    best = i;
+                }
+            }
+            bestOffsetNanos = offsetNanos[best];
+            bestRttNanos = rttNanos[best];
+        }
+
+        int samples() {
+            return samples;
+        }
+
+        /**
+         * Round trip of the sample the offset comes from, or -1 before the first sample.
+         */
+        long rttNanos() {
+            return bestRttNanos;
+        }
+
+        /**
+         * Client clock minus server clock ({@link System#nanoTime()}).
+         */
+        long offsetNanos() {
+            return bestOffsetNanos;
+        }
+    }
+
+    private final RoomRegistry roomRegistry;
+    private final BuzzAdjudication adjudication;
+    private final Timer roundTrips;
+
+    public SessionClocks(RoomRegistry roomRegistry, BuzzAdjudication adjudication, MeterRegistry registry) {
+        this.roomRegistry = roomRegistry;
+        this.adjudication = adjudication;
+        this.roundTrips = Timer.builder("ws.clock.rtt")
+                .description("Round trips measured by the clock sync with clients")
+                .register(registry);
+    }
+
+    static Clock clockOf(WebSocketSession session) {
+        return (Clock) session.getAttributes().get(CLOCK_ATTR);
+    }
+
+    /**
+     * Starts syncing with a newly connected session.
+     */
+    public void start(OutboundSession session) {
+        session.getAttributes().put(CLOCK_ATTR, new Clock());
+        probe(session);
+    }
+
+    private static void probe(OutboundSession session) {
+        long t0 = (System.nanoTime() - BASE_NANOS) / 1_000;
+        session.enqueue(new TextMessage("{\"type\":\"timeSync\",\"t0\":" + t0 + "}"), null);
+    }
+
+    /**
+     * A client's answer to a probe; runs on the receiving thread.
+     */
+    public void onAnswer(OutboundSession session, ClientMessage answer, long receivedAtNanos) {
+        Clock clock = clockOf(session);
+        if (clock == null || answer.syncT0 < 0 || Double.isNaN(answer.clientTimeMs)) {
+            return;
+        }
+        long sentAtNanos = BASE_NANOS + answer.syncT0 * 1_000;
+        long rtt = receivedAtNanos - sentAtNanos;
+        if (rtt < 0) {
+            return;
+        }
+        long clientNanos = (long) (answer.clientTimeMs * 1_000_000d);
+        clock.add(rtt, clientNanos - (sentAtNanos + rtt / 2));
+        roundTrips.record(rtt, TimeUnit.NANOSECONDS);
+        if (clock.samples() < INITIAL_PROBES) {
+            probe(session);
+        }
+    }
+
+    /**
+     * When the player pressed, on the server's clock: the client's timestamp corrected by the
+     * session's offset, but never after the receipt and never more than one round trip (and the
+     * configured cap) before it. The receipt time if there is no timestamp or no sample yet.
+     */
+    public long pressedAt(WebSocketSession session, double clientTimeMs, long receivedAtNanos) {
+        Clock clock = clockOf(session);
+        if (clock == null || Double.isNaN(clientTimeMs)) {
+            return receivedAtNanos;
+        }
+        long rtt = clock.rttNanos();
+        if (rtt < 0) {
+            return receivedAtNanos;
+        }
+        long earliest = receivedAtNanos - Math.min(rtt, adjudication.maxCompensationNanos());
+        long estimate = (long) (clientTimeMs * 1_000_000d) - clock.offsetNanos();
+        return Math.min(receivedAtNanos, Math.max(earliest, estimate));
+    }
+
+    @Scheduled(fixedDelayString = "${game.clock-sync-interval-ms:30000}")
+    void resync() {
+        for (Room room : roomRegistry.getRooms()) {
+            for (WebSocketSession session : room.getSessions()) {
+                if (session instanceof OutboundSession outbound && clockOf(outbound) != null) {
+                    probe(outbound);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import de.bytephil.guessthesong.game.Room;
+import de.bytephil.guessthesong.game.RoomRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Finds dead connections instead of waiting for a send to fail on them.
+ *
+ * Every {@code websocket.heartbeat-interval-ms} each session of this node is pinged (browsers answer
+ * with a pong on their own). A session the client has not been heard from for
+ * {@code websocket.idle-timeout-ms}, typically a half-open TCP connection, is closed and handed to
+ * the eviction listener, which takes it out of its room at once, so broadcasts stop queueing frames
+ * for it. Sessions that are closed but still in a roster are evicted the same way.
+ */
+@Component
+public class SessionHeartbeat {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionHeartbeat.class);
+
+    private static final PingMessage PING = new PingMessage();
+
+    private final RoomRegistry roomRegistry;
+    private final WebSocketProperties properties;
+    private final Counter idleEvictions;
+    private final Counter closedEvictions;
+    private volatile BiConsumer<Room, OutboundSession> evictionListener = (room, session) -> {
+    };
+
+    public SessionHeartbeat(RoomRegistry roomRegistry, WebSocketProperties properties, MeterRegistry registry) {
+        this.roomRegistry = roomRegistry;
+        this.properties = properties;
+        this.idleEvictions = Counter.builder("ws.sessions.evicted")
+                .description("Sessions taken out of their room by the heartbeat")
+                .tag("reason", "idle")
+                .register(registry);
+        this.closedEvictions = Counter.builder("ws.sessions.evicted")
+                .description("Sessions taken out of their room by the heartbeat")
+                .tag("reason", "closed")
+                .register(registry);
+    }
+
+    /**
+     * Called (on the scheduler's thread) for every evicted session, after it was closed.
+     */
+    public void onEviction(BiConsumer<Room, OutboundSession> listener) {
+        this.evictionListener = listener;
+    }
+
+    @Scheduled(fixedDelayString = "${websocket.heartbeat-interval-ms:15000}")
+    void beat() {
+        long idleSince = System.currentTimeMillis() - properties.getIdleTimeoutMs();
+        for (Room room : roomRegistry.getRooms()) {
+            for (WebSocketSession s : room.getSessions()) {
+                if (!(s instanceof OutboundSession session)) {
+                    continue;
+                }
+                if (!session.isOpen()) {
+                    closedEvictions.increment();
+                    evict(room, session, "closed");
+                } else if (session.getLastSeenMs() - idleSince < 0) {
+                    idleEvictions.increment();
+                    session.terminate(CloseStatus.SESSION_NOT_RELIABLE);
+                    evict(room, session, "idle");
+                } else {
+                    session.enqueue(PING, null);
+                }
+            }
+        }
+    }
+
+    private void evict(Room room, OutboundSession session, String reason) {
+        logger.info("WS {} -> evicted from room {} ({})", session.getId(), room.getCode(), reason);
+        evictionListener.accept(room, session);
+    }
+}
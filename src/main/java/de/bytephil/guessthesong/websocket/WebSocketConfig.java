@@ -18,7 +18,7 @@ public class WebSocketConfig implements WebSocketConfigurer {
 	@Override
 	public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
 		registry.addHandler(basicWebSocketHandler, "/ws")
-				.addInterceptors(new HttpSessionHandshakeInterceptor())
+				.addInterceptors(new HttpSessionHandshakeInterceptor(), new RoomHandshakeInterceptor())
 				.setAllowedOrigins("*");
 	}
 }
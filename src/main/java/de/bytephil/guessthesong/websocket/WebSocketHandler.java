@@ -1,65 +1,169 @@
 package de.bytephil.guessthesong.websocket;
 
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.EnumSet;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import de.bytephil.guessthesong.spotify.SpotifyService;
-import jakarta.servlet.http.HttpSession;
-import se.michaelthelin.spotify.SpotifyApi;
-import se.michaelthelin.spotify.enums.Action;
+import de.bytephil.guessthesong.cluster.ClusterMessage;
+import de.bytephil.guessthesong.game.BuzzAdjudication;
+import de.bytephil.guessthesong.game.BuzzTrace;
+import de.bytephil.guessthesong.game.BuzzTracer;
+import de.bytephil.guessthesong.game.Buzzer;
+import de.bytephil.guessthesong.game.CommandCoalescer;
+import de.bytephil.guessthesong.game.CommandCoalescing;
+import de.bytephil.guessthesong.game.CommandDedup;
+import de.bytephil.guessthesong.game.EventLog;
+import de.bytephil.guessthesong.game.GameEvent;
+import de.bytephil.guessthesong.game.GameProperties;
+import de.bytephil.guessthesong.game.Room;
+import de.bytephil.guessthesong.game.RoomRegistry;
+import de.bytephil.guessthesong.game.TrackDeck;
+import de.bytephil.guessthesong.spotify.PlaybackState;
+import de.bytephil.guessthesong.spotify.PlaybackStateCache;
+import de.bytephil.guessthesong.spotify.SpotifyAccount;
+import de.bytephil.guessthesong.spotify.SpotifyCommandQueue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
-import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlaying;
-import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
-import se.michaelthelin.spotify.model_objects.miscellaneous.Device;
-import se.michaelthelin.spotify.model_objects.special.Actions;
-import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
-import se.michaelthelin.spotify.model_objects.specification.Disallows;
-import se.michaelthelin.spotify.model_objects.specification.Image;
-import se.michaelthelin.spotify.model_objects.specification.Track;
 
 @Component
 public class WebSocketHandler extends TextWebSocketHandler {
 
-    private String guesserName = null;
-    private String lastBroadcast = null;
-    private String selectedGenre = null;
-
-    private final SpotifyService spotifyService;
-
-    private final Object spotifyControlLock = new Object();
-    private final AtomicLong spotifyRateLimitedUntilMs = new AtomicLong(0);
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketHandler.class);
 
-    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+    private static final String ROOM_ATTR = "ROOM";
+    private static final String OUTBOUND_ATTR = "OUTBOUND_SESSION";
 
-        /**
-         * Optional: map a genre to a Spotify playlist context.
-         * Fill in your playlist IDs (the 22-char id from open.spotify.com/playlist/<id>). Example:
-         * spotify:playlist:37i9dQZF1DXcF6B6QPhFDv
-         */
-        private static final Map<String, String> GENRE_PLAYLIST_CONTEXT_URIS = Map.of(
+    /**
+     * Optional: map a genre to a Spotify playlist context.
+     * Fill in your playlist IDs (the 22-char id from open.spotify.com/playlist/<id>). Example:
+     * spotify:playlist:37i9dQZF1DXcF6B6QPhFDv
+     */
+    private static final Map<String, String> GENRE_PLAYLIST_CONTEXT_URIS = Map.of(
             "rock", "spotify:playlist:37i9dQZF1DX4vth7idTQch",
             "pop", "spotify:playlist:2OFfgjs6kj0eA6FNayhAAJ",
             "electronic", "spotify:playlist:3tRhisNDv5YZXPQltBbJNc");
 
-    private static final Logger logger = LoggerFactory.getLogger(WebSocketHandler.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PLAYLIST_URI = Pattern.compile("^spotify:playlist:[A-Za-z0-9]{22}$");
+    private static final Pattern PLAYLIST_ID = Pattern.compile("^[A-Za-z0-9]{22}$");
+    private static final Pattern PLAYLIST_URL = Pattern.compile("open\\.spotify\\.com/playlist/([A-Za-z0-9]{22})");
+
+    private final RoomPlayback roomPlayback;
+    private final SpotifyCommandQueue spotifyCommands;
+    private final PlaybackStateCache playbackCache;
+    private final CommandCoalescing coalescing;
+    private final RoomRegistry roomRegistry;
+    private final BroadcastFanout broadcastFanout;
+    private final RoomRelay roomRelay;
+    private final GameFrameEncoder frameEncoder;
+    private final ClientMessageDecoder messageDecoder;
+    private final WebSocketProperties webSocketProperties;
+    private final GameProperties gameProperties;
+    private final BuzzAdjudication buzzAdjudication;
+    private final SessionClocks sessionClocks;
+    private final BuzzTracer buzzTracer;
+    private final Map<MessageType, MessageHandler> handlers = new EnumMap<>(MessageType.class);
+
+    // Receipt to handled (including the wait for the room's lane), per message type.
+    private final Map<MessageType, Timer> messageTimers = new EnumMap<>(MessageType.class);
+    private final Counter invalidMessages;
+    private final Counter failedMessages;
+    private final Counter resumedWithDeltas;
+    private final Counter resumedWithSnapshot;
+    private final Counter duplicateMessages;
+    private final Counter overtakingBuzzes;
+    private final AtomicInteger openSessions = new AtomicInteger();
+
+    @FunctionalInterface
+    private interface MessageHandler {
+        void handle(Room room, String sessionId, ClientMessage message) throws IOException;
+    }
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    public WebSocketHandler(RoomPlayback roomPlayback, RoomRegistry roomRegistry, BroadcastFanout broadcastFanout,
+            RoomRelay roomRelay, GameFrameEncoder frameEncoder, ClientMessageDecoder messageDecoder,
+            WebSocketProperties webSocketProperties, GameProperties gameProperties, BuzzAdjudication buzzAdjudication,
+            SessionClocks sessionClocks, SessionHeartbeat sessionHeartbeat, BuzzTracer buzzTracer,
+            MeterRegistry registry) {
+        this.roomPlayback = roomPlayback;
+        this.spotifyCommands = roomPlayback.getCommands();
+        this.playbackCache = roomPlayback.getCache();
+        this.coalescing = roomPlayback.getCoalescing();
+        this.roomRegistry = roomRegistry;
+        this.broadcastFanout = broadcastFanout;
+        this.roomRelay = roomRelay;
+        this.frameEncoder = frameEncoder;
+        this.messageDecoder = messageDecoder;
+        this.webSocketProperties = webSocketProperties;
+        this.gameProperties = gameProperties;
+        this.buzzAdjudication = buzzAdjudication;
+        this.sessionClocks = sessionClocks;
+        this.buzzTracer = buzzTracer;
+
+        handlers.put(MessageType.NEW_GAME, this::onNewGame);
+        handlers.put(MessageType.GENRE_CHANGE, this::onGenreChange);
+        handlers.put(MessageType.PLAYER_GUESS, this::onPlayerGuess);
+        handlers.put(MessageType.SHOW_ANSWER, this::onShowAnswer);
+        handlers.put(MessageType.NEXT_ROUND, this::onNextRound);
+        handlers.put(MessageType.GUESS_AGAIN, this::onGuessAgain);
+
+        for (MessageType type : MessageType.values()) {
+            messageTimers.put(type, Timer.builder("ws.messages")
+                    .description("Inbound WebSocket messages, from receipt until handled on the room's lane")
+                    .tag("type", type.getWireName() != null ? type.getWireName() : "unknown")
+                    .register(registry));
+        }
+        this.invalidMessages = Counter.builder("ws.messages.invalid")
+                .description("Inbound WebSocket messages that were not valid JSON")
+                .register(registry);
+        this.failedMessages = Counter.builder("ws.messages.failed")
+                .description("Inbound WebSocket messages whose handler threw")
+                .register(registry);
+        this.resumedWithDeltas = Counter.builder("ws.resumes")
+                .description("Reconnecting clients, by whether they got just the missed events or the full state")
+                .tag("result", "delta")
+                .register(registry);
+        this.resumedWithSnapshot = Counter.builder("ws.resumes")
+                .description("Reconnecting clients, by whether they got just the missed events or the full state")
+                .tag("result", "snapshot")
+                .register(registry);
+        this.duplicateMessages = Counter.builder("ws.messages.duplicate")
+                .description("Inbound commands whose commandId the room had already handled (not run again)")
+                .register(registry);
+        this.overtakingBuzzes = Counter.builder("game.buzz.overtaking")
+                .description("Buzzes that arrived after the leader but took the lead, "
+                        + "pressed earlier by the synchronized clock")
+                .register(registry);
+        Gauge.builder("ws.sessions", openSessions, AtomicInteger::get)
+                .description("Open WebSocket sessions")
+                .register(registry);
+        Gauge.builder("game.rooms", roomRegistry, RoomRegistry::size)
+                .description("Open game rooms")
+                .register(registry);
+
+        roomRelay.listenAsOwner(this::onClusterMessage);
+        sessionHeartbeat.onEviction(this::leaveRoom);
+    }
 
     private static String normalizeGenreKey(String s) {
         if (s == null) {
@@ -69,7 +173,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
         if (trimmed.isEmpty()) {
             return null;
         }
-        return trimmed.replaceAll("\\s+", " ").toLowerCase();
+        return WHITESPACE.matcher(trimmed).replaceAll(" ").toLowerCase();
     }
 
     private static String playlistContextUriForGenre(String genreLabel) {
@@ -94,7 +198,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
         return ctx.trim();
     }
 
-    private static String normalizePlaylistContextUriFromClient(String input) {
+    static String normalizePlaylistContextUriFromClient(String input) {
         if (input == null) {
             return null;
         }
@@ -104,19 +208,17 @@ public class WebSocketHandler extends TextWebSocketHandler {
         }
 
         // spotify:playlist:<id>
-        if (trimmed.matches("^spotify:playlist:[A-Za-z0-9]{22}$")) {
+        if (PLAYLIST_URI.matcher(trimmed).matches()) {
             return trimmed;
         }
 
         // bare 22-char id
-        if (trimmed.matches("^[A-Za-z0-9]{22}$")) {
+        if (PLAYLIST_ID.matcher(trimmed).matches()) {
             return "spotify:playlist:" + trimmed;
         }
 
         // open.spotify.com/playlist/<id>
-        java.util.regex.Matcher m = java.util.regex.Pattern
-                .compile("open\\.spotify\\.com/playlist/([A-Za-z0-9]{22})")
-                .matcher(trimmed);
+        Matcher m = PLAYLIST_URL.matcher(trimmed);
         if (m.find()) {
             return "spotify:playlist:" + m.group(1);
         }
@@ -124,7 +226,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
         return null;
     }
 
-    private static String normalizeLabel(String s) {
+    static String normalizeLabel(String s) {
         if (s == null) {
             return null;
         }
@@ -132,450 +234,677 @@ public class WebSocketHandler extends TextWebSocketHandler {
         if (trimmed.isEmpty()) {
             return null;
         }
-        return trimmed.replaceAll("\\s+", " ");
+        return WHITESPACE.matcher(trimmed).replaceAll(" ");
     }
 
-    private boolean isSpotifyRateLimitedNow() {
-        return System.currentTimeMillis() < spotifyRateLimitedUntilMs.get();
+    /**
+     * Supersession key of the room's pause/resume commands: only the latest queued one matters.
+     */
+    private static String transportKey(Room room) {
+        return "transport:" + room.getCode();
     }
 
-    private void markSpotifyRateLimited(TooManyRequestsException e, String wsId, String action) {
-        int retryAfterSeconds = e != null ? e.getRetryAfter() : 1;
-        long until = System.currentTimeMillis() + Math.max(1, retryAfterSeconds) * 1000L;
-        spotifyRateLimitedUntilMs.set(until);
-        logger.warn("WS {} -> Spotify rate limited during {} (retryAfter={}s)", wsId, action, retryAfterSeconds);
+    /**
+     * Logs the outcome of an out-of-band Spotify command.
+     */
+    private static BiConsumer<Object, Throwable> logOutcome(String wsId, String action) {
+        return (result, error) -> {
+            if (error == null) {
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (cause instanceof SpotifyCommandQueue.DeadlineExceededException
+                    || cause instanceof SpotifyCommandQueue.SupersededException
+                    || cause instanceof SpotifyCommandQueue.NotConnectedException) {
+                logger.info("WS {} -> {}", wsId, cause.getMessage());
+            } else if (cause instanceof TooManyRequestsException) {
+                // already logged by the command queue
+            } else {
+                logger.warn("WS {} -> spotify {} failed", wsId, action, cause);
+            }
+        };
     }
 
-    private CurrentlyPlayingContext safeGetPlayback(SpotifyApi api, String wsId) {
-        try {
-            return api.getInformationAboutUsersCurrentPlayback().build().execute();
-        } catch (TooManyRequestsException e) {
-            markSpotifyRateLimited(e, wsId, "getPlayback");
-            return null;
-        } catch (Exception e) {
-            logger.warn("WS {} -> spotify get playback failed", wsId, e);
-            return null;
-        }
+    private static Room roomOf(WebSocketSession session) {
+        return (Room) session.getAttributes().get(ROOM_ATTR);
     }
 
-    private static EnumSet<Action> getDisallowedActions(CurrentlyPlayingContext playback) {
-        if (playback == null) {
-            return null;
+    /**
+     * The non-blocking decorator all sends to this session go through.
+     */
+    private static OutboundSession outboundOf(WebSocketSession session) {
+        return (OutboundSession) session.getAttributes().get(OUTBOUND_ATTR);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession rawSession) {
+        OutboundSession session = broadcastFanout.decorate(rawSession);
+        session.getAttributes().put(OUTBOUND_ATTR, session);
+        openSessions.incrementAndGet();
+
+        String code = (String) session.getAttributes().get(RoomHandshakeInterceptor.ROOM_CODE_ATTR);
+        Room room = roomRegistry.join(code, session, joined -> welcome(joined, session));
+        if (room == null) {
+            logger.info("WS {} -> refused: not a join code, or too many rooms", session.getId());
+            session.terminate(CloseStatus.POLICY_VIOLATION.withReason("unknown room"));
+            return;
         }
-        Actions actions = playback.getActions();
-        if (actions == null) {
-            return null;
+        session.getAttributes().put(ROOM_ATTR, room);
+        sessionClocks.start(session);
+        logger.info("WS {} -> joined room {}", session.getId(), room.getCode());
+    }
+
+    /**
+     * Runs on the room's lane, right after the session entered the roster.
+     */
+    private void welcome(Room room, OutboundSession session) {
+        String resumeLog = (String) session.getAttributes().get(RoomHandshakeInterceptor.RESUME_LOG_ATTR);
+        Long resumeSeq = (Long) session.getAttributes().get(RoomHandshakeInterceptor.RESUME_SEQ_ATTR);
+        if (roomRelay.isRelayed(room)) {
+            // The room is played on its owner's node, which sends the join frames.
+            session.sendMessage(new TextMessage("connected:" + session.getId()));
+            roomRelay.joined(room, session, resumeLog != null ? resumeLog + ":" + resumeSeq : null);
+            return;
         }
-        Disallows disallows = actions.getDisallows();
-        if (disallows == null) {
-            return null;
+        try {
+            sendWelcome(room, session, resumeLog, resumeSeq);
+        } catch (IOException e) {
+            logger.info("WS {} -> welcome failed", session.getId(), e);
         }
-        return disallows.getDisallowedActions();
     }
 
-    private boolean canResume(CurrentlyPlayingContext playback) {
-        EnumSet<Action> disallowed = getDisallowedActions(playback);
-        return disallowed == null || !disallowed.contains(Action.RESUMING);
+    private void sendWelcome(Room room, WebSocketSession session, String resumeLog, Long resumeSeq)
+            throws IOException {
+        if (!session.isOpen()) {
+            return;
+        }
+        session.sendMessage(new TextMessage("connected:" + session.getId()));
+        for (TextMessage frame : welcomeFrames(room, session.getId(), resumeLog, resumeSeq)) {
+            session.sendMessage(frame);
+        }
     }
 
-    private boolean canPause(CurrentlyPlayingContext playback) {
-        EnumSet<Action> disallowed = getDisallowedActions(playback);
-        return disallowed == null || !disallowed.contains(Action.PAUSING);
+    /**
+     * What a joining session receives after "connected:". A client resuming from a sequence number
+     * still in the room's event log gets the events it missed and then the current state, so its
+     * resume point only moves on once it has them all. Everyone else gets the current state (clients
+     * ignore unknown types) and the replayed last event. Runs on the room's lane.
+     */
+    private List<TextMessage> welcomeFrames(Room room, String sessionId, String resumeLog, Long resumeSeq)
+            throws JsonProcessingException {
+        Room.JoinSnapshot snapshot = joinSnapshot(room);
+        if (resumeLog != null) {
+            List<TextMessage> missed = resumeLog.equals(room.getEventLog().getId())
+                    ? room.getEventLog().since(resumeSeq)
+                    : null;
+            if (missed != null) {
+                resumedWithDeltas.increment();
+                logger.info("WS {} -> resumed room {} with {} missed events", sessionId, room.getCode(),
+                        missed.size());
+                List<TextMessage> frames = new ArrayList<>(missed.size() + 1);
+                frames.addAll(missed);
+                frames.add(snapshot.stateFrame());
+                return frames;
+            }
+            resumedWithSnapshot.increment();
+            logger.info("WS {} -> cannot resume room {} from {}:{}, sending the full state", sessionId,
+                    room.getCode(), resumeLog, resumeSeq);
+        }
+        return snapshot.replayFrame() != null
+                ? List.of(snapshot.stateFrame(), snapshot.replayFrame())
+                : List.of(snapshot.stateFrame());
     }
 
-    private boolean deviceSupportsVolume(CurrentlyPlayingContext playback) {
-        if (playback == null) {
-            return false;
+    /**
+     * The cached join frames of the room, re-encoded only when the room state changed since.
+     */
+    private Room.JoinSnapshot joinSnapshot(Room room) throws JsonProcessingException {
+        boolean spotifyConnected = roomPlayback.isSpotifyConnected();
+        GameEvent lastEvent = room.getLastEvent();
+        long round = room.getBuzzer().currentEpoch();
+
+        Room.JoinSnapshot snapshot = room.getJoinSnapshot();
+        if (snapshot != null && snapshot.isCurrent(lastEvent, round, spotifyConnected)) {
+            return snapshot;
         }
-        Device device = playback.getDevice();
-        return device != null && Boolean.TRUE.equals(device.getSupports_volume());
+
+        String selectedGenre = room.getSelectedGenre();
+        EventLog eventLog = room.getEventLog();
+        long seq = eventLog.lastSequence();
+        TextMessage stateFrame = frameEncoder.encode(new GameEvent.State(room.getCode(), round, spotifyConnected,
+                selectedGenre, eventLog.getId(), seq));
+        TextMessage replayFrame = lastEvent != null
+                ? frameEncoder.encodeReplay(lastEvent, seq, spotifyConnected, selectedGenre)
+                : null;
+        snapshot = new Room.JoinSnapshot(lastEvent, round, spotifyConnected, stateFrame, replayFrame);
+        room.setJoinSnapshot(snapshot);
+        return snapshot;
     }
 
-    private static String artistsToText(ArtistSimplified[] artists) {
-        if (artists == null || artists.length == 0) {
-            return "";
+    @Override
+    protected void handleTextMessage(WebSocketSession rawSession, TextMessage message) {
+        // Receipt time for buzzer arbitration, taken before any other work.
+        final long receivedAtNanos = System.nanoTime();
+        Room room = roomOf(rawSession);
+        OutboundSession session = outboundOf(rawSession);
+        if (room == null || session == null) {
+            return;
+        }
+        session.markSeen();
+        final String payload = message.getPayload();
+        if (webSocketProperties.isEchoEnabled()) {
+            session.sendMessage(new TextMessage("echo:" + payload));
+        }
+        ClientMessage clientMessage = decode(session.getId(), payload);
+        if (clientMessage != null && clientMessage.type == MessageType.TIME_SYNC) {
+            // The clock belongs to this connection, wherever the room is played.
+            sessionClocks.onAnswer(session, clientMessage, receivedAtNanos);
+            return;
         }
-        StringBuilder sb = new StringBuilder();
-        for (ArtistSimplified a : artists) {
-            if (a == null || a.getName() == null || a.getName().isBlank()) {
-                continue;
+        long pressedAtNanos = clientMessage != null && clientMessage.type == MessageType.PLAYER_GUESS
+                ? sessionClocks.pressedAt(session, clientMessage.clientTimeMs, receivedAtNanos)
+                : receivedAtNanos;
+        if (roomRelay.isRelayed(room)) {
+            if (clientMessage != null) {
+                roomRelay.forward(room, session, payload, pressedAtNanos);
             }
-            if (sb.length() > 0) {
-                sb.append(", ");
+            return;
+        }
+        accept(room, session.getId(), payload, clientMessage, receivedAtNanos, pressedAtNanos);
+    }
+
+    /**
+     * Queues a message of a session in a room owned here (connected here or relayed) on the room's lane.
+     *
+     * @param pressedAtNanos for buzzes, when the player pressed (see {@link SessionClocks#pressedAt})
+     */
+    private void accept(Room room, String sessionId, String payload, ClientMessage clientMessage,
+            long receivedAtNanos, long pressedAtNanos) {
+        if (clientMessage != null) {
+            clientMessage.receivedAtNanos = receivedAtNanos;
+            clientMessage.pressedAtNanos = pressedAtNanos;
+            // A resent command is answered on the lane, after the first one, and never arbitrated again.
+            CommandDedup.Entry previous = clientMessage.commandId != null && handlers.containsKey(clientMessage.type)
+                    ? previousCommand(room, sessionId, clientMessage)
+                    : null;
+            if (previous != null) {
+                room.execute(() -> replayPrevious(room, sessionId, clientMessage, previous));
+                return;
+            }
+            // Buzzes are arbitrated right here on the receiving thread (lock-free), not on the room's lane.
+            if (clientMessage.type == MessageType.PLAYER_GUESS) {
+                long epoch = clientMessage.round != null ? clientMessage.round : Buzzer.ANY_ROUND;
+                clientMessage.buzzOutcome = room.getBuzzer().buzz(epoch, clientMessage.playerName, sessionId,
+                        receivedAtNanos, pressedAtNanos, buzzAdjudication.windowNanos());
+                if (clientMessage.buzzOutcome == Buzzer.Outcome.LEADING) {
+                    overtakingBuzzes.increment();
+                }
             }
-            sb.append(a.getName());
         }
-        return sb.toString();
+
+        room.execute(() -> handleRoomMessage(room, sessionId, payload, clientMessage));
     }
 
-    private static String firstAlbumImageUrl(Track track) {
-        if (track == null || track.getAlbum() == null) {
-            return null;
+    /**
+     * Messages relays send for rooms owned here. Relayed buzzes are dated back by their age at the
+     * relay, but are still arbitrated on arrival here, so they carry the extra hop through the bus.
+     */
+    private void onClusterMessage(ClusterMessage message) {
+        long receivedAtNanos = System.nanoTime();
+        Room room = roomRegistry.host(message.roomCode());
+        if (room == null) {
+            logger.warn("Cluster {} from {} dropped: no room {}", message.kind(), message.origin(),
+                    message.roomCode());
+            return;
+        }
+        // Relayed sessions are known here by node and id: other nodes hand out the same ids.
+        String sessionId = ClusterMessage.qualify(message.origin(), message.sessionId());
+        switch (message.kind()) {
+            case COMMAND -> accept(room, sessionId, message.payload(), decode(sessionId, message.payload()),
+                    receivedAtNanos, receivedAtNanos - Math.max(0, message.ageNanos()));
+            case JOIN -> room.execute(() -> {
+                String resumeLog = null;
+                Long resumeSeq = null;
+                int colon = message.payload() != null ? message.payload().lastIndexOf(':') : -1;
+                if (colon > 0) {
+                    resumeLog = message.payload().substring(0, colon);
+                    resumeSeq = Long.parseLong(message.payload().substring(colon + 1));
+                }
+                try {
+                    roomRelay.sendTo(room, sessionId, welcomeFrames(room, sessionId, resumeLog, resumeSeq));
+                } catch (JsonProcessingException e) {
+                    logger.info("WS {} -> welcome failed", sessionId, e);
+                }
+            });
+            default -> logger.debug("Room {} -> unexpected {} on the node topic", room.getCode(), message.kind());
         }
-        Image[] images = track.getAlbum().getImages();
-        if (images == null || images.length == 0 || images[0] == null) {
+    }
+
+    private ClientMessage decode(String sessionId, String payload) {
+        try {
+            return messageDecoder.decode(payload);
+        } catch (IOException e) {
+            invalidMessages.increment();
+            logger.info("WS {} -> invalid JSON: {}", sessionId, payload, e);
             return null;
         }
-        return images[0].getUrl();
     }
 
-    private SpotifyApi findSpotifyApiFromAnyConnectedSession() {
+    /**
+     * Runs on the room's lane.
+     */
+    private void handleRoomMessage(Room room, String sessionId, String payload, ClientMessage clientMessage) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("WS {} <- {}", sessionId, payload);
+        }
+
+        if (clientMessage == null) {
+            return;
+        }
+        MessageHandler handler = handlers.get(clientMessage.type);
+        if (handler == null) {
+            recordHandled(clientMessage);
+            return;
+        }
+        if (clientMessage.type != MessageType.PLAYER_GUESS) {
+            // The room moves on: a round still being adjudicated is decided with the buzzes in so far.
+            buzzAdjudication.settleNow(room, settled -> announceGuesser(room, settled));
+        }
         try {
-            SpotifyApi global = spotifyService.apiForGlobal();
-            if (global != null) {
-                logger.info("WS -> Using global Spotify token");
-                return global;
+            if (logger.isDebugEnabled()) {
+                logger.debug("WS {} -> type={}, playerName={}", sessionId, clientMessage.type,
+                        clientMessage.playerName);
             }
+            handler.handle(room, sessionId, clientMessage);
         } catch (Exception e) {
-            logger.warn("WS -> Failed building global Spotify API", e);
+            failedMessages.increment();
+            logger.warn("WS {} -> message handling failed: {}", sessionId, payload, e);
+        } finally {
+            recordHandled(clientMessage);
         }
+    }
 
-        for (WebSocketSession s : sessions) {
-            HttpSession httpSession = (HttpSession) s.getAttributes()
-                    .get(HttpSessionHandshakeInterceptor.HTTP_SESSION_ATTR);
-            if (httpSession == null) {
-                continue;
-            }
+    /**
+     * The earlier command of the room with this id, or null after recording the id as new. Runs on
+     * the receiving thread.
+     */
+    private CommandDedup.Entry previousCommand(Room room, String sessionId, ClientMessage message) {
+        CommandDedup.Claim claim = room.getCommandDedup().claim(message.commandId, System.currentTimeMillis(),
+                gameProperties.getCommandDedupWindowMs());
+        if (!claim.resent()) {
+            message.dedupEntry = claim.entry();
+            return null;
+        }
+        duplicateMessages.increment();
+        logger.info("WS {} -> {} {} already handled, not run again", sessionId, message.type.getWireName(),
+                message.commandId);
+        return claim.entry();
+    }
+
+    /**
+     * Sends a resent command's sender the frame the first one broadcast, if it broadcast one. Runs
+     * on the room's lane, so after the first command was handled.
+     */
+    private void replayPrevious(Room room, String sessionId, ClientMessage message, CommandDedup.Entry previous) {
+        if (previous.getResult() != null) {
+            reply(room, sessionId, List.of(previous.getResult()));
+        }
+        recordHandled(message);
+    }
 
-            try {
-                SpotifyApi api = spotifyService.apiForSession(httpSession);
-                if (api != null) {
-                    logger.info("WS -> Using Spotify token from HTTP session {} (ws={})", httpSession.getId(),
-                            s.getId());
-                    return api;
+    /**
+     * Sends frames to one session of a room owned here, connected here or through a relay.
+     */
+    private void reply(Room room, String sessionId, List<TextMessage> frames) {
+        if (ClusterMessage.isQualified(sessionId)) {
+            roomRelay.sendTo(room, sessionId, frames);
+            return;
+        }
+        for (WebSocketSession session : room.getSessions()) {
+            if (session.getId().equals(sessionId)) {
+                for (TextMessage frame : frames) {
+                    try {
+                        session.sendMessage(frame);
+                    } catch (IOException e) {
+                        logger.info("WS {} -> reply failed", sessionId, e);
+                        return;
+                    }
                 }
-            } catch (Exception e) {
-                logger.warn("WS -> Failed building Spotify API for ws={}", s.getId(), e);
+                return;
             }
         }
-        return null;
     }
 
-    public WebSocketHandler(SpotifyService spotifyService) {
-        this.spotifyService = spotifyService;
+    private void recordHandled(ClientMessage message) {
+        messageTimers.get(message.type).record(System.nanoTime() - message.receivedAtNanos, TimeUnit.NANOSECONDS);
     }
 
-    @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
-        sessions.add(session);
-        session.sendMessage(new TextMessage("connected:" + session.getId()));
+    private void onNewGame(Room room, String sessionId, ClientMessage message) throws IOException {
+        room.setSelectedGenre(normalizeLabel(message.genreName));
+        String selectedGenre = room.getSelectedGenre();
+        long round = room.newRound();
 
-        boolean spotifyConnected = spotifyService.getGlobalToken() != null;
+        publish(room, new GameEvent.NewGame(round, selectedGenre != null ? selectedGenre : ""), message);
 
-        // Always send current state (client can ignore unknown type)
-        Map<String, Object> state = new LinkedHashMap<>();
-        state.put("type", "state");
-        state.put("spotifyConnected", spotifyConnected);
-        if (selectedGenre != null) {
-            state.put("genreName", selectedGenre);
+        SpotifyAccount account = roomPlayback.accountFor(room);
+        String playlistCtx = normalizePlaylistContextUriFromClient(message.playlistContextUri);
+        if (playlistCtx == null) {
+            playlistCtx = playlistContextUriForGenre(selectedGenre);
         }
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(state)));
 
-        if (lastBroadcast != null) {
-            String trimmed = lastBroadcast.trim();
-            if (trimmed.startsWith("{") && trimmed.endsWith("}")) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> lastObj = objectMapper.readValue(trimmed, Map.class);
-                    // enrich last broadcast with current state
-                    lastObj.put("spotifyConnected", spotifyConnected);
-                    if (selectedGenre != null) {
-                        lastObj.put("genreName", selectedGenre);
+        if (account == null) {
+            logger.info("WS {} -> No Spotify session connected (newGame playback skipped)",
+                    sessionId);
+        } else if (playlistCtx == null) {
+            logger.info("WS {} -> No playlist configured for genre='{}' (newGame skipped)",
+                    sessionId, selectedGenre);
+        } else {
+            final String ctx = playlistCtx;
+            final TrackDeck deck = room.deckFor(ctx);
+            coalescing.submit(room, CommandCoalescer.Kind.NEW_GAME, () ->
+                // Starts with the playlist reads (unless the deck is fresh); each request is charged on its own.
+                spotifyCommands.submit(account, "newGame", SpotifyCommandQueue.Endpoint.CATALOG_READ, null, player -> {
+                    String trackUri = roomPlayback.drawFromPlaylist(player, deck, sessionId);
+                    if (trackUri != null) {
+                        // One write: the track comes from the room's own shuffled deck.
+                        player.playUris(List.of(trackUri));
+                        logger.info("WS {} -> spotify newGame playing {} from playlist {}", sessionId, trackUri,
+                                ctx);
+                    } else {
+                        // Playlist could not be read: let Spotify shuffle the context instead.
+                        player.setShuffle(true);
+                        player.playContext(ctx);
+                        player.skip();
+                        logger.info("WS {} -> spotify newGame using playlist context {}", sessionId, ctx);
                     }
-                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(lastObj)));
-                } catch (Exception e) {
-                    // fall back to raw string
-                    session.sendMessage(new TextMessage(lastBroadcast));
-                }
-            } else {
-                session.sendMessage(new TextMessage(lastBroadcast));
-            }
+                    playbackCache.refreshSoon(account);
+                    return null;
+                }).whenComplete(logOutcome(sessionId, "newGame")));
         }
     }
 
-    @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
-        final String payload = message.getPayload();
-        logger.info("WS {} <- {}", session.getId(), payload);
-        session.sendMessage(new TextMessage("echo:" + payload));
-
-        String jsonPayload = payload;
-        if (jsonPayload != null && jsonPayload.startsWith("answer:")) {
-            jsonPayload = jsonPayload.substring("answer:".length());
-        }
+    private void onGenreChange(Room room, String sessionId, ClientMessage message) throws IOException {
+        room.setSelectedGenre(normalizeLabel(message.genreName));
+        String selectedGenre = room.getSelectedGenre();
+        logger.info("WS {} -> Genre selected: {}", sessionId, selectedGenre);
 
-        if (jsonPayload != null && jsonPayload.trim().startsWith("{")) {
-            ClientMessage clientMessage;
-            try {
-                clientMessage = objectMapper.readValue(jsonPayload, ClientMessage.class);
-            } catch (JsonProcessingException e) {
-                logger.info("WS {} -> invalid JSON: {}", session.getId(), jsonPayload, e);
-                return;
-            }
+        publish(room, new GameEvent.GenreChange(selectedGenre != null ? selectedGenre : ""), message);
+    }
 
-            try {
-                logger.info("WS {} -> type={}, playerName={}", session.getId(), clientMessage.type,
-                        clientMessage.playerName);
+    private void onPlayerGuess(Room room, String sessionId, ClientMessage message) throws IOException {
+        if (message.buzzOutcome == Buzzer.Outcome.OPENED) {
+            buzzAdjudication.settleWhenClosed(room, settled -> announceGuesser(room, settled));
+            return;
+        }
+        if (message.buzzOutcome == Buzzer.Outcome.STALE) {
+            logger.info("WS {} -> stale buzz for round {} rejected (current={})", sessionId,
+                    message.round, room.getBuzzer().currentEpoch());
+        }
+        // Leading and losing buzzes wait for the round to be settled.
+    }
 
-                if ("newGame".equals(clientMessage.type)) {
-                    selectedGenre = normalizeLabel(clientMessage.genreName);
-                    SpotifyApi api = findSpotifyApiFromAnyConnectedSession();
-                    guesserName = null;
+    /**
+     * Announces the winner of a settled round and pauses the music. Runs on the room's lane.
+     */
+    private void announceGuesser(Room room, Buzzer.RoundState round) {
+        Buzzer.Buzz winner = round.winner();
+        String sessionId = winner.sessionId();
+        String guesserName = winner.playerName();
+        BuzzTrace trace = buzzTracer.start(room.getCode(), round.epoch(), guesserName, winner.receivedAtNanos());
+        trace.mark(BuzzTrace.Stage.LANE);
+        logger.info("WS {} -> Guesser set to {} (round {})", sessionId, guesserName, round.epoch());
+        Buzzer.Buzz runnerUp = round.runnerUp();
+        if (runnerUp != null) {
+            logger.info("WS {} -> runner-up {} lost round {} by {} us", runnerUp.sessionId(),
+                    runnerUp.playerName(), round.epoch(), round.runnerUpMarginNanos() / 1_000);
+        }
 
-                    if (api == null) {
-                        logger.info("WS {} -> No Spotify session connected (newGame playback skipped)",
-                                session.getId());
-                    } else if (isSpotifyRateLimitedNow()) {
-                        logger.info("WS {} -> spotify newGame skipped (rate limited)", session.getId());
+        try {
+            publish(room, new GameEvent.FirstGuesser(guesserName != null ? guesserName : "", round.epoch()), null);
+        } catch (JsonProcessingException e) {
+            logger.warn("WS {} -> firstGuesser serialization failed", sessionId, e);
+        }
+        trace.mark(BuzzTrace.Stage.BROADCAST);
+
+        SpotifyAccount account = roomPlayback.accountFor(room);
+        if (account == null) {
+            trace.finish("no_spotify");
+            logger.info("WS {} -> No Spotify session connected (pause skipped)", sessionId);
+        } else {
+            // Not held back by the coalescing window: the buzz should stop the music at once.
+            coalescing.dispatchNow(room, CommandCoalescer.Kind.PAUSE, () -> {
+                trace.mark(BuzzTrace.Stage.DISPATCHED);
+                spotifyCommands.submit(account, "pause", SpotifyCommandQueue.Endpoint.PLAYER_WRITE,
+                        transportKey(room), player -> {
+                    trace.mark(BuzzTrace.Stage.COMMAND_START);
+                    PlaybackState playback = roomPlayback.playbackFor(account, player, sessionId);
+                    trace.mark(BuzzTrace.Stage.PLAYBACK_READ);
+                    if (Boolean.FALSE.equals(playback.playing())) {
+                        trace.finish("not_playing");
+                        logger.info("WS {} -> spotify pause skipped (already not playing)", sessionId);
+                    } else if (!playback.canPause()) {
+                        trace.finish("disallowed");
+                        logger.info("WS {} -> spotify pause skipped (disallowed by Spotify)", sessionId);
                     } else {
-                        try {
-                            synchronized (spotifyControlLock) {
-                                if (isSpotifyRateLimitedNow()) {
-                                    logger.info("WS {} -> spotify newGame skipped (rate limited)", session.getId());
-                                    return;
-                                }
-
-                                String playlistCtx = normalizePlaylistContextUriFromClient(
-                                        clientMessage.playlistContextUri);
-                                if (playlistCtx == null) {
-                                    playlistCtx = playlistContextUriForGenre(selectedGenre);
-                                }
-                                if (playlistCtx == null) {
-                                    logger.info("WS {} -> No playlist configured for genre='{}' (newGame skipped)",
-                                            session.getId(), selectedGenre);
-                                } else {
-                                    // Playlist-only mode: avoid search entirely.
-                                    api.toggleShuffleForUsersPlayback(true).build().execute();
-                                    api.startResumeUsersPlayback().context_uri(playlistCtx).build().execute();
-                                    api.skipUsersPlaybackToNextTrack().build().execute();
-                                    logger.info("WS {} -> spotify newGame using playlist context {}",
-                                            session.getId(), playlistCtx);
-                                }
+                        player.pause();
+                        trace.mark(BuzzTrace.Stage.PAUSED);
+                        trace.finish("paused");
+                        playbackCache.update(account, p -> p.withPlaying(false, System.currentTimeMillis()));
+                        logger.info("WS {} -> spotify pause executed", sessionId);
+                    }
+                    return null;
+                }).whenComplete(logOutcome(sessionId, "pause"))
+                        .whenComplete((result, error) -> {
+                            if (error != null) {
+                                trace.finish(traceOutcome(error));
                             }
-                        } catch (TooManyRequestsException e) {
-                            markSpotifyRateLimited(e, session.getId(), "newGame");
-                        } catch (Exception e) {
-                            logger.warn("WS {} -> spotify newGame failed", session.getId(), e);
-                        }
+                        });
+            }, () -> {
+                // The pause dispatched just before this one already stops the music.
+                trace.finish("coalesced");
+                logger.info("WS {} -> spotify pause folded into the previous one", sessionId);
+            });
+        }
+    }
+
+    /**
+     * Why a traced pause did not get through, for {@link BuzzTrace#finish(String)}.
+     */
+    private static String traceOutcome(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof SpotifyCommandQueue.SupersededException) {
+            return "superseded";
+        }
+        if (cause instanceof SpotifyCommandQueue.DeadlineExceededException) {
+            return "expired";
+        }
+        if (cause instanceof SpotifyCommandQueue.NotConnectedException) {
+            return "no_spotify";
+        }
+        if (cause instanceof TooManyRequestsException) {
+            return "rate_limited";
+        }
+        return "failed";
+    }
+
+    private void onShowAnswer(Room room, String sessionId, ClientMessage message) throws IOException {
+        // Handle show answer request
+        logger.info("WS {} -> Show answer requested by {}", sessionId, message.playerName);
+
+        SpotifyAccount account = roomPlayback.accountFor(room);
+        if (account == null) {
+            logger.info("WS {} -> No Spotify session connected (resume skipped)", sessionId);
+        } else {
+            coalescing.submit(room, CommandCoalescer.Kind.SHOW_ANSWER, () ->
+                spotifyCommands.submit(account, "showAnswer/resume", player -> {
+                    // The poller's snapshot already carries the track unless it may have ended since.
+                    PlaybackState playback = roomPlayback.playbackFor(account, player, sessionId);
+                    if (!playback.isTrackCurrent(System.currentTimeMillis())) {
+                        playbackCache.invalidate(account);
+                        playback = roomPlayback.playbackFor(account, player, sessionId);
                     }
 
-                } else if ("genreChange".equals(clientMessage.type)) {
-                    selectedGenre = normalizeLabel(clientMessage.genreName);
-                    logger.info("WS {} -> Genre selected: {}", session.getId(), selectedGenre);
-
-                    String genreChangeJson = objectMapper.writeValueAsString(
-                            Map.of("type", "genreChange", "genreName", selectedGenre != null ? selectedGenre : ""));
-                    lastBroadcast = genreChangeJson;
-                    broadcast(genreChangeJson);
-                } else if ("playerGuess".equals(clientMessage.type) && guesserName == null) {
-                    guesserName = clientMessage.playerName;
-                    logger.info("WS {} -> Guesser set to {}", session.getId(), guesserName);
-
-                    String firstGuesserJson = objectMapper.writeValueAsString(
-                            Map.of("type", "firstGuesser", "playerName", guesserName));
-                    lastBroadcast = firstGuesserJson;
-                    broadcast(firstGuesserJson);
-
-                    SpotifyApi api = findSpotifyApiFromAnyConnectedSession();
-                    if (api == null) {
-                        logger.info("WS {} -> No Spotify session connected (pause skipped)", session.getId());
-                    } else if (isSpotifyRateLimitedNow()) {
-                        logger.info("WS {} -> spotify pause skipped (rate limited)", session.getId());
-                    } else {
+                    String songTitle = playback.songTitle();
+                    String artistsText = playback.artistsText();
+                    String albumImageUrl = playback.albumImageUrl();
+
+                    // Back onto the room's lane for the state change and the fan-out.
+                    room.execute(() -> {
+                        long round = room.newRound();
                         try {
-                            synchronized (spotifyControlLock) {
-                                if (isSpotifyRateLimitedNow()) {
-                                    logger.info("WS {} -> spotify pause skipped (rate limited)", session.getId());
-                                } else {
-                                    CurrentlyPlayingContext playback = safeGetPlayback(api, session.getId());
-                                    Boolean isPlaying = playback != null ? playback.getIs_playing() : null;
-                                    if (Boolean.FALSE.equals(isPlaying)) {
-                                        logger.info("WS {} -> spotify pause skipped (already not playing)",
-                                                session.getId());
-                                    } else if (!canPause(playback)) {
-                                        logger.info("WS {} -> spotify pause skipped (disallowed by Spotify)",
-                                                session.getId());
-                                    } else {
-                                        api.pauseUsersPlayback().build().execute();
-                                        logger.info("WS {} -> spotify pause executed", session.getId());
-                                    }
-                                }
-                            }
-                        } catch (TooManyRequestsException e) {
-                            markSpotifyRateLimited(e, session.getId(), "pause");
-                        } catch (Exception e) {
-                            logger.warn("WS {} -> spotify pause failed", session.getId(), e);
+                            publish(room, new GameEvent.Answer(
+                                    songTitle != null ? songTitle : "",
+                                    artistsText,
+                                    albumImageUrl != null ? albumImageUrl : "",
+                                    round), message);
+                        } catch (JsonProcessingException e) {
+                            logger.warn("WS {} -> answer serialization failed", sessionId, e);
                         }
-                    }
-
-                } else if ("showAnswer".equals(clientMessage.type)) {
-                    // Handle show answer request
-                    logger.info("WS {} -> Show answer requested by {}", session.getId(), clientMessage.playerName);
+                    });
 
-                    SpotifyApi api = findSpotifyApiFromAnyConnectedSession();
-                    if (api == null) {
-                        logger.info("WS {} -> No Spotify session connected (resume skipped)", session.getId());
-                    } else if (isSpotifyRateLimitedNow()) {
-                        logger.info("WS {} -> spotify resume skipped (rate limited)", session.getId());
+                    if (Boolean.TRUE.equals(playback.playing())) {
+                        logger.info("WS {} -> spotify resume skipped (already playing)", sessionId);
+                    } else if (!playback.canResume()) {
+                        logger.info("WS {} -> spotify resume skipped (disallowed by Spotify)",
+                                sessionId);
                     } else {
-                        try {
-                            synchronized (spotifyControlLock) {
-                                if (isSpotifyRateLimitedNow()) {
-                                    logger.info("WS {} -> spotify resume skipped (rate limited)", session.getId());
-                                    return;
-                                }
-
-                                CurrentlyPlayingContext playback = safeGetPlayback(api, session.getId());
-                                Boolean isPlaying = playback != null ? playback.getIs_playing() : null;
-
-                                CurrentlyPlaying current = api.getUsersCurrentlyPlayingTrack().build().execute();
-                                Track track = null;
-                                if (current != null && current.getItem() instanceof Track t) {
-                                    track = t;
-                                }
-
-                                String songTitle = track != null ? track.getName() : null;
-                                String artistsText = track != null ? artistsToText(track.getArtists()) : "";
-                                String albumImageUrl = firstAlbumImageUrl(track);
-
-                                String answerJson = objectMapper.writeValueAsString(
-                                        Map.of(
-                                                "type", "answer",
-                                                "songTitle", songTitle != null ? songTitle : "",
-                                                "artistsText", artistsText,
-                                                "albumImageUrl", albumImageUrl != null ? albumImageUrl : ""));
-                                lastBroadcast = answerJson;
-                                broadcast(answerJson);
-                                guesserName = null;
-
-                                if (Boolean.TRUE.equals(isPlaying)) {
-                                    logger.info("WS {} -> spotify resume skipped (already playing)", session.getId());
-                                } else if (!canResume(playback)) {
-                                    logger.info("WS {} -> spotify resume skipped (disallowed by Spotify)",
-                                            session.getId());
-                                } else {
-                                    api.startResumeUsersPlayback().build().execute();
-                                    if (deviceSupportsVolume(playback)) {
-                                        api.setVolumeForUsersPlayback(85).build().execute();
-                                    }
-                                    logger.info("WS {} -> spotify resume executed", session.getId());
-                                }
-                            }
-                        } catch (TooManyRequestsException e) {
-                            markSpotifyRateLimited(e, session.getId(), "showAnswer/resume");
-                        } catch (Exception e) {
-                            logger.warn("WS {} -> spotify resume failed", session.getId(), e);
+                        player.resume();
+                        playbackCache.update(account, p -> p.withPlaying(true, System.currentTimeMillis()));
+                        if (playback.supportsVolume()) {
+                            player.setVolume(85);
                         }
+                        logger.info("WS {} -> spotify resume executed", sessionId);
                     }
+                    return null;
+                }).whenComplete(logOutcome(sessionId, "resume")));
+        }
+    }
 
-                } else if ("nextRound".equals(clientMessage.type)) {
-                    // Handle next round request
-                    logger.info("WS {} -> Next round requested by {}", session.getId(), clientMessage.playerName);
-                    // Implement logic to start the next round
-                    String nextRoundJson = objectMapper.writeValueAsString(
-                            Map.of("type", "nextRound"));
-                    lastBroadcast = nextRoundJson;
-                    broadcast(nextRoundJson);
-                    guesserName = null;
-
-                    SpotifyApi api = findSpotifyApiFromAnyConnectedSession();
-                    if (api == null) {
-                        logger.info("WS {} -> No Spotify session connected (resume skipped)", session.getId());
-                    } else if (isSpotifyRateLimitedNow()) {
-                        logger.info("WS {} -> spotify nextRound skipped (rate limited)", session.getId());
+    private void onNextRound(Room room, String sessionId, ClientMessage message) throws IOException {
+        // Handle next round request
+        logger.info("WS {} -> Next round requested by {}", sessionId, message.playerName);
+        // Implement logic to start the next round
+        long round = room.newRound();
+        publish(room, new GameEvent.NextRound(round), message);
+
+        SpotifyAccount account = roomPlayback.accountFor(room);
+        if (account == null) {
+            logger.info("WS {} -> No Spotify session connected (resume skipped)", sessionId);
+        } else {
+            TrackDeck deck = room.getDeck();
+            coalescing.submit(room, CommandCoalescer.Kind.NEXT_ROUND, () ->
+                spotifyCommands.submit(account, "nextRound", player -> {
+                    PlaybackState playback = roomPlayback.playbackFor(account, player, sessionId);
+
+                    String trackUri = deck != null ? deck.next() : null;
+                    if (trackUri != null) {
+                        player.playUris(List.of(trackUri));
                     } else {
-                        try {
-                            synchronized (spotifyControlLock) {
-                                if (isSpotifyRateLimitedNow()) {
-                                    logger.info("WS {} -> spotify nextRound skipped (rate limited)", session.getId());
-                                    return;
-                                }
-
-                                CurrentlyPlayingContext playback = safeGetPlayback(api, session.getId());
+                        // Game was started on Spotify's shuffle (see newGame): just skip.
+                        player.skip();
+                    }
+                    playbackCache.refreshSoon(account);
 
-                                // Playlist-only mode: just skip. (Shuffle is enabled at newGame.)
-                                api.skipUsersPlaybackToNextTrack().build().execute();
+                    if (playback.supportsVolume()) {
+                        player.setVolume(100);
+                    }
+                    return null;
+                }).whenComplete(logOutcome(sessionId, "nextRound")));
+        }
+    }
 
-                                if (deviceSupportsVolume(playback)) {
-                                    api.setVolumeForUsersPlayback(100).build().execute();
-                                }
-                            }
-                        } catch (TooManyRequestsException e) {
-                            markSpotifyRateLimited(e, session.getId(), "nextRound");
-                        } catch (Exception e) {
-                            logger.warn("WS {} -> spotify nextRound failed", session.getId(), e);
+    private void onGuessAgain(Room room, String sessionId, ClientMessage message) throws IOException {
+        // Handle guess again request
+        long round = room.newRound();
+        publish(room, new GameEvent.GuessAgain(round), message);
+        SpotifyAccount account = roomPlayback.accountFor(room);
+        if (account == null) {
+            logger.info("WS {} -> No Spotify session connected (resume skipped)", sessionId);
+        } else {
+            coalescing.submit(room, CommandCoalescer.Kind.RESUME, () ->
+                spotifyCommands.submit(account, "guessAgain/resume", SpotifyCommandQueue.Endpoint.PLAYER_WRITE,
+                        transportKey(room), player -> {
+                    PlaybackState playback = roomPlayback.playbackFor(account, player, sessionId);
+                    if (Boolean.TRUE.equals(playback.playing())) {
+                        if (playback.supportsVolume()) {
+                            player.setVolume(100);
                         }
-                    }
-                } else if ("guessAgain".equals(clientMessage.type)) {
-                    // Handle guess again request
-                    String guessAgainJSON = objectMapper.writeValueAsString(
-                            Map.of("type", "guessAgain"));
-                    lastBroadcast = guessAgainJSON;
-                    broadcast(guessAgainJSON);
-                    guesserName = null;
-                    SpotifyApi api = findSpotifyApiFromAnyConnectedSession();
-                    if (api == null) {
-                        logger.info("WS {} -> No Spotify session connected (resume skipped)", session.getId());
-                    } else if (isSpotifyRateLimitedNow()) {
-                        logger.info("WS {} -> spotify resume skipped (rate limited)", session.getId());
+                        logger.info("WS {} -> spotify resume skipped (already playing)", sessionId);
+                    } else if (!playback.canResume()) {
+                        logger.info("WS {} -> spotify resume skipped (disallowed by Spotify)",
+                                sessionId);
                     } else {
-                        try {
-                            synchronized (spotifyControlLock) {
-                                if (isSpotifyRateLimitedNow()) {
-                                    logger.info("WS {} -> spotify resume skipped (rate limited)", session.getId());
-                                    return;
-                                }
-
-                                CurrentlyPlayingContext playback = safeGetPlayback(api, session.getId());
-                                Boolean isPlaying = playback != null ? playback.getIs_playing() : null;
-                                if (Boolean.TRUE.equals(isPlaying)) {
-                                    if (deviceSupportsVolume(playback)) {
-                                        api.setVolumeForUsersPlayback(100).build().execute();
-                                    }
-                                    logger.info("WS {} -> spotify resume skipped (already playing)", session.getId());
-                                } else if (!canResume(playback)) {
-                                    logger.info("WS {} -> spotify resume skipped (disallowed by Spotify)",
-                                            session.getId());
-                                } else {
-                                    api.startResumeUsersPlayback().build().execute();
-                                    if (deviceSupportsVolume(playback)) {
-                                        api.setVolumeForUsersPlayback(100).build().execute();
-                                    }
-                                    logger.info("WS {} -> spotify resume executed", session.getId());
-                                }
-                            }
-                        } catch (TooManyRequestsException e) {
-                            markSpotifyRateLimited(e, session.getId(), "guessAgain/resume");
-                        } catch (Exception e) {
-                            logger.warn("WS {} -> spotify resume failed", session.getId(), e);
+                        player.resume();
+                        playbackCache.update(account, p -> p.withPlaying(true, System.currentTimeMillis()));
+                        if (playback.supportsVolume()) {
+                            player.setVolume(100);
                         }
+                        logger.info("WS {} -> spotify resume executed", sessionId);
                     }
-                }
+                    return null;
+                }).whenComplete(logOutcome(sessionId, "resume")));
+        }
+    }
 
-            } catch (Exception e) {
-                logger.warn("WS {} -> message handling failed: {}", session.getId(), jsonPayload, e);
-            }
+    @Override
+    protected void handlePongMessage(WebSocketSession rawSession, PongMessage message) {
+        OutboundSession session = outboundOf(rawSession);
+        if (session != null) {
+            session.markSeen();
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        sessions.remove(session);
-        // no-op
+        Room room = roomOf(session);
+        OutboundSession outbound = outboundOf(session);
+        if (outbound != null) {
+            openSessions.decrementAndGet();
+        }
+        if (room != null && outbound != null) {
+            leaveRoom(room, outbound);
+        }
     }
 
-    private void broadcast(String payload) {
-        TextMessage msg = new TextMessage(payload);
-        for (WebSocketSession s : sessions) {
-            if (!s.isOpen()) {
-                sessions.remove(s);
-                continue;
-            }
-            try {
-                s.sendMessage(msg);
-            } catch (IOException e) {
-                logger.info("WS {} -> broadcast failed", s.getId(), e);
-            }
+    /**
+     * Takes the session out of the room's roster. Also used by the heartbeat for dead sessions,
+     * before (or instead of) their close callback, so running it twice is harmless.
+     */
+    private void leaveRoom(Room room, OutboundSession session) {
+        roomRegistry.leave(room, session);
+        if (roomRelay.isRelayed(room)) {
+            room.execute(() -> roomRelay.left(room));
+        }
+    }
+
+    /**
+     * Encodes the event once under the room's next sequence number, records it as the room's last
+     * event (and in its event log) and broadcasts the frame.
+     *
+     * @param cause the client message the event answers (its frame is what a resend of it gets back), or null
+     */
+    private void publish(Room room, GameEvent event, ClientMessage cause) throws JsonProcessingException {
+        long seq = room.getEventLog().nextSequence();
+        TextMessage frame = frameEncoder.encode(event, seq);
+        room.recordEvent(event, seq, frame);
+        if (cause != null && cause.dedupEntry != null) {
+            cause.dedupEntry.setResult(frame);
+        }
+        broadcast(room, frame);
+        roomRelay.publish(room, frame);
+    }
+
+    /**
+     * Sends to the room's sessions only. Runs on the room's lane so broadcasts keep the order of
+     * the state changes; the writes themselves happen in parallel and never block the lane.
+     */
+    private void broadcast(Room room, TextMessage frame) {
+        BroadcastFanout.Result result = broadcastFanout.broadcast(room.getSessions(), frame);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Room {} -> broadcast queued for {}/{} sessions", room.getCode(), result.queued(),
+                    result.recipients());
         }
     }
 }
@@ -0,0 +1,87 @@
+package de.bytephil.guessthesong.websocket;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+
+@ConfigurationProperties(prefix = "websocket")
+public class WebSocketProperties {
+
+    /**
+     * A session whose current send has been running longer than this is considered a laggard.
+     */
+    private int sendTimeLimitMs = 5_000;
+
+    /**
+     * A session with more than this many bytes queued is considered a laggard.
+     */
+    private int bufferSizeLimit = 512 * 1024;
+
+    /**
+     * What to do with laggards: TERMINATE (disconnect) the session at once, or DROP the new message
+     * and disconnect it once the messages queued before are written. Either way the client resumes.
+     */
+    private OverflowStrategy slowConsumerPolicy = OverflowStrategy.TERMINATE;
+
+    /**
+     * How often every session is pinged (and checked for being idle).
+     */
+    private int heartbeatIntervalMs = 15_000;
+
+    /**
+     * A session that has sent nothing, not even a pong, for this long is considered dead and evicted.
+     */
+    private int idleTimeoutMs = 45_000;
+
+    /**
+     * Debug aid: send every inbound message back to its sender as {@code echo:<payload>}.
+     */
+    private boolean echoEnabled;
+
+    public int getSendTimeLimitMs() {
+        return sendTimeLimitMs;
+    }
+
+    public void setSendTimeLimitMs(int sendTimeLimitMs) {
+        this.sendTimeLimitMs = sendTimeLimitMs;
+    }
+
+    public int getBufferSizeLimit() {
+        return bufferSizeLimit;
+    }
+
+    public void setBufferSizeLimit(int bufferSizeLimit) {
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+    public OverflowStrategy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(OverflowStrategy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public int getHeartbeatIntervalMs() {
+        return heartbeatIntervalMs;
+    }
+
+    public void setHeartbeatIntervalMs(int heartbeatIntervalMs) {
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+    }
+
+    public int getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    public void setIdleTimeoutMs(int idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public boolean isEchoEnabled() {
+        return echoEnabled;
+    }
+
+    public void setEchoEnabled(boolean echoEnabled) {
+        this.echoEnabled = echoEnabled;
+    }
+}
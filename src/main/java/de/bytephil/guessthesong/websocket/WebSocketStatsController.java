@@ -0,0 +1,80 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import de.bytephil.guessthesong.game.BuzzTrace;
+import de.bytephil.guessthesong.game.BuzzTracer;
+import de.bytephil.guessthesong.game.CommandCoalescing;
+
+@RestController
+public class WebSocketStatsController {
+
+    private final BroadcastFanout broadcastFanout;
+    private final CommandCoalescing coalescing;
+    private final BuzzTracer buzzTracer;
+
+    public WebSocketStatsController(BroadcastFanout broadcastFanout, CommandCoalescing coalescing,
+            BuzzTracer buzzTracer) {
+        this.broadcastFanout = broadcastFanout;
+        this.coalescing = coalescing;
+        this.buzzTracer = buzzTracer;
+    }
+
+    @GetMapping("/stats/broadcast")
+    public Object broadcast() {
+        return java.util.Map.of(
+                "broadcasts", broadcastFanout.getBroadcasts(),
+                "droppedMessages", broadcastFanout.getDroppedMessages(),
+                "disconnectedSessions", broadcastFanout.getDisconnectedSessions(),
+                "lastFanoutMicros", broadcastFanout.getLastFanoutNanos() / 1_000,
+                "maxFanoutMicros", broadcastFanout.getMaxFanoutNanos() / 1_000);
+    }
+
+    @GetMapping("/stats/commands")
+    public Object commands() {
+        return java.util.Map.of(
+                "received", coalescing.getReceived(),
+                "coalescedAway", coalescing.getSaved());
+    }
+
+    /**
+     * Buzz-to-pause latency: percentiles per stage over the recent rounds, and the latest traces.
+     * All times are microseconds since the server received the winning buzz (-1: stage not reached).
+     */
+    @GetMapping("/stats/buzz")
+    public Object buzz(@RequestParam(name = "traces", defaultValue = "20") int limit) {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        buzzTracer.summary().forEach((stage, stats) -> stages.put(stage.name().toLowerCase(), java.util.Map.of(
+                "count", stats.count(),
+                "p50Micros", stats.p50Micros(),
+                "p95Micros", stats.p95Micros(),
+                "p99Micros", stats.p99Micros())));
+
+        List<Object> traces = new ArrayList<>();
+        for (BuzzTrace trace : buzzTracer.recent()) {
+            if (traces.size() >= limit) {
+                break;
+            }
+            Map<String, Object> offsets = new LinkedHashMap<>();
+            for (BuzzTrace.Stage stage : BuzzTrace.Stage.values()) {
+                long nanos = trace.offsetNanos(stage);
+                offsets.put(stage.name().toLowerCase(), nanos >= 0 ? nanos / 1_000 : -1);
+            }
+            traces.add(java.util.Map.of(
+                    "room", trace.getRoomCode(),
+                    "round", trace.getRound(),
+                    "player", trace.getPlayerName() != null ? trace.getPlayerName() : "",
+                    "receivedAt", trace.getReceivedAtEpochMs(),
+                    "outcome", trace.getOutcome() != null ? trace.getOutcome() : "pending",
+                    "stagesMicros", offsets));
+        }
+        return java.util.Map.of("stages", stages, "traces", traces);
+    }
+}
@@ -0,0 +1,145 @@
+package de.bytephil.guessthesong.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.BindException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BrokerGameEventBusTests {
+
+	private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+	private final BlockingExecutors executors = new BlockingExecutors(false);
+	private EmbeddedGameBroker broker;
+	private BrokerGameEventBus nodeA;
+	private BrokerGameEventBus nodeB;
+
+	@BeforeEach
+	void start() throws Exception {
+		broker = new EmbeddedGameBroker(0, executors);
+		broker.start();
+		nodeA = connect();
+		nodeB = connect();
+	}
+
+	@AfterEach
+	void stop() {
+		nodeA.close();
+		nodeB.close();
+		broker.close();
+	}
+
+	private BrokerGameEventBus connect() throws InterruptedException {
+		BrokerGameEventBus bus = new BrokerGameEventBus("localhost", broker.getPort(), 50, objectMapper, executors,
+				new SimpleMeterRegistry());
+		bus.start();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!bus.isConnected() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(bus.isConnected());
+		return bus;
+	}
+
+	/**
+	 * Publishes probes from nodeA until one arrives, so everything nodeB sent the broker before is in effect.
+	 */
+	private void awaitProbe(BlockingQueue<ClusterMessage> received, String topic) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (System.nanoTime() < deadline) {
+			nodeA.publish(topic, ClusterMessage.frame("a", "PROBE", "probe"));
+			ClusterMessage message = received.poll(50, TimeUnit.MILLISECONDS);
+			if (message != null && "PROBE".equals(message.roomCode())) {
+				return;
+			}
+		}
+		throw new AssertionError("no probe on " + topic);
+	}
+
+	/**
+	 * The next message that is not a probe.
+	 */
+	private static ClusterMessage next(BlockingQueue<ClusterMessage> received, long timeoutMs)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		long left;
+		while ((left = deadline - System.nanoTime()) > 0) {
+			ClusterMessage message = received.poll(left, TimeUnit.NANOSECONDS);
+			if (message != null && !"PROBE".equals(message.roomCode())) {
+				return message;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	void messagesReachSubscribersOnOtherNodesInOrder() throws Exception {
+		BlockingQueue<ClusterMessage> received = new LinkedBlockingQueue<>();
+		nodeB.subscribe("room:ABC", received::add);
+		awaitProbe(received, "room:ABC");
+
+		for (int i = 0; i < 100; i++) {
+			nodeA.publish("room:ABC", ClusterMessage.frame("a", "ABC", "{\"type\":\"nextRound\",\"round\":" + i + "}"));
+		}
+		for (int i = 0; i < 100; i++) {
+			ClusterMessage message = next(received, 5_000);
+			assertEquals(ClusterMessage.Kind.FRAME, message.kind());
+			assertEquals("a", message.origin());
+			assertEquals("{\"type\":\"nextRound\",\"round\":" + i + "}", message.payload());
+		}
+	}
+
+	@Test
+	void closedSubscriptionsReceiveNothing() throws Exception {
+		BlockingQueue<ClusterMessage> received = new LinkedBlockingQueue<>();
+		GameEventBus.Subscription subscription = nodeB.subscribe("node:b", received::add);
+		awaitProbe(received, "node:b");
+		nodeA.publish("node:b", ClusterMessage.join("a", "ABC", "s1"));
+		assertEquals("s1", next(received, 5_000).sessionId());
+
+		subscription.close();
+		// nodeB's UNSUB reaches the broker before this later SUB does.
+		BlockingQueue<ClusterMessage> marker = new LinkedBlockingQueue<>();
+		nodeB.subscribe("node:b:marker", marker::add);
+		awaitProbe(marker, "node:b:marker");
+		nodeA.publish("node:b", ClusterMessage.join("a", "ABC", "s2"));
+		assertNull(next(received, 300));
+	}
+
+	@Test
+	void subscriptionsSurviveABrokerRestart() throws Exception {
+		BlockingQueue<ClusterMessage> received = new LinkedBlockingQueue<>();
+		nodeB.subscribe("room:ABC", received::add);
+		int port = broker.getPort();
+		broker.close();
+		// The old connections may hold the port for a moment after closing.
+		for (int attempt = 0; ; attempt++) {
+			try {
+				broker = new EmbeddedGameBroker(port, executors);
+				broker.start();
+				break;
+			} catch (BindException e) {
+				if (attempt == 50) {
+					throw e;
+				}
+				Thread.sleep(100);
+			}
+		}
+
+		// Both nodes reconnect and nodeB renews its subscription.
+		awaitProbe(received, "room:ABC");
+	}
+}
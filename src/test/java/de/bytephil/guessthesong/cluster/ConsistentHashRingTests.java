@@ -0,0 +1,54 @@
+package de.bytephil.guessthesong.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ConsistentHashRingTests {
+
+	private static final int KEYS = 10_000;
+
+	@Test
+	void everyNodeGetsAFairShare() {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			counts.merge(ring.nodeFor("ROOM" + i), 1, Integer::sum);
+		}
+		assertEquals(4, counts.size());
+		for (int count : counts.values()) {
+			assertTrue(count > KEYS / 4 * 0.75 && count < KEYS / 4 * 1.25, counts.toString());
+		}
+	}
+
+	@Test
+	void addingANodeOnlyMovesKeysToIt() {
+		ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+		ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String key = "ROOM" + i;
+			String owner = after.nodeFor(key);
+			if (!owner.equals(before.nodeFor(key))) {
+				assertEquals("d", owner);
+				moved++;
+			}
+		}
+		// About a quarter of the keys; hash % n would have moved three quarters.
+		assertTrue(moved > KEYS / 4 * 0.75 && moved < KEYS / 4 * 1.25, "moved " + moved);
+	}
+
+	@Test
+	void ownershipDoesNotDependOnNodeOrder() {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 64);
+		ConsistentHashRing reordered = new ConsistentHashRing(List.of("c", "a", "b"), 64);
+		for (int i = 0; i < 1_000; i++) {
+			assertEquals(ring.nodeFor("ROOM" + i), reordered.nodeFor("ROOM" + i));
+		}
+	}
+}
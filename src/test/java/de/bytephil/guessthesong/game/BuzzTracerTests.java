@@ -0,0 +1,83 @@
+package de.bytephil.guessthesong.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BuzzTracerTests {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private BuzzTracer tracer(int capacity) {
+		GameProperties properties = new GameProperties();
+		properties.setBuzzTraceCapacity(capacity);
+		return new BuzzTracer(properties, registry);
+	}
+
+	@Test
+	void ringKeepsTheNewestTraces() {
+		BuzzTracer tracer = tracer(3);
+		for (int round = 1; round <= 5; round++) {
+			tracer.start("ROOM", round, "p", System.nanoTime());
+		}
+		List<BuzzTrace> recent = tracer.recent();
+		assertEquals(3, recent.size());
+		assertEquals(5, recent.get(0).getRound());
+		assertEquals(3, recent.get(2).getRound());
+	}
+
+	@Test
+	void stagesAreOffsetsFromReceiptAndMarkedOnce() {
+		BuzzTracer tracer = tracer(8);
+		long receivedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+		BuzzTrace trace = tracer.start("ROOM", 1, "p", receivedAt);
+		trace.mark(BuzzTrace.Stage.LANE);
+		long lane = trace.offsetNanos(BuzzTrace.Stage.LANE);
+		assertTrue(lane >= TimeUnit.MILLISECONDS.toNanos(5));
+		trace.mark(BuzzTrace.Stage.LANE);
+		assertEquals(lane, trace.offsetNanos(BuzzTrace.Stage.LANE));
+		assertEquals(-1, trace.offsetNanos(BuzzTrace.Stage.PAUSED));
+
+		trace.finish("paused");
+		trace.finish("failed");
+		assertEquals("paused", trace.getOutcome());
+		assertEquals(1, registry.get("game.buzz.stage").tag("stage", "lane").timer().count());
+	}
+
+	@Test
+	void summaryLeavesOutStagesNotReached() {
+		BuzzTracer tracer = tracer(8);
+		for (int i = 0; i < 4; i++) {
+			BuzzTrace trace = tracer.start("ROOM", i, "p", System.nanoTime());
+			trace.mark(BuzzTrace.Stage.LANE);
+			if (i == 0) {
+				trace.mark(BuzzTrace.Stage.PAUSED);
+			}
+		}
+		Map<BuzzTrace.Stage, BuzzTracer.StageSummary> summary = tracer.summary();
+		assertEquals(4, summary.get(BuzzTrace.Stage.LANE).count());
+		assertEquals(1, summary.get(BuzzTrace.Stage.PAUSED).count());
+		assertEquals(0, summary.get(BuzzTrace.Stage.BROADCAST).count());
+		assertEquals(-1, summary.get(BuzzTrace.Stage.BROADCAST).p99Micros());
+	}
+
+	@Test
+	void percentilesUseNearestRank() {
+		long[] sorted = new long[100];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = (i + 1) * 1_000L;
+		}
+		assertEquals(50, BuzzTracer.percentileMicros(sorted, 100, 0.50));
+		assertEquals(95, BuzzTracer.percentileMicros(sorted, 100, 0.95));
+		assertEquals(99, BuzzTracer.percentileMicros(sorted, 100, 0.99));
+		assertEquals(1, BuzzTracer.percentileMicros(sorted, 1, 0.99));
+	}
+}
@@ -0,0 +1,112 @@
+package de.bytephil.guessthesong.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class BuzzerTests {
+
+	private static final long WINDOW = 100_000;
+
+	@Test
+	void exactlyOneWinnerUnderContention() throws Exception {
+		Buzzer buzzer = new Buzzer();
+		int players = 32;
+		ExecutorService pool = Executors.newFixedThreadPool(players);
+		try {
+			for (int round = 0; round < 200; round++) {
+				long epoch = buzzer.newRound();
+				CountDownLatch start = new CountDownLatch(1);
+				AtomicInteger openers = new AtomicInteger();
+				CountDownLatch done = new CountDownLatch(players);
+				for (int p = 0; p < players; p++) {
+					String name = "p" + p;
+					pool.execute(() -> {
+						try {
+							start.await();
+							long now = System.nanoTime();
+							if (buzzer.buzz(epoch, name, name, now, now, 0) == Buzzer.Outcome.OPENED) {
+								openers.incrementAndGet();
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} finally {
+							done.countDown();
+						}
+					});
+				}
+				start.countDown();
+				done.await(5, TimeUnit.SECONDS);
+				assertEquals(1, openers.get());
+				assertTrue(buzzer.settle(epoch).settled());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void staleBuzzIsRejected() {
+		Buzzer buzzer = new Buzzer();
+		long oldEpoch = buzzer.currentEpoch();
+		buzzer.newRound();
+
+		assertEquals(Buzzer.Outcome.STALE, buzzer.buzz(oldEpoch, "late", "s1", 1, 1, WINDOW));
+		assertNull(buzzer.current().winner());
+	}
+
+	@Test
+	void runnerUpMarginIsRecorded() {
+		Buzzer buzzer = new Buzzer();
+		long epoch = buzzer.currentEpoch();
+
+		assertEquals(Buzzer.Outcome.OPENED, buzzer.buzz(epoch, "a", "s1", 1_000, 1_000, 0));
+		assertEquals(Buzzer.Outcome.LOST, buzzer.buzz(epoch, "b", "s2", 4_000, 4_000, 0));
+		assertEquals(Buzzer.Outcome.LOST, buzzer.buzz(epoch, "c", "s3", 9_000, 9_000, 0));
+
+		assertEquals(3_000, buzzer.current().runnerUpMarginNanos());
+		assertEquals("b", buzzer.current().runnerUp().playerName());
+	}
+
+	@Test
+	void earlierPressInsideTheWindowTakesTheLead() {
+		Buzzer buzzer = new Buzzer();
+		long epoch = buzzer.currentEpoch();
+
+		// a arrives first, but b (slow link) pressed earlier and arrives inside the window.
+		assertEquals(Buzzer.Outcome.OPENED, buzzer.buzz(epoch, "a", "s1", 50_000, 50_000, WINDOW));
+		assertEquals(Buzzer.Outcome.LEADING, buzzer.buzz(epoch, "b", "s2", 90_000, 10_000, WINDOW));
+		// c pressed after b but before a: the closest runner-up.
+		assertEquals(Buzzer.Outcome.LOST, buzzer.buzz(epoch, "c", "s3", 95_000, 30_000, WINDOW));
+		// d pressed earliest, but arrived after the window closed.
+		assertEquals(Buzzer.Outcome.LOST, buzzer.buzz(epoch, "d", "s4", 150_000, 0, WINDOW));
+		assertFalse(buzzer.current().settled());
+
+		Buzzer.RoundState settled = buzzer.settle(epoch);
+		assertEquals("b", settled.winner().playerName());
+		assertEquals("c", settled.runnerUp().playerName());
+		assertEquals(20_000, settled.runnerUpMarginNanos());
+		assertNull(buzzer.settle(epoch));
+	}
+
+	@Test
+	void nothingChangesTheLeadOnceSettled() {
+		Buzzer buzzer = new Buzzer();
+		long epoch = buzzer.currentEpoch();
+
+		assertEquals(Buzzer.Outcome.OPENED, buzzer.buzz(epoch, "a", "s1", 50_000, 50_000, WINDOW));
+		buzzer.settle(epoch);
+		assertEquals(Buzzer.Outcome.LOST, buzzer.buzz(epoch, "b", "s2", 60_000, 0, WINDOW));
+		assertEquals("a", buzzer.current().winner().playerName());
+		assertNull(buzzer.settle(buzzer.newRound()));
+	}
+}
@@ -0,0 +1,102 @@
+package de.bytephil.guessthesong.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.bytephil.guessthesong.game.CommandCoalescer.Kind;
+
+class CommandCoalescerTests {
+
+	private static final long WINDOW = 300_000_000L;
+
+	private final List<Kind> dispatched = new ArrayList<>();
+	private final List<Kind> dropped = new ArrayList<>();
+	private final CommandCoalescer coalescer = new CommandCoalescer();
+
+	private boolean offer(Kind kind, long now) {
+		return coalescer.offer(kind, () -> dispatched.add(kind), now, WINDOW);
+	}
+
+	private int dispatchNow(Kind kind, long now) {
+		return coalescer.dispatchNow(kind, () -> dispatched.add(kind), () -> dropped.add(kind), now, WINDOW);
+	}
+
+	@Test
+	void firstCommandRunsImmediately() {
+		assertEquals(false, offer(Kind.NEXT_ROUND, 0));
+		assertEquals(List.of(Kind.NEXT_ROUND), dispatched);
+	}
+
+	@Test
+	void doubleTappedNextRoundIsOneSkip() {
+		offer(Kind.NEXT_ROUND, 0);
+		assertEquals(true, offer(Kind.NEXT_ROUND, 10));
+		offer(Kind.NEXT_ROUND, 20);
+
+		assertEquals(2, coalescer.flush(WINDOW, WINDOW));
+		assertEquals(List.of(Kind.NEXT_ROUND), dispatched);
+	}
+
+	@Test
+	void onlyLastTransportCommandCounts() {
+		offer(Kind.SHOW_ANSWER, 0);
+		offer(Kind.PAUSE, 10);
+		offer(Kind.RESUME, 20);
+		offer(Kind.PAUSE, 30);
+
+		assertEquals(2, coalescer.flush(WINDOW, WINDOW));
+		assertEquals(List.of(Kind.SHOW_ANSWER, Kind.PAUSE), dispatched);
+	}
+
+	@Test
+	void newGameDropsEverythingBeforeItAndTheSkipAfterIt() {
+		offer(Kind.PAUSE, 0);
+		offer(Kind.NEXT_ROUND, 10);
+		offer(Kind.NEW_GAME, 20);
+		offer(Kind.NEXT_ROUND, 30);
+		offer(Kind.NEW_GAME, 40);
+
+		assertEquals(3, coalescer.flush(WINDOW, WINDOW));
+		assertEquals(List.of(Kind.PAUSE, Kind.NEW_GAME), dispatched);
+	}
+
+	@Test
+	void pauseIsNotHeldBackByTheWindow() {
+		offer(Kind.NEXT_ROUND, 0);
+		offer(Kind.SHOW_ANSWER, 10);
+		offer(Kind.RESUME, 20);
+
+		// The held back answer still goes first; the resume before the pause is moot.
+		assertEquals(1, dispatchNow(Kind.PAUSE, 30));
+		assertEquals(List.of(Kind.NEXT_ROUND, Kind.SHOW_ANSWER, Kind.PAUSE), dispatched);
+		assertEquals(0, coalescer.flush(WINDOW, WINDOW));
+	}
+
+	@Test
+	void pauseInQuietRoomRunsImmediatelyAndOpensWindow() {
+		assertEquals(0, dispatchNow(Kind.PAUSE, 0));
+		assertEquals(true, offer(Kind.PAUSE, 10));
+
+		assertEquals(1, coalescer.flush(WINDOW, WINDOW));
+		assertEquals(List.of(Kind.PAUSE), dispatched);
+	}
+
+	@Test
+	void doubleTappedPauseIsReportedAsDropped() {
+		assertEquals(0, dispatchNow(Kind.PAUSE, 0));
+		assertEquals(1, dispatchNow(Kind.PAUSE, 10));
+		assertEquals(List.of(Kind.PAUSE), dispatched);
+		assertEquals(List.of(Kind.PAUSE), dropped);
+	}
+
+	@Test
+	void quietRoomStartsNewWindow() {
+		offer(Kind.NEXT_ROUND, 0);
+		assertEquals(false, offer(Kind.NEXT_ROUND, WINDOW));
+		assertEquals(List.of(Kind.NEXT_ROUND, Kind.NEXT_ROUND), dispatched);
+	}
+}
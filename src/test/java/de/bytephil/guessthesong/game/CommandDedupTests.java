@@ -0,0 +1,53 @@
+package de.bytephil.guessthesong.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+
+class CommandDedupTests {
+
+	private static final long WINDOW_MS = 1_000;
+
+	@Test
+	void resentCommandsFindTheirFirstResult() {
+		CommandDedup dedup = new CommandDedup(16);
+		assertNull(dedup.previous("c1", 0, WINDOW_MS));
+		CommandDedup.Entry entry = dedup.add("c1", 0);
+		TextMessage first = new TextMessage("first");
+		entry.setResult(first);
+		entry.setResult(new TextMessage("second"));
+
+		CommandDedup.Entry previous = dedup.previous("c1", 500, WINDOW_MS);
+		assertSame(entry, previous);
+		assertSame(first, previous.getResult());
+		assertNull(dedup.previous("c2", 500, WINDOW_MS));
+	}
+
+	@Test
+	void idsExpireAfterTheWindow() {
+		CommandDedup dedup = new CommandDedup(16);
+		dedup.add("c1", 0);
+		dedup.add("c2", 800);
+		assertNull(dedup.previous("c1", 1_001, WINDOW_MS));
+		assertEquals(1, dedup.size());
+		assertNull(dedup.previous("c2", 1_801, WINDOW_MS));
+		assertEquals(0, dedup.size());
+	}
+
+	@Test
+	void oldestIdsAreForgottenBeyondTheCapacity() {
+		CommandDedup dedup = new CommandDedup(3);
+		for (int i = 1; i <= 5; i++) {
+			dedup.add("c" + i, i);
+		}
+		assertEquals(3, dedup.size());
+		assertNull(dedup.previous("c2", 10, WINDOW_MS));
+		for (int i = 3; i <= 5; i++) {
+			assertNotNull(dedup.previous("c" + i, 10, WINDOW_MS));
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package de.bytephil.guessthesong.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+
+class EventLogTests {
+
+	private static void appendFrames(EventLog log, int count) {
+		for (int i = 0; i < count; i++) {
+			long seq = log.nextSequence();
+			log.append(seq, new TextMessage("f" + seq));
+		}
+	}
+
+	private static List<String> payloads(List<TextMessage> frames) {
+		return frames.stream().map(TextMessage::getPayload).toList();
+	}
+
+	@Test
+	void returnsOnlyTheFramesAfterTheGivenSequence() {
+		EventLog log = new EventLog(8);
+		appendFrames(log, 5);
+		assertEquals(5, log.lastSequence());
+		assertEquals(List.of("f4", "f5"), payloads(log.since(3)));
+		assertEquals(List.of("f1", "f2", "f3", "f4", "f5"), payloads(log.since(0)));
+		assertEquals(List.of(), log.since(5));
+	}
+
+	@Test
+	void clientsTooFarBehindNeedASnapshot() {
+		EventLog log = new EventLog(4);
+		appendFrames(log, 10);
+		// 7..10 are kept, so anyone who saw 6 can catch up.
+		assertEquals(List.of("f7", "f8", "f9", "f10"), payloads(log.since(6)));
+		assertNull(log.since(5));
+		assertNull(log.since(0));
+	}
+
+	@Test
+	void unknownSequenceNumbersNeedASnapshot() {
+		EventLog log = new EventLog(4);
+		appendFrames(log, 2);
+		assertNull(log.since(3));
+		assertNull(log.since(-1));
+		assertNotEquals(log.getId(), new EventLog(4).getId());
+	}
+
+	@Test
+	void framesMustBeAppendedInSequence() {
+		EventLog log = new EventLog(4);
+		appendFrames(log, 1);
+		assertThrows(IllegalStateException.class, () -> log.append(3, new TextMessage("f3")));
+	}
+}
@@ -0,0 +1,62 @@
+package de.bytephil.guessthesong.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+class RoomRegistryTests {
+
+	@Test
+	void onlyJoinCodesNameRooms() {
+		ExecutorService lanes = Executors.newSingleThreadExecutor();
+		try {
+			RoomRegistry registry = new RoomRegistry(new GameProperties(), lanes);
+
+			assertTrue(registry.isValidCode("LOBBY"));
+			assertTrue(registry.isValidCode("ABC234"));
+			assertTrue(registry.isValidCode(registry.create().getCode()));
+			assertFalse(registry.isValidCode("ABC23"));
+			assertFalse(registry.isValidCode("ABC2340"));
+			// 0/O and 1/I are not in the alphabet, nor is anything else.
+			assertFalse(registry.isValidCode("ABC230"));
+			assertFalse(registry.isValidCode("ABCDEI"));
+			assertFalse(registry.isValidCode("AB CDE"));
+			assertFalse(registry.isValidCode("AB\nCDE"));
+
+			assertNull(registry.join("room-1", null, room -> {
+			}));
+			assertNull(registry.host(null));
+			assertNull(registry.host("room-1"));
+			assertEquals(1, registry.size());
+		} finally {
+			lanes.shutdownNow();
+		}
+	}
+
+	@Test
+	void roomCountIsCapped() {
+		GameProperties properties = new GameProperties();
+		properties.setMaxRooms(2);
+		ExecutorService lanes = Executors.newSingleThreadExecutor();
+		try {
+			RoomRegistry registry = new RoomRegistry(properties, lanes);
+			assertNotNull(registry.create());
+			assertNotNull(registry.create());
+
+			assertNull(registry.create());
+			assertNull(registry.join("ABC234", null, room -> {
+			}));
+			assertNull(registry.host("ABC234"));
+			assertEquals(2, registry.size());
+		} finally {
+			lanes.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package de.bytephil.guessthesong.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TrackDeckTests {
+
+	private static final List<String> TRACKS = List.of("t:1", "t:2", "t:3", "t:4", "t:5");
+
+	@Test
+	void everyTrackOncePerCycle() {
+		TrackDeck deck = new TrackDeck("spotify:playlist:x", new Random(7));
+		deck.load("s1", TRACKS);
+		for (int cycle = 0; cycle < 20; cycle++) {
+			Set<String> drawn = new HashSet<>();
+			for (int i = 0; i < TRACKS.size(); i++) {
+				assertTrue(drawn.add(deck.next()));
+			}
+			assertEquals(Set.copyOf(TRACKS), drawn);
+		}
+	}
+
+	@Test
+	void noRepeatAcrossCycleBoundary() {
+		TrackDeck deck = new TrackDeck("spotify:playlist:x", new Random(1));
+		deck.load("s1", List.of("t:1", "t:2"));
+		String previous = null;
+		for (int i = 0; i < 100; i++) {
+			String next = deck.next();
+			assertNotEquals(previous, next);
+			previous = next;
+		}
+	}
+
+	@Test
+	void newSnapshotKeepsPlayedTracksOut() {
+		TrackDeck deck = new TrackDeck("spotify:playlist:x", new Random(3));
+		deck.load("s1", TRACKS);
+		String first = deck.next();
+		deck.load("s2", List.of("t:1", "t:2", "t:3", "t:4", "t:5", "t:6"));
+		assertEquals(5, deck.remaining());
+		for (int i = 0; i < 5; i++) {
+			assertNotEquals(first, deck.next());
+		}
+	}
+
+	@Test
+	void emptyDeck() {
+		TrackDeck deck = new TrackDeck("spotify:playlist:x");
+		assertFalse(deck.isLoaded());
+		assertNull(deck.next());
+	}
+}
@@ -0,0 +1,110 @@
+package de.bytephil.guessthesong.playback;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import de.bytephil.guessthesong.spotify.PlaybackState;
+import de.bytephil.guessthesong.spotify.SpotifyAccount;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+class SimulatedPlaybackBackendTests {
+
+	private final PlaybackProperties.Simulated settings = new PlaybackProperties.Simulated();
+	private final SimulatedClock.Virtual clock = SimulatedClock.virtual();
+
+	private SimulatedPlaybackBackend backend(LatencyDistribution latency) {
+		return new SimulatedPlaybackBackend(settings, clock, latency, latency);
+	}
+
+	private static PlaybackController player(SimulatedPlaybackBackend backend) {
+		return backend.controllerFor(backend.accountForRoom("ROOM"));
+	}
+
+	@Test
+	void latencyAdvancesVirtualClock() throws Exception {
+		PlaybackController player = player(backend(LatencyDistribution.fixed(120)));
+		player.getState();
+		player.pause();
+		assertEquals(240, clock.millis());
+	}
+
+	@Test
+	void playbackFollowsTheClock() throws Exception {
+		settings.setTrackDurationMs(10_000);
+		PlaybackController player = player(backend(LatencyDistribution.none()));
+		player.playUris(List.of("spotify:track:a", "spotify:track:b"));
+
+		clock.advance(TimeUnit.SECONDS.toNanos(4));
+		PlaybackState state = player.getState();
+		assertEquals("spotify:track:a", state.trackUri());
+		assertEquals(4_000, state.progressMs());
+		assertFalse(state.canResume());
+
+		clock.advance(TimeUnit.SECONDS.toNanos(7));
+		state = player.getState();
+		assertEquals("spotify:track:b", state.trackUri());
+		assertEquals(1_000, state.progressMs());
+
+		player.pause();
+		clock.advance(TimeUnit.SECONDS.toNanos(60));
+		state = player.getState();
+		assertEquals(Boolean.FALSE, state.playing());
+		assertEquals(1_000, state.progressMs());
+		assertTrue(state.canResume());
+	}
+
+	@Test
+	void resumeWithoutTrackHasNoDevice() {
+		PlaybackController player = player(backend(LatencyDistribution.none()));
+		assertThrows(NotFoundException.class, player::resume);
+	}
+
+	@Test
+	void perSecondLimitAnswers429() throws Exception {
+		settings.setRateLimitPerSecond(3);
+		settings.setRetryAfterSeconds(2);
+		SimulatedPlaybackBackend backend = backend(LatencyDistribution.none());
+		PlaybackController player = player(backend);
+		for (int i = 0; i < 3; i++) {
+			player.getState();
+		}
+		TooManyRequestsException e = assertThrows(TooManyRequestsException.class, player::getState);
+		assertEquals(2, e.getRetryAfter());
+
+		clock.advance(TimeUnit.SECONDS.toNanos(1));
+		player.getState();
+		assertEquals(1, backend.getRateLimited());
+	}
+
+	@Test
+	void injectedRateLimitsFollowProbability() {
+		settings.setRateLimitProbability(0.25);
+		SimulatedPlaybackBackend backend = backend(LatencyDistribution.none());
+		PlaybackController player = player(backend);
+		for (int i = 0; i < 4_000; i++) {
+			try {
+				player.skip();
+			} catch (Exception expected) {
+			}
+		}
+		assertEquals(4_000, backend.getCalls(SimulatedPlaybackBackend.Call.SKIP));
+		assertTrue(backend.getRateLimited() > 800 && backend.getRateLimited() < 1_200, "" + backend.getRateLimited());
+	}
+
+	@Test
+	void accountsHaveTheirOwnPlayer() throws Exception {
+		SimulatedPlaybackBackend backend = backend(LatencyDistribution.none());
+		backend.controllerFor(backend.accountForRoom("A")).playContext("spotify:playlist:p");
+		assertEquals(null, backend.controllerFor(backend.accountForRoom("B")).getState().trackUri());
+		assertEquals("spotify:track:p-0",
+				backend.controllerFor(new SpotifyAccount("simulated:A", null)).getState().trackUri());
+	}
+}
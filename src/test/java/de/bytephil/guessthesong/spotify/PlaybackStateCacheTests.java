@@ -0,0 +1,118 @@
+package de.bytephil.guessthesong.spotify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import de.bytephil.guessthesong.playback.PlaybackProperties;
+import de.bytephil.guessthesong.playback.SimulatedPlaybackBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PlaybackStateCacheTests {
+
+	private static final SpotifyAccount ACCOUNT = new SpotifyAccount("test:cache", null);
+
+	private final SpotifyProperties properties = new SpotifyProperties();
+	private SimulatedPlaybackBackend backend;
+	private SpotifyCommandQueue commands;
+	private PlaybackStateCache cache;
+
+	@BeforeEach
+	void start() {
+		PlaybackProperties playback = new PlaybackProperties();
+		playback.getSimulated().setVirtualClock(true);
+		backend = new SimulatedPlaybackBackend(playback);
+		properties.setPlaybackPollActiveMs(10);
+		properties.setPlaybackActiveWindowMs(60_000);
+		properties.setPlaybackPollIdleMaxMs(40);
+		properties.setPlaybackPollStopAfterMs(60_000);
+		commands = new SpotifyCommandQueue(backend, properties, new SimpleMeterRegistry(), new BlockingExecutors(false));
+		cache = new PlaybackStateCache(commands, properties);
+	}
+
+	@AfterEach
+	void stop() {
+		commands.shutdown();
+	}
+
+	private long polls() {
+		return backend.getCalls(SimulatedPlaybackBackend.Call.GET_STATE);
+	}
+
+	/**
+	 * Runs the poller until it has polled once more, returning the interval it chose.
+	 */
+	private long pollOnce() throws Exception {
+		long before = polls();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (polls() == before && System.nanoTime() < deadline) {
+			cache.pollDueAccounts();
+			Thread.sleep(1);
+		}
+		assertEquals(before + 1, polls());
+		// The poll's result is handled before the account's lane runs anything else.
+		commands.submit(ACCOUNT, "barrier", player -> null).get(10, TimeUnit.SECONDS);
+		return cache.pollIntervalMs(ACCOUNT);
+	}
+
+	@Test
+	void stateStoredByAHandlerIsPolledAndKept() throws Exception {
+		cache.put(ACCOUNT, PlaybackState.UNKNOWN);
+		pollOnce();
+		assertNotNull(cache.get(ACCOUNT));
+	}
+
+	@Test
+	void earlyRefreshAfterAWriteIsPolled() throws Exception {
+		cache.refreshSoon(ACCOUNT);
+		assertNull(cache.get(ACCOUNT));
+		pollOnce();
+		assertNotNull(cache.get(ACCOUNT));
+	}
+
+	@Test
+	void activeAccountIsPolledAtTheActiveRate() throws Exception {
+		cache.markActive(ACCOUNT);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(10, pollOnce());
+		}
+	}
+
+	@Test
+	void idleAccountBacksOffUpToTheIdleMaximum() throws Exception {
+		properties.setPlaybackActiveWindowMs(0);
+		cache.markActive(ACCOUNT);
+		Thread.sleep(2);
+		List<Long> intervals = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			intervals.add(pollOnce());
+		}
+		assertEquals(List.of(20L, 40L, 40L), intervals);
+	}
+
+	@Test
+	void accountIsEvictedAfterTheStopCutoff() throws Exception {
+		properties.setPlaybackPollStopAfterMs(50);
+		cache.markActive(ACCOUNT);
+		cache.put(ACCOUNT, PlaybackState.UNKNOWN);
+		pollOnce();
+		Thread.sleep(60);
+
+		long polls = polls();
+		cache.pollDueAccounts();
+		assertNull(cache.get(ACCOUNT));
+		assertEquals(-1, cache.pollIntervalMs(ACCOUNT));
+		Thread.sleep(20);
+		assertTrue(polls() == polls);
+	}
+}
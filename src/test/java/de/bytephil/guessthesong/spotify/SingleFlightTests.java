@@ -0,0 +1,63 @@
+package de.bytephil.guessthesong.spotify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTests {
+
+	@Test
+	void concurrentCallersShareOneCall() throws Exception {
+		SingleFlight flight = new SingleFlight();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Object result = new Object();
+		int callers = 8;
+		ExecutorService pool = Executors.newFixedThreadPool(callers);
+		try {
+			List<Future<Object>> futures = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				futures.add(pool.submit(() -> flight.execute("global|playback", () -> {
+					calls.incrementAndGet();
+					release.await(5, TimeUnit.SECONDS);
+					return result;
+				})));
+			}
+			// Let every caller reach the in-flight call before it completes.
+			while (flight.getExecuted() + flight.getCoalesced() < callers) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			for (Future<Object> f : futures) {
+				assertSame(result, f.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(1, calls.get());
+		assertEquals(callers - 1, flight.getCoalesced());
+		assertEquals(0, flight.getInFlight());
+	}
+
+	@Test
+	void failureIsPropagatedAndNotCached() throws Exception {
+		SingleFlight flight = new SingleFlight();
+		assertThrows(IOException.class, () -> flight.execute("k", () -> {
+			throw new IOException("boom");
+		}));
+		assertEquals("ok", flight.execute("k", () -> "ok"));
+		assertEquals(2, flight.getExecuted());
+	}
+}
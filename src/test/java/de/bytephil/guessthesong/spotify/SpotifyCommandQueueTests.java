@@ -0,0 +1,145 @@
+package de.bytephil.guessthesong.spotify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import de.bytephil.guessthesong.playback.PlaybackProperties;
+import de.bytephil.guessthesong.playback.SimulatedPlaybackBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SpotifyCommandQueueTests {
+
+	private static final SpotifyAccount ALICE = new SpotifyAccount("test:alice", null);
+	private static final SpotifyAccount BOB = new SpotifyAccount("test:bob", null);
+
+	private final SpotifyProperties properties = new SpotifyProperties();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private SpotifyCommandQueue queue;
+
+	private SpotifyCommandQueue queue() {
+		queue = new SpotifyCommandQueue(new SimulatedPlaybackBackend(new PlaybackProperties()), properties,
+				new SimpleMeterRegistry(), new BlockingExecutors(false));
+		return queue;
+	}
+
+	@AfterEach
+	void stop() {
+		release.countDown();
+		if (queue != null) {
+			queue.shutdown();
+		}
+	}
+
+	/**
+	 * Occupies the account's lane until {@link #release} is counted down.
+	 */
+	private CompletableFuture<Object> block(SpotifyAccount account, CountDownLatch started) {
+		return queue.submit(account, "block", player -> {
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return null;
+		});
+	}
+
+	@Test
+	void commandsOfOneAccountRunOneAtATimeInOrder() throws Exception {
+		queue();
+		List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger overlaps = new AtomicInteger();
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			int n = i;
+			futures.add(queue.submit(ALICE, "cmd" + n, player -> {
+				if (running.incrementAndGet() > 1) {
+					overlaps.incrementAndGet();
+				}
+				ran.add(n);
+				running.decrementAndGet();
+				return n;
+			}));
+			queue.submit(BOB, "other", player -> null);
+		}
+		for (CompletableFuture<Integer> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(0, overlaps.get());
+		for (int i = 0; i < ran.size(); i++) {
+			assertEquals(i, ran.get(i));
+		}
+		assertEquals(200, ran.size());
+	}
+
+	@Test
+	void commandStillQueuedAtItsDeadlineExpires() throws Exception {
+		properties.setCommandDeadlineMs(50);
+		queue();
+		CountDownLatch started = new CountDownLatch(1);
+		CompletableFuture<Object> blocker = block(ALICE, started);
+		started.await(10, TimeUnit.SECONDS);
+		CompletableFuture<String> late = queue.submit(ALICE, "late", player -> "ran");
+		Thread.sleep(100);
+		release.countDown();
+
+		blocker.get(10, TimeUnit.SECONDS);
+		ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(10, TimeUnit.SECONDS));
+		assertInstanceOf(SpotifyCommandQueue.DeadlineExceededException.class, e.getCause());
+		assertEquals(1, queue.getExpired());
+	}
+
+	@Test
+	void queuedCommandIsSupersededByOneWithTheSameKey() throws Exception {
+		queue();
+		CountDownLatch started = new CountDownLatch(1);
+		block(ALICE, started);
+		started.await(10, TimeUnit.SECONDS);
+		CompletableFuture<String> pause = queue.submit(ALICE, "pause", SpotifyCommandQueue.Endpoint.PLAYER_WRITE,
+				"transport", player -> "paused");
+		CompletableFuture<String> resume = queue.submit(ALICE, "resume", SpotifyCommandQueue.Endpoint.PLAYER_WRITE,
+				"transport", player -> "resumed");
+		release.countDown();
+
+		assertEquals("resumed", resume.get(10, TimeUnit.SECONDS));
+		ExecutionException e = assertThrows(ExecutionException.class, () -> pause.get(10, TimeUnit.SECONDS));
+		assertInstanceOf(SpotifyCommandQueue.SupersededException.class, e.getCause());
+		assertEquals(1, queue.getSuperseded());
+	}
+
+	@Test
+	void laneRunningACommandIsNotEvicted() throws Exception {
+		queue();
+		CountDownLatch started = new CountDownLatch(1);
+		CompletableFuture<Object> blocker = block(ALICE, started);
+		started.await(10, TimeUnit.SECONDS);
+
+		queue.evictLanesIdleSince(Long.MAX_VALUE);
+		assertEquals(1, queue.laneCount());
+		// Still the same lane: the command waits for the running one.
+		CompletableFuture<Boolean> next = queue.submit(ALICE, "next", player -> blocker.isDone());
+		release.countDown();
+		assertEquals(true, next.get(10, TimeUnit.SECONDS));
+
+		// Once the lane has run dry.
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (queue.laneCount() > 0 && System.nanoTime() < deadline) {
+			queue.evictLanesIdleSince(Long.MAX_VALUE);
+			Thread.sleep(1);
+		}
+		assertEquals(0, queue.laneCount());
+		assertEquals("again", queue.submit(ALICE, "again", player -> "again").get(10, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,57 @@
+package de.bytephil.guessthesong.spotify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import de.bytephil.guessthesong.spotify.SpotifyCommandQueue.Endpoint;
+
+class SpotifyRateLimiterTests {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private static SpotifyRateLimiter limiter() {
+		SpotifyProperties properties = new SpotifyProperties();
+		properties.getPlayerWriteBudget().setPerSecond(2);
+		properties.getPlayerWriteBudget().setBurst(3);
+		return new SpotifyRateLimiter(properties, 0);
+	}
+
+	@Test
+	void burstThenRefillRate() {
+		SpotifyRateLimiter limiter = limiter();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limiter.tryAcquire(Endpoint.PLAYER_WRITE, 0));
+		}
+		long wait = limiter.tryAcquire(Endpoint.PLAYER_WRITE, 0);
+		assertEquals(SECOND / 2, wait);
+		assertEquals(0, limiter.tryAcquire(Endpoint.PLAYER_WRITE, wait));
+	}
+
+	@Test
+	void endpointsHaveSeparateBudgets() {
+		SpotifyRateLimiter limiter = limiter();
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire(Endpoint.PLAYER_WRITE, 0);
+		}
+		assertTrue(limiter.tryAcquire(Endpoint.PLAYER_WRITE, 0) > 0);
+		assertEquals(0, limiter.tryAcquire(Endpoint.PLAYER_READ, 0));
+	}
+
+	@Test
+	void retryAfterBlocksAccountAndHalvesRate() {
+		SpotifyRateLimiter limiter = limiter();
+		limiter.onRateLimited(Endpoint.PLAYER_WRITE, 3, 0);
+
+		assertEquals(3 * SECOND, limiter.tryAcquire(Endpoint.PLAYER_READ, 0));
+		assertEquals(1.0, limiter.currentRate(Endpoint.PLAYER_WRITE));
+		// Bucket was emptied: the first write after the block waits for a token at the halved rate.
+		assertEquals(SECOND, limiter.tryAcquire(Endpoint.PLAYER_WRITE, 3 * SECOND));
+
+		limiter.onSuccess(Endpoint.PLAYER_WRITE);
+		assertEquals(1.2, limiter.currentRate(Endpoint.PLAYER_WRITE), 1e-9);
+	}
+}
@@ -0,0 +1,210 @@
+package de.bytephil.guessthesong.spotify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import de.bytephil.guessthesong.spotify.SpotifyStubServer.Failure;
+import de.bytephil.guessthesong.spotify.SpotifyStubServer.Route;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+/**
+ * The real client library, token refresher and command queue against {@link SpotifyStubServer}.
+ */
+@SpringBootTest(properties = {
+		"spotify.client-id=stub-client",
+		"spotify.client-secret=stub-secret",
+		"spotify.redirect-uri=http://localhost/spotify/callback",
+		// Fewer catalog requests than a paged playlist needs, so paging has to wait for budget.
+		"spotify.catalog-read-budget.burst=1",
+		"spotify.catalog-read-budget.per-second=4",
+		"spotify.token-store-path=target/stub-spotify-token.properties" })
+class SpotifyStubIntegrationTests {
+
+	private static SpotifyStubServer stub;
+
+	@Autowired
+	private SpotifyService spotifyService;
+
+	@Autowired
+	private SpotifyCommandQueue commands;
+
+	@Autowired
+	private SpotifyTokenRefresher tokenRefresher;
+
+	@Autowired
+	private PlaylistCatalog playlistCatalog;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@BeforeAll
+	static void startStub() throws Exception {
+		stub = SpotifyStubServer.start();
+	}
+
+	@AfterAll
+	static void stopStub() {
+		stub.close();
+	}
+
+	@DynamicPropertySource
+	static void stubUris(DynamicPropertyRegistry registry) {
+		registry.add("spotify.api-base-uri", () -> stub.apiBaseUri());
+		registry.add("spotify.token-uri", () -> stub.tokenUri());
+	}
+
+	@BeforeEach
+	void connect() {
+		stub.reset();
+		spotifyService.setGlobalToken(new SpotifySessionToken("stub-access-0", "stub-refresh-0",
+				System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+	}
+
+	private <T> T run(SpotifyCommandQueue.Endpoint endpoint, SpotifyCommandQueue.SpotifyCommand<T> command)
+			throws Exception {
+		return commands.submit(SpotifyAccount.global(), "test", endpoint, null, command).get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void refreshGoesToTokenUri() throws Exception {
+		long refreshes = meterRegistry.get("spotify.token.refresh").tag("outcome", "success").timer().count();
+		spotifyService.refreshGlobal();
+		assertEquals(refreshes + 1,
+				meterRegistry.get("spotify.token.refresh").tag("outcome", "success").timer().count());
+		assertEquals(1, stub.calls(Route.TOKEN));
+		assertTrue(spotifyService.getGlobalToken().getAccessToken().startsWith("stub-access-"));
+		assertEquals("stub-refresh-0", spotifyService.getGlobalToken().getRefreshToken());
+	}
+
+	@Test
+	void tokenUntrackedWhileIdleIsRefreshedWhenUsedAgain() throws Exception {
+		MockHttpSession session = new MockHttpSession();
+		SpotifySessionToken token = new SpotifySessionToken("stub-access-old", "stub-refresh-0",
+				System.currentTimeMillis() - 1_000);
+		spotifyService.setToken(session, token);
+		// What the refresher does to tokens unused for spotify.token-idle-untrack-ms.
+		SpotifyAccount account = SpotifyAccount.forSession(session);
+		tokenRefresher.untrack(account.key());
+
+		spotifyService.apiFor(account);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while ("stub-access-old".equals(token.getAccessToken()) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertNotEquals("stub-access-old", token.getAccessToken());
+		assertEquals(1, stub.calls(Route.TOKEN));
+	}
+
+	@Test
+	void codeExchangeGoesToTokenUri() throws Exception {
+		SpotifySessionToken token = spotifyService.exchangeCodeForToken("code");
+		assertTrue(token.getRefreshToken().startsWith("stub-refresh-"));
+		assertEquals(1, stub.calls(Route.TOKEN));
+	}
+
+	@Test
+	void playbackRoundTrip() throws Exception {
+		run(SpotifyCommandQueue.Endpoint.PLAYER_WRITE, player -> {
+			player.playUris(List.of("spotify:track:abc"));
+			return null;
+		});
+		PlaybackState playing = run(SpotifyCommandQueue.Endpoint.PLAYER_READ, player -> player.getState());
+		assertEquals("spotify:track:abc", playing.trackUri());
+		assertEquals(Boolean.TRUE, playing.playing());
+		assertTrue(playing.supportsVolume());
+
+		run(SpotifyCommandQueue.Endpoint.PLAYER_WRITE, player -> {
+			player.pause();
+			return null;
+		});
+		PlaybackState paused = run(SpotifyCommandQueue.Endpoint.PLAYER_READ, player -> player.getCurrentTrack());
+		assertEquals(Boolean.FALSE, paused.playing());
+		assertTrue(paused.canResume());
+	}
+
+	private long rateLimitedPauses() {
+		Timer timer = meterRegistry.find("spotify.api.requests").tag("operation", "pause")
+				.tag("outcome", "rate_limited").timer();
+		return timer == null ? 0 : timer.count();
+	}
+
+	@Test
+	void rateLimitedWriteIsSentAgainAfterRetryAfter() throws Exception {
+		long rateLimited = rateLimitedPauses();
+		stub.failNext(Route.PAUSE, 1, Failure.rateLimited(1));
+		long start = System.nanoTime();
+		run(SpotifyCommandQueue.Endpoint.PLAYER_WRITE, player -> {
+			player.setVolume(50);
+			player.pause();
+			return null;
+		});
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+		// Only the rejected request is repeated, not the command.
+		assertEquals(1, stub.calls(Route.VOLUME));
+		assertEquals(2, stub.calls(Route.PAUSE));
+		assertEquals(rateLimited + 1, rateLimitedPauses());
+	}
+
+	@Test
+	void writeRateLimitedAgainFailsWithRetryAfter() {
+		double retryAfterSum = meterRegistry.get("spotify.api.retry.after").summary().totalAmount();
+		long rateLimited = rateLimitedPauses();
+		stub.failNext(Route.PAUSE, 2, Failure.rateLimited(1));
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> run(SpotifyCommandQueue.Endpoint.PLAYER_WRITE, player -> {
+					player.pause();
+					return null;
+				}));
+		TooManyRequestsException cause = assertInstanceOf(TooManyRequestsException.class, e.getCause());
+		assertEquals(1, cause.getRetryAfter());
+		assertTrue(commands.isRateLimitedNow(SpotifyAccount.global()));
+
+		assertTrue(meterRegistry.get("spotify.api.rate.limited").tag("operation", "pause").counter().count() >= 2);
+		assertEquals(rateLimited + 2, rateLimitedPauses());
+		assertEquals(retryAfterSum + 2, meterRegistry.get("spotify.api.retry.after").summary().totalAmount());
+	}
+
+	@Test
+	void rateLimitedReadIsRetriedAfterRetryAfter() throws Exception {
+		stub.failNext(Route.PLAYER, 1, Failure.rateLimited(1));
+		long start = System.nanoTime();
+		run(SpotifyCommandQueue.Endpoint.PLAYER_READ, player -> player.getState());
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+		assertEquals(2, stub.calls(Route.PLAYER));
+	}
+
+	@Test
+	void playlistIsPagedOnce() throws Exception {
+		stub.playlistSize(250);
+		long deferrals = commands.getDeferrals();
+		PlaylistCatalog.Tracks tracks = run(SpotifyCommandQueue.Endpoint.CATALOG_READ,
+				player -> playlistCatalog.tracks(player, "spotify:playlist:stubplaylist"));
+		assertEquals(250, tracks.uris().size());
+		assertEquals(3, stub.calls(Route.PLAYLIST_TRACKS));
+		// Snapshot id plus three pages: each request takes a catalog token, so paging waits for budget.
+		assertTrue(commands.getDeferrals() - deferrals >= 2);
+
+		run(SpotifyCommandQueue.Endpoint.CATALOG_READ,
+				player -> playlistCatalog.tracks(player, "spotify:playlist:stubplaylist"));
+		assertEquals(3, stub.calls(Route.PLAYLIST_TRACKS));
+	}
+}
@@ -0,0 +1,438 @@
+package de.bytephil.guessthesong.spotify;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.bytephil.guessthesong.playback.LatencyDistribution;
+import de.bytephil.guessthesong.playback.PlaybackController;
+import de.bytephil.guessthesong.playback.PlaybackProperties;
+import de.bytephil.guessthesong.playback.SimulatedClock;
+import de.bytephil.guessthesong.playback.SimulatedPlaybackBackend;
+import se.michaelthelin.spotify.enums.Action;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+
+/**
+ * Embedded HTTP stand-in for the parts of the Spotify Web API and accounts service we call:
+ * player, tracks, playlists and the token endpoint. Point {@code spotify.api-base-uri} at
+ * {@link #apiBaseUri()} and {@code spotify.token-uri} at {@link #tokenUri()} to run the real
+ * client library against it.
+ *
+ * The player behind it is a {@link SimulatedPlaybackBackend} player on the system clock. Per
+ * route, latency can be scripted with a {@link LatencyDistribution}, and errors either for the
+ * next n calls or with a probability; 429s carry a {@code Retry-After} header like Spotify's.
+ */
+public class SpotifyStubServer implements AutoCloseable {
+
+	public enum Route {
+		TOKEN,
+		PLAYER,
+		CURRENTLY_PLAYING,
+		PLAY,
+		PAUSE,
+		NEXT,
+		VOLUME,
+		SHUFFLE,
+		TRACK,
+		PLAYLIST,
+		PLAYLIST_TRACKS
+	}
+
+	/**
+	 * A scripted error answer; {@code retryAfterSeconds} is only sent with status 429.
+	 */
+	public record Failure(int status, int retryAfterSeconds) {
+
+		public static Failure rateLimited(int retryAfterSeconds) {
+			return new Failure(429, retryAfterSeconds);
+		}
+	}
+
+	private static final class Profile {
+		final AtomicLong calls = new AtomicLong();
+		// Guarded by this.
+		final Deque<Failure> scripted = new ArrayDeque<>();
+		volatile LatencyDistribution latency = LatencyDistribution.none();
+		volatile double failureProbability;
+		volatile Failure randomFailure;
+
+		synchronized Failure nextFailure() {
+			Failure next = scripted.pollFirst();
+			if (next != null) {
+				return next;
+			}
+			Failure random = randomFailure;
+			if (random != null && ThreadLocalRandom.current().nextDouble() < failureProbability) {
+				return random;
+			}
+			return null;
+		}
+	}
+
+	private static final int MAX_PAGE_SIZE = 100;
+
+	private final HttpServer server;
+	private final ExecutorService threads;
+	private final PlaybackProperties.Simulated settings = new PlaybackProperties.Simulated();
+	private final PlaybackController player;
+	private final Map<Route, Profile> profiles = new EnumMap<>(Route.class);
+	private final AtomicInteger issuedTokens = new AtomicInteger();
+
+	private SpotifyStubServer() throws IOException {
+		// Otherwise Nagle on the stub's split header/body writes dominates every kept-alive call.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		for (Route route : Route.values()) {
+			profiles.put(route, new Profile());
+		}
+		SimulatedPlaybackBackend backend = new SimulatedPlaybackBackend(settings, SimulatedClock.system(),
+				LatencyDistribution.none(), LatencyDistribution.none());
+		this.player = backend.controllerFor(SpotifyAccount.global());
+
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.threads = Executors.newFixedThreadPool(8);
+		server.setExecutor(threads);
+		server.createContext("/", this::handle);
+	}
+
+	public static SpotifyStubServer start() throws IOException {
+		SpotifyStubServer stub = new SpotifyStubServer();
+		stub.server.start();
+		return stub;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		threads.shutdownNow();
+	}
+
+	public String apiBaseUri() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	public String tokenUri() {
+		return apiBaseUri() + "/api/token";
+	}
+
+	public SpotifyStubServer latency(Route route, LatencyDistribution latency) {
+		profiles.get(route).latency = latency;
+		return this;
+	}
+
+	/**
+	 * Answers the next {@code times} calls of the route with the failure.
+	 */
+	public SpotifyStubServer failNext(Route route, int times, Failure failure) {
+		Profile profile = profiles.get(route);
+		synchronized (profile) {
+			for (int i = 0; i < times; i++) {
+				profile.scripted.addLast(failure);
+			}
+		}
+		return this;
+	}
+
+	public SpotifyStubServer failRandomly(Route route, double probability, Failure failure) {
+		Profile profile = profiles.get(route);
+		profile.randomFailure = failure;
+		profile.failureProbability = probability;
+		return this;
+	}
+
+	public SpotifyStubServer playlistSize(int size) {
+		settings.setPlaylistSize(size);
+		return this;
+	}
+
+	/**
+	 * Calls received on the route, failed ones included.
+	 */
+	public long calls(Route route) {
+		return profiles.get(route).calls.get();
+	}
+
+	/**
+	 * Clears scripts, latencies and counters.
+	 */
+	public void reset() {
+		for (Profile profile : profiles.values()) {
+			synchronized (profile) {
+				profile.scripted.clear();
+			}
+			profile.latency = LatencyDistribution.none();
+			profile.randomFailure = null;
+			profile.calls.set(0);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String path = exchange.getRequestURI().getPath();
+			Route route = route(exchange.getRequestMethod(), path);
+			if (route == null) {
+				send(exchange, 404, error(404, "Service not found"));
+				return;
+			}
+			Profile profile = profiles.get(route);
+			profile.calls.incrementAndGet();
+			try {
+				SimulatedClock.system().sleep(profile.latency.sampleNanos(ThreadLocalRandom.current()));
+				Failure failure = profile.nextFailure();
+				if (failure != null) {
+					fail(exchange, route, failure);
+					return;
+				}
+				Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+				String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+				answer(exchange, route, path, query, body);
+			} catch (NotFoundException e) {
+				send(exchange, 404, error(404, e.getMessage()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				send(exchange, 500, error(500, String.valueOf(e.getMessage())));
+			}
+		}
+	}
+
+	private static void fail(HttpExchange exchange, Route route, Failure failure) throws IOException {
+		if (failure.status() == 429) {
+			exchange.getResponseHeaders().add("Retry-After", Integer.toString(failure.retryAfterSeconds()));
+			send(exchange, 429, error(429, "API rate limit exceeded"));
+		} else if (route == Route.TOKEN) {
+			JsonObject body = new JsonObject();
+			body.addProperty("error", "invalid_grant");
+			body.addProperty("error_description", "Invalid refresh token");
+			send(exchange, failure.status(), body.toString());
+		} else {
+			send(exchange, failure.status(), error(failure.status(), "Stub failure"));
+		}
+	}
+
+	private static Route route(String method, String path) {
+		return switch (method + " " + path) {
+			case "POST /api/token" -> Route.TOKEN;
+			case "GET /v1/me/player" -> Route.PLAYER;
+			case "GET /v1/me/player/currently-playing" -> Route.CURRENTLY_PLAYING;
+			case "PUT /v1/me/player/play" -> Route.PLAY;
+			case "PUT /v1/me/player/pause" -> Route.PAUSE;
+			case "POST /v1/me/player/next" -> Route.NEXT;
+			case "PUT /v1/me/player/volume" -> Route.VOLUME;
+			case "PUT /v1/me/player/shuffle" -> Route.SHUFFLE;
+			default -> {
+				if (method.equals("GET") && path.startsWith("/v1/tracks/")) {
+					yield Route.TRACK;
+				}
+				if (method.equals("GET") && path.startsWith("/v1/playlists/")) {
+					yield path.endsWith("/tracks") ? Route.PLAYLIST_TRACKS : Route.PLAYLIST;
+				}
+				yield null;
+			}
+		};
+	}
+
+	private void answer(HttpExchange exchange, Route route, String path, Map<String, String> query, String body)
+			throws Exception {
+		switch (route) {
+			case TOKEN -> send(exchange, 200, token(parseQuery(body)));
+			case PLAYER, CURRENTLY_PLAYING -> {
+				PlaybackState state = route == Route.PLAYER ? player.getState() : player.getCurrentTrack();
+				if (state.trackUri() == null) {
+					send(exchange, 204, null);
+				} else {
+					send(exchange, 200, playback(state, route == Route.PLAYER).toString());
+				}
+			}
+			case PLAY -> {
+				JsonObject request = body.isBlank() ? new JsonObject() : JsonParser.parseString(body).getAsJsonObject();
+				if (request.has("uris")) {
+					JsonArray uris = request.getAsJsonArray("uris");
+					player.playUris(uris.asList().stream().map(u -> u.getAsString()).toList());
+				} else if (request.has("context_uri")) {
+					player.playContext(request.get("context_uri").getAsString());
+				} else {
+					player.resume();
+				}
+				send(exchange, 204, null);
+			}
+			case PAUSE -> {
+				player.pause();
+				send(exchange, 204, null);
+			}
+			case NEXT -> {
+				player.skip();
+				send(exchange, 204, null);
+			}
+			case VOLUME -> {
+				player.setVolume(Integer.parseInt(query.getOrDefault("volume_percent", "100")));
+				send(exchange, 204, null);
+			}
+			case SHUFFLE -> {
+				player.setShuffle(Boolean.parseBoolean(query.get("state")));
+				send(exchange, 204, null);
+			}
+			case TRACK -> send(exchange, 200,
+					track("spotify:track:" + path.substring("/v1/tracks/".length()), null).toString());
+			case PLAYLIST -> {
+				String playlistId = path.substring("/v1/playlists/".length());
+				JsonObject playlist = new JsonObject();
+				playlist.addProperty("id", playlistId);
+				playlist.addProperty("snapshot_id", player.playlistSnapshotId(playlistId));
+				send(exchange, 200, playlist.toString());
+			}
+			case PLAYLIST_TRACKS -> send(exchange, 200, playlistPage(path, query).toString());
+		}
+	}
+
+	private String token(Map<String, String> form) {
+		int n = issuedTokens.incrementAndGet();
+		JsonObject token = new JsonObject();
+		token.addProperty("access_token", "stub-access-" + n);
+		token.addProperty("token_type", "Bearer");
+		token.addProperty("scope", "user-modify-playback-state user-read-playback-state");
+		token.addProperty("expires_in", 3600);
+		if ("authorization_code".equals(form.get("grant_type"))) {
+			token.addProperty("refresh_token", "stub-refresh-" + n);
+		}
+		return token.toString();
+	}
+
+	private JsonObject playlistPage(String path, Map<String, String> query) throws Exception {
+		String playlistId = path.substring("/v1/playlists/".length(), path.lastIndexOf('/'));
+		List<String> uris = SimulatedPlaybackBackend.playlistTracks(playlistId, settings.getPlaylistSize());
+		int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+		int limit = Math.min(MAX_PAGE_SIZE, Integer.parseInt(query.getOrDefault("limit", "100")));
+
+		JsonArray items = new JsonArray();
+		for (int i = offset; i < Math.min(uris.size(), offset + limit); i++) {
+			JsonObject item = new JsonObject();
+			item.addProperty("is_local", false);
+			item.add("track", track(uris.get(i), null));
+			items.add(item);
+		}
+		JsonObject page = new JsonObject();
+		page.add("items", items);
+		page.addProperty("offset", offset);
+		page.addProperty("limit", limit);
+		page.addProperty("total", uris.size());
+		if (offset + limit < uris.size()) {
+			page.addProperty("next", apiBaseUri() + path + "?offset=" + (offset + limit) + "&limit=" + limit);
+		} else {
+			page.add("next", null);
+		}
+		return page;
+	}
+
+	private static JsonObject playback(PlaybackState state, boolean withDevice) {
+		JsonObject playback = new JsonObject();
+		playback.addProperty("timestamp", System.currentTimeMillis());
+		playback.addProperty("is_playing", Boolean.TRUE.equals(state.playing()));
+		playback.addProperty("progress_ms", state.progressMs());
+		playback.addProperty("currently_playing_type", "track");
+		playback.add("item", track(state.trackUri(), state));
+
+		JsonObject disallows = new JsonObject();
+		for (Action action : state.disallowedActions()) {
+			disallows.addProperty(action.getKey(), true);
+		}
+		JsonObject actions = new JsonObject();
+		actions.add("disallows", disallows);
+		playback.add("actions", actions);
+
+		if (withDevice) {
+			JsonObject device = new JsonObject();
+			device.addProperty("id", "stub-device");
+			device.addProperty("is_active", true);
+			device.addProperty("name", "Stub speaker");
+			device.addProperty("type", "Speaker");
+			device.addProperty("volume_percent", 100);
+			device.addProperty("supports_volume", state.supportsVolume());
+			playback.add("device", device);
+			playback.addProperty("shuffle_state", false);
+			playback.addProperty("repeat_state", "off");
+		}
+		return playback;
+	}
+
+	private static JsonObject track(String uri, PlaybackState state) {
+		String id = uri.substring(uri.lastIndexOf(':') + 1);
+		JsonObject artist = new JsonObject();
+		artist.addProperty("name", state != null ? state.artistsText() : "Simulated artist");
+		artist.addProperty("type", "artist");
+		JsonArray artists = new JsonArray();
+		artists.add(artist);
+
+		JsonObject image = new JsonObject();
+		image.addProperty("url", "https://i.scdn.co/image/" + id);
+		JsonArray images = new JsonArray();
+		images.add(image);
+		JsonObject album = new JsonObject();
+		album.addProperty("name", "Simulated album");
+		album.add("images", images);
+
+		JsonObject track = new JsonObject();
+		track.addProperty("type", "track");
+		track.addProperty("id", id);
+		track.addProperty("uri", uri);
+		track.addProperty("name", state != null ? state.songTitle() : "Simulated song " + id);
+		track.addProperty("duration_ms", state != null ? state.durationMs() : 180_000);
+		track.add("artists", artists);
+		track.add("album", album);
+		return track;
+	}
+
+	private static String error(int status, String message) {
+		JsonObject error = new JsonObject();
+		error.addProperty("status", status);
+		error.addProperty("message", message);
+		JsonObject body = new JsonObject();
+		body.add("error", error);
+		return body.toString();
+	}
+
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> params = new HashMap<>();
+		if (query == null || query.isBlank()) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = eq >= 0 ? pair.substring(0, eq) : pair;
+			String value = eq >= 0 ? pair.substring(eq + 1) : "";
+			params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
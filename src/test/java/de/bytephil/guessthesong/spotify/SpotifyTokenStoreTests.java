@@ -0,0 +1,48 @@
+package de.bytephil.guessthesong.spotify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpotifyTokenStoreTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void roundTrip() throws Exception {
+		Path file = dir.resolve("config").resolve("spotify-token.properties");
+		SpotifyTokenStore.write(file, new SpotifySessionToken("access", "refresh", 1234L));
+
+		SpotifySessionToken read = SpotifyTokenStore.read(file);
+		assertEquals("access", read.getAccessToken());
+		assertEquals("refresh", read.getRefreshToken());
+		assertEquals(1234L, read.getExpiresAtEpochMs());
+	}
+
+	@Test
+	void overwriteLeavesNoTemporaryFiles() throws Exception {
+		Path file = dir.resolve("spotify-token.properties");
+		SpotifyTokenStore.write(file, new SpotifySessionToken("a1", "r", 1L));
+		SpotifyTokenStore.write(file, new SpotifySessionToken("a2", "r", 2L));
+
+		assertEquals("a2", SpotifyTokenStore.read(file).getAccessToken());
+		try (var files = Files.list(dir)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	void missingFileOrRefreshTokenReadsAsNoToken() throws Exception {
+		Path file = dir.resolve("spotify-token.properties");
+		assertNull(SpotifyTokenStore.read(file));
+
+		Files.writeString(file, "access-token=a\n");
+		assertNull(SpotifyTokenStore.read(file));
+	}
+}
@@ -0,0 +1,100 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BroadcastFanoutTests {
+
+	private final WebSocketProperties properties = new WebSocketProperties();
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final TestWebSocketSession fast = new TestWebSocketSession("fast");
+	private final TestWebSocketSession slow = new TestWebSocketSession("slow");
+	private BroadcastFanout fanout;
+
+	private List<OutboundSession> start() {
+		fanout = new BroadcastFanout(properties, registry, new BlockingExecutors(false));
+		return List.of(fanout.decorate(fast), fanout.decorate(slow));
+	}
+
+	@AfterEach
+	void stop() {
+		slow.unstall();
+		if (fanout != null) {
+			fanout.shutdown();
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	private double failures(String reason) {
+		return registry.get("ws.broadcast.failures").tag("reason", reason).functionCounter().count();
+	}
+
+	@Test
+	void clientStuckLongerThanTheSendTimeLimitIsDisconnected() throws Exception {
+		properties.setSendTimeLimitMs(100);
+		List<OutboundSession> sessions = start();
+		slow.stall();
+
+		assertEquals(new BroadcastFanout.Result(2, 2, 0, 0), fanout.broadcast(sessions, new TextMessage("frame-01")));
+		// The stuck write holds up nobody else.
+		await(() -> fast.sent.size() == 1);
+		Thread.sleep(150);
+
+		assertEquals(new BroadcastFanout.Result(2, 1, 0, 1), fanout.broadcast(sessions, new TextMessage("frame-02")));
+		await(() -> fast.sent.size() == 2);
+		await(() -> slow.getCloseStatus() != null);
+		assertEquals(CloseStatus.SESSION_NOT_RELIABLE, slow.getCloseStatus());
+
+		assertEquals(1.0, failures("disconnected"));
+		assertEquals(0.0, failures("dropped"));
+		assertEquals(2.0, registry.get("ws.broadcasts").functionCounter().count());
+	}
+
+	@Test
+	void dropClosesTheSessionAfterWhatWasQueuedWithoutAGap() throws Exception {
+		properties.setSlowConsumerPolicy(OverflowStrategy.DROP);
+		properties.setBufferSizeLimit(20);
+		List<OutboundSession> sessions = start();
+		slow.stall();
+
+		fanout.broadcast(sessions, new TextMessage("frame-01"));
+		fanout.broadcast(sessions, new TextMessage("frame-02"));
+		await(() -> fast.sent.size() == 2);
+		// 24 bytes would be queued for the slow client: dropped, and nothing after it is sent either.
+		assertEquals(new BroadcastFanout.Result(2, 1, 1, 0), fanout.broadcast(sessions, new TextMessage("frame-03")));
+		await(() -> fast.sent.size() == 3);
+		assertEquals(new BroadcastFanout.Result(2, 1, 0, 0), fanout.broadcast(sessions, new TextMessage("frame-04")));
+		slow.unstall();
+
+		await(() -> slow.getCloseStatus() != null);
+		assertEquals(CloseStatus.SESSION_NOT_RELIABLE, slow.getCloseStatus());
+		assertEquals(List.of("frame-01", "frame-02"), slow.sent);
+		await(() -> fast.sent.size() == 4);
+		assertEquals(List.of("frame-01", "frame-02", "frame-03", "frame-04"), fast.sent);
+
+		assertEquals(1.0, failures("dropped"));
+		assertEquals(0.0, failures("disconnected"));
+		// Every broadcast is timed once its last recipient is done.
+		await(() -> registry.get("ws.broadcast.fanout").timer().count() == 4);
+	}
+}
@@ -0,0 +1,71 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ClientMessageDecoderTests {
+
+	private final ClientMessageDecoder decoder = new ClientMessageDecoder(new ObjectMapper());
+
+	@Test
+	void decodesBuzzWithAnswerPrefix() throws Exception {
+		ClientMessage m = decoder.decode("answer:{\"type\":\"playerGuess\",\"playerName\":\"Phil\",\"round\":7}");
+
+		assertEquals(MessageType.PLAYER_GUESS, m.type);
+		assertEquals("Phil", m.playerName);
+		assertEquals(7L, m.round);
+	}
+
+	@Test
+	void skipsUnneededAndUnknownFields() throws Exception {
+		ClientMessage m = decoder.decode(
+				"{\"type\":\"nextRound\",\"genreName\":\"Rock\",\"extra\":{\"a\":[1,2]},\"playerName\":\"Ann\"}");
+
+		assertEquals(MessageType.NEXT_ROUND, m.type);
+		assertEquals("Ann", m.playerName);
+		assertNull(m.genreName);
+	}
+
+	@Test
+	void keepsSetupFieldsForNewGame() throws Exception {
+		ClientMessage m = decoder.decode(
+				"{\"type\":\"newGame\",\"genreName\":\"rock\",\"playlistContextUri\":\"spotify:playlist:x\"}");
+
+		assertEquals("rock", m.genreName);
+		assertEquals("spotify:playlist:x", m.playlistContextUri);
+	}
+
+	@Test
+	void decodesCommandId() throws Exception {
+		ClientMessage m = decoder.decode("{\"type\":\"newGame\",\"commandId\":\"c-42\",\"genreName\":\"rock\"}");
+
+		assertEquals("c-42", m.commandId);
+		assertNull(decoder.decode("{\"type\":\"nextRound\"}").commandId);
+	}
+
+	@Test
+	void decodesClockFields() throws Exception {
+		ClientMessage sync = decoder.decode("{\"type\":\"timeSync\",\"t0\":123456,\"at\":1700000000123.25}");
+		assertEquals(MessageType.TIME_SYNC, sync.type);
+		assertEquals(123456L, sync.syncT0);
+		assertEquals(1700000000123.25, sync.clientTimeMs);
+
+		ClientMessage buzz = decoder.decode("{\"type\":\"playerGuess\",\"playerName\":\"Phil\"}");
+		assertTrue(Double.isNaN(buzz.clientTimeMs));
+		assertEquals(-1L, buzz.syncT0);
+	}
+
+	@Test
+	void ignoresNonJsonAndRejectsMalformedJson() throws Exception {
+		assertNull(decoder.decode("name:Phil"));
+		assertThrows(IOException.class, () -> decoder.decode("{\"type\":"));
+	}
+}
@@ -0,0 +1,192 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import de.bytephil.guessthesong.GuessthesongApplication;
+import de.bytephil.guessthesong.cluster.BrokerGameEventBus;
+import de.bytephil.guessthesong.cluster.ClusterMessage;
+import de.bytephil.guessthesong.cluster.ConsistentHashRing;
+import de.bytephil.guessthesong.cluster.EmbeddedGameBroker;
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import de.bytephil.guessthesong.game.Room;
+import de.bytephil.guessthesong.game.RoomRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Two nodes sharing rooms over a local embedded broker: players of one party on different nodes
+ * see each other's buzzes and answers, arbitrated by the room's owner.
+ */
+class ClusterGameTests {
+
+	private static EmbeddedGameBroker broker;
+	private static ConfigurableApplicationContext nodeA;
+	private static ConfigurableApplicationContext nodeB;
+
+	private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+	@BeforeAll
+	static void startCluster() throws Exception {
+		broker = new EmbeddedGameBroker(0, new BlockingExecutors(false));
+		broker.start();
+		nodeA = startNode("a");
+		nodeB = startNode("b");
+	}
+
+	@AfterAll
+	static void stopCluster() {
+		nodeA.close();
+		nodeB.close();
+		broker.close();
+	}
+
+	private static ConfigurableApplicationContext startNode(String nodeId) {
+		return new SpringApplicationBuilder(GuessthesongApplication.class).run(
+				"--server.port=0",
+				"--playback.backend=simulated",
+				"--playback.simulated.virtual-clock=true",
+				"--spotify.token-store-path=target/cluster-" + nodeId + "-token.properties",
+				"--cluster.node-id=" + nodeId,
+				"--cluster.nodes=a,b",
+				"--cluster.bus=broker",
+				"--cluster.broker-port=" + broker.getPort(),
+				"--cluster.reconnect-delay-ms=50");
+	}
+
+	private WebSocketSession connect(ConfigurableApplicationContext node, String room, TestPlayer player)
+			throws Exception {
+		String port = node.getEnvironment().getProperty("local.server.port");
+		return client.execute(player, new WebSocketHttpHeaders(),
+				URI.create("ws://localhost:" + port + "/ws?room=" + room)).get(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * A room code starting with the prefix that the ring gives to the node, as both nodes compute it.
+	 */
+	private static String roomOwnedBy(String nodeId, String prefix) {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b"), 128);
+		for (int i = 0; ; i++) {
+			String code = RoomCodes.code(prefix, i);
+			if (ring.nodeFor(code).equals(nodeId)) {
+				return code;
+			}
+		}
+	}
+
+	@Test
+	void playersOnBothNodesShareOneGame() throws Exception {
+		// Owned by b: the host and p2 play through a, p1 directly on the owner.
+		String room = roomOwnedBy("b", "CL");
+		TestPlayer host = new TestPlayer();
+		TestPlayer p1 = new TestPlayer();
+		TestPlayer p2 = new TestPlayer();
+		WebSocketSession hostSession = connect(nodeA, room, host);
+		WebSocketSession p1Session = connect(nodeB, room, p1);
+		WebSocketSession p2Session = connect(nodeA, room, p2);
+		try {
+			// Relayed players get their join frames from the owner.
+			assertTrue(host.next("state").contains("\"roomCode\":\"" + room + "\""));
+			p1.next("state");
+			p2.next("state");
+
+			String playlistId = String.format("%-22s", "Cluster" + room).replace(' ', 'x');
+			hostSession.sendMessage(new TextMessage("{\"type\":\"newGame\",\"genreName\":\"Cluster\","
+					+ "\"playlistContextUri\":\"" + playlistId + "\"}"));
+			for (TestPlayer player : List.of(host, p1, p2)) {
+				assertTrue(player.next("newGame").contains("\"genreName\":\"Cluster\""));
+			}
+
+			p2Session.sendMessage(new TextMessage("{\"type\":\"playerGuess\",\"playerName\":\"p2\"}"));
+			for (TestPlayer player : List.of(host, p1, p2)) {
+				assertTrue(player.next("firstGuesser").contains("\"playerName\":\"p2\""));
+			}
+
+			hostSession.sendMessage(new TextMessage("{\"type\":\"showAnswer\",\"playerName\":\"host\"}"));
+			for (TestPlayer player : List.of(host, p1, p2)) {
+				assertTrue(player.next("answer").contains("\"songTitle\":\"Simulated song "));
+			}
+
+			// Only the owner ran the game; a's copy of the room is just its roster.
+			Room owned = nodeB.getBean(RoomRegistry.class).get(room);
+			Room relayed = nodeA.getBean(RoomRegistry.class).get(room);
+			assertEquals(1, owned.getSessions().size());
+			assertEquals(2, relayed.getSessions().size());
+			assertTrue(owned.getBuzzer().currentEpoch() > 1);
+			assertEquals(1, relayed.getBuzzer().currentEpoch());
+		} finally {
+			hostSession.close();
+			p1Session.close();
+			p2Session.close();
+		}
+	}
+
+	/**
+	 * Session ids are per node. Here a third node (just a bus connection) uses the id of a player
+	 * relayed through a: the owner must tell the two apart, and a must not hand the third node's
+	 * welcome or replies to its own player.
+	 */
+	@Test
+	void sessionsOfDifferentNodesWithTheSameIdStayApart() throws Exception {
+		String room = roomOwnedBy("b", "DS");
+		TestPlayer host = new TestPlayer();
+		WebSocketSession hostSession = connect(nodeA, room, host);
+		BrokerGameEventBus nodeC = new BrokerGameEventBus("localhost", broker.getPort(), 50,
+				JsonMapper.builder().findAndAddModules().build(), new BlockingExecutors(false), new SimpleMeterRegistry());
+		nodeC.start();
+		try {
+			host.next("state");
+			String sessionId = nodeA.getBean(RoomRegistry.class).get(room).getSessions().iterator().next().getId();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (!nodeC.isConnected() && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			BlockingQueue<ClusterMessage> welcomes = new LinkedBlockingQueue<>();
+			nodeC.subscribe(ClusterMessage.roomTopic(room), message -> {
+				if (message.kind() == ClusterMessage.Kind.WELCOME) {
+					welcomes.add(message);
+				}
+			});
+
+			nodeC.publish(ClusterMessage.nodeTopic("b"), ClusterMessage.join("c", room, sessionId));
+			ClusterMessage welcome = welcomes.poll(10, TimeUnit.SECONDS);
+			assertEquals(ClusterMessage.qualify("c", sessionId), welcome.sessionId());
+
+			String playlistId = String.format("%-22s", "Ids" + room).replace(' ', 'x');
+			String newGame = "{\"type\":\"newGame\",\"commandId\":\"n1\",\"genreName\":\"Ids\","
+					+ "\"playlistContextUri\":\"" + playlistId + "\"}";
+			hostSession.sendMessage(new TextMessage(newGame));
+			// Not the third node's welcome: a passed it on to nobody.
+			assertTrue(host.next().startsWith("{\"type\":\"newGame\""));
+
+			// The same command from the third node is a duplicate; its reply goes to that node only.
+			nodeC.publish(ClusterMessage.nodeTopic("b"), ClusterMessage.command("c", room, sessionId, newGame, 0));
+			ClusterMessage reply = welcomes.poll(10, TimeUnit.SECONDS);
+			assertEquals(ClusterMessage.qualify("c", sessionId), reply.sessionId());
+			assertTrue(reply.frames().get(0).startsWith("{\"type\":\"newGame\""));
+
+			hostSession.sendMessage(new TextMessage("{\"type\":\"nextRound\",\"playerName\":\"host\"}"));
+			assertTrue(host.next().startsWith("{\"type\":\"nextRound\""));
+		} finally {
+			nodeC.close();
+			hostSession.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import de.bytephil.guessthesong.game.Buzzer;
+import de.bytephil.guessthesong.game.RoomRegistry;
+import de.bytephil.guessthesong.playback.PlaybackBackend;
+import de.bytephil.guessthesong.playback.SimulatedPlaybackBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A command resent with the same commandId (as clients do after a reconnect) is answered with the
+ * frame it broadcast the first time and does not touch playback again.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"playback.backend=simulated",
+		"playback.simulated.virtual-clock=true",
+		// Without coalescing, only the dedup window keeps the resent newGame from playing.
+		"game.command-coalesce-window-ms=0",
+		"spotify.token-store-path=target/dedup-spotify-token.properties" })
+class DuplicateCommandTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private PlaybackBackend playbackBackend;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private RoomRegistry roomRegistry;
+
+	private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+	private double duplicates() {
+		return meterRegistry.get("ws.messages.duplicate").counter().count();
+	}
+
+	@Test
+	void resentCommandsGetTheOriginalResultOnly() throws Exception {
+		double duplicatesBefore = duplicates();
+		SimulatedPlaybackBackend backend = (SimulatedPlaybackBackend) playbackBackend;
+		TestPlayer host = new TestPlayer();
+		WebSocketSession session = client.execute(host, new WebSocketHttpHeaders(),
+				URI.create("ws://localhost:" + port + "/ws?room=DEDUPE")).get(10, TimeUnit.SECONDS);
+		try {
+			assertTrue(host.next().startsWith("{\"type\":\"state\""));
+
+			String playlistId = String.format("%-22s", "Dedup").replace(' ', 'x');
+			TextMessage newGame = new TextMessage("{\"type\":\"newGame\",\"commandId\":\"c1\",\"genreName\":\"Dedup\","
+					+ "\"playlistContextUri\":\"" + playlistId + "\"}");
+			session.sendMessage(newGame);
+			String original = host.next();
+			assertTrue(original.startsWith("{\"type\":\"newGame\""), original);
+
+			session.sendMessage(newGame);
+			assertEquals(original, host.next());
+
+			// Nothing was broadcast in between: the next command gets the next sequence number.
+			session.sendMessage(new TextMessage("{\"type\":\"nextRound\",\"commandId\":\"c2\"}"));
+			String nextRound = host.next();
+			assertTrue(nextRound.startsWith("{\"type\":\"nextRound\"") && nextRound.contains("\"seq\":2"), nextRound);
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (backend.getCalls(SimulatedPlaybackBackend.Call.PLAY_URIS) < 2 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(200);
+			// One track for the newGame, one for the nextRound.
+			assertEquals(2, backend.getCalls(SimulatedPlaybackBackend.Call.PLAY_URIS));
+			assertEquals(duplicatesBefore + 1, duplicates());
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	void resentGuessIsNotArbitratedAgain() throws Exception {
+		URI room = URI.create("ws://localhost:" + port + "/ws?room=DEDUPG");
+		TestPlayer player = new TestPlayer();
+		WebSocketSession first = client.execute(player, new WebSocketHttpHeaders(), room).get(10, TimeUnit.SECONDS);
+		TestPlayer reconnected = new TestPlayer();
+		WebSocketSession second = null;
+		try {
+			player.next("state");
+			TextMessage guess = new TextMessage(
+					"{\"type\":\"playerGuess\",\"commandId\":\"g1\",\"playerName\":\"Ann\"}");
+			first.sendMessage(guess);
+			player.next("firstGuesser");
+
+			// After a reconnect, the guess comes again from a session the buzzer has not seen.
+			second = client.execute(reconnected, new WebSocketHttpHeaders(), room).get(10, TimeUnit.SECONDS);
+			reconnected.next("state");
+			double duplicatesBefore = duplicates();
+			second.sendMessage(guess);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (duplicates() == duplicatesBefore && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(duplicatesBefore + 1, duplicates());
+
+			Buzzer.RoundState round = roomRegistry.get("DEDUPG").getBuzzer().current();
+			assertEquals("Ann", round.winner().playerName());
+			assertNull(round.runnerUp());
+		} finally {
+			first.close();
+			if (second != null) {
+				second.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.bytephil.guessthesong.game.GameEvent;
+
+class GameFrameEncoderTests {
+
+	private final GameFrameEncoder encoder = new GameFrameEncoder(new ObjectMapper());
+
+	@Test
+	void eventsKeepTheWireFormat() throws Exception {
+		assertEquals("{\"type\":\"firstGuesser\",\"playerName\":\"Phil\",\"round\":3}",
+				encoder.encode(new GameEvent.FirstGuesser("Phil", 3)).getPayload());
+		assertEquals("{\"type\":\"nextRound\",\"round\":4}",
+				encoder.encode(new GameEvent.NextRound(4)).getPayload());
+		assertEquals("{\"type\":\"answer\",\"songTitle\":\"Song\",\"artistsText\":\"A, B\",\"albumImageUrl\":\"\",\"round\":5}",
+				encoder.encode(new GameEvent.Answer("Song", "A, B", "", 5)).getPayload());
+	}
+
+	@Test
+	void broadcastFramesCarryTheirSequenceNumber() throws Exception {
+		assertEquals("{\"type\":\"nextRound\",\"round\":4,\"seq\":17}",
+				encoder.encode(new GameEvent.NextRound(4), 17).getPayload());
+		assertEquals("{\"type\":\"genreChange\",\"genreName\":\"Rock\",\"seq\":1}",
+				encoder.encode(new GameEvent.GenreChange("Rock"), 1).getPayload());
+	}
+
+	@Test
+	void stateOmitsMissingGenre() throws Exception {
+		assertEquals("{\"type\":\"state\",\"roomCode\":\"LOBBY\",\"round\":1,\"spotifyConnected\":false,"
+				+ "\"log\":\"a1\",\"seq\":0}",
+				encoder.encode(new GameEvent.State("LOBBY", 1, false, null, "a1", 0)).getPayload());
+	}
+
+	@Test
+	void replayIsEnrichedWithCurrentState() throws Exception {
+		assertEquals("{\"type\":\"guessAgain\",\"round\":2,\"seq\":9,\"spotifyConnected\":true,\"genreName\":\"Rock\"}",
+				encoder.encodeReplay(new GameEvent.GuessAgain(2), 9, true, "Rock").getPayload());
+	}
+}
@@ -0,0 +1,130 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A player on a slow link who pressed first wins the buzz, although the buzz of a player on a fast
+ * link arrives before theirs.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"playback.backend=simulated",
+		"playback.simulated.virtual-clock=true",
+		// Generous, so scheduling jitter on a busy machine does not close the window early.
+		"game.buzz-adjudication-window-ms=300",
+		"spotify.token-store-path=target/buzz-clock-spotify-token.properties" })
+class LatencyCompensatedBuzzerTests {
+
+	private static final long ONE_WAY_MS = 75;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+	private final ScheduledExecutorService link = Executors.newSingleThreadScheduledExecutor();
+
+	/**
+	 * A client whose clock is off by an arbitrary amount and whose link delays every frame by
+	 * {@code delayMs} each way.
+	 */
+	private final class Player extends TestPlayer {
+		final AtomicInteger syncAnswers = new AtomicInteger();
+		final long delayMs;
+		final double clockOffsetMs;
+
+		Player(long delayMs, double clockOffsetMs) {
+			this.delayMs = delayMs;
+			this.clockOffsetMs = clockOffsetMs;
+		}
+
+		double now() {
+			return System.nanoTime() / 1_000_000d + clockOffsetMs;
+		}
+
+		@Override
+		protected void onTimeSync(WebSocketSession session, String probe) {
+			String t0 = probe.substring(probe.indexOf("\"t0\":") + 5, probe.indexOf('}'));
+			// The probe reaches the client delayMs after it was sent, the answer the server delayMs later.
+			link.schedule(() -> {
+				String answer = "{\"type\":\"timeSync\",\"t0\":" + t0 + ",\"at\":" + now() + "}";
+				link.schedule(() -> {
+					send(session, answer);
+					syncAnswers.incrementAndGet();
+				}, delayMs, TimeUnit.MILLISECONDS);
+			}, delayMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static void send(WebSocketSession session, String payload) {
+		try {
+			synchronized (session) {
+				session.sendMessage(new TextMessage(payload));
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private WebSocketSession connect(Player player) throws Exception {
+		return client.execute(player, new WebSocketHttpHeaders(), URI.create("ws://localhost:" + port + "/ws?room=CLKSNC"))
+				.get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void slowLinkThatPressedFirstWins() throws Exception {
+		Player slow = new Player(ONE_WAY_MS, 1_234_567.25);
+		Player fast = new Player(0, -98_765.5);
+		WebSocketSession slowSession = connect(slow);
+		WebSocketSession fastSession = connect(fast);
+		try {
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while ((slow.syncAnswers.get() < 4 || fast.syncAnswers.get() < 4) && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			// Let the server take in the last answers.
+			Thread.sleep(100);
+
+			String playlistId = String.format("%-22s", "Clock").replace(' ', 'x');
+			send(fastSession, "{\"type\":\"newGame\",\"genreName\":\"Clock\",\"playlistContextUri\":\"" + playlistId + "\"}");
+			slow.next("newGame");
+			fast.next("newGame");
+
+			// slow presses first, but its buzz takes ONE_WAY_MS to arrive; fast presses 40ms later.
+			double slowPressedAt = slow.now();
+			link.schedule(() -> send(slowSession, "{\"type\":\"playerGuess\",\"playerName\":\"slow\",\"at\":"
+					+ slowPressedAt + "}"), ONE_WAY_MS, TimeUnit.MILLISECONDS);
+			Thread.sleep(40);
+			send(fastSession, "{\"type\":\"playerGuess\",\"playerName\":\"fast\",\"at\":" + fast.now() + "}");
+
+			String firstGuesser = fast.next("firstGuesser");
+			assertTrue(firstGuesser.contains("\"playerName\":\"slow\""), firstGuesser);
+			assertEquals(1.0, meterRegistry.get("game.buzz.overtaking").counter().count());
+			assertTrue(meterRegistry.get("ws.clock.rtt").timer().count() >= 8);
+		} finally {
+			slowSession.close();
+			fastSession.close();
+			link.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Clients reconnecting with their last seen sequence number get just the events they missed, or
+ * the full state when the room's event log no longer has them.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"playback.backend=simulated",
+		"playback.simulated.virtual-clock=true",
+		"game.event-log-capacity=4",
+		"spotify.token-store-path=target/resume-spotify-token.properties" })
+class ReconnectResumeTests {
+
+	private static final Pattern LOG = Pattern.compile("\"log\":\"([0-9a-f]+)\"");
+	private static final Pattern SEQ = Pattern.compile("\"seq\":(\\d+)");
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+	private WebSocketSession connect(String query, TestPlayer player) throws Exception {
+		return client.execute(player, new WebSocketHttpHeaders(), URI.create("ws://localhost:" + port + "/ws?" + query))
+				.get(10, TimeUnit.SECONDS);
+	}
+
+	private static String group(Pattern pattern, String frame) {
+		Matcher matcher = pattern.matcher(frame);
+		assertTrue(matcher.find(), frame);
+		return matcher.group(1);
+	}
+
+	private static void send(WebSocketSession session, String type) throws Exception {
+		session.sendMessage(new TextMessage("{\"type\":\"" + type + "\",\"playerName\":\"host\"}"));
+	}
+
+	private static List<String> types(List<String> frames) {
+		return frames.stream().map(f -> f.substring("{\"type\":\"".length(), f.indexOf('"', 9))).toList();
+	}
+
+	@Test
+	void reconnectingClientsGetOnlyTheEventsTheyMissed() throws Exception {
+		TestPlayer host = new TestPlayer();
+		TestPlayer player = new TestPlayer();
+		WebSocketSession hostSession = connect("room=RESUMA", host);
+		WebSocketSession playerSession = connect("room=RESUMA", player);
+		try {
+			host.untilState();
+			String state = player.untilState().get(0);
+			String log = group(LOG, state);
+			assertEquals("0", group(SEQ, state));
+
+			send(hostSession, "nextRound");
+			String nextRound = player.next();
+			assertTrue(nextRound.startsWith("{\"type\":\"nextRound\""), nextRound);
+			assertEquals("1", group(SEQ, nextRound));
+			playerSession.close();
+
+			send(hostSession, "guessAgain");
+			send(hostSession, "nextRound");
+			// The host saw both (same lane), so the room's log has them too.
+			host.next();
+			host.next();
+			host.next();
+
+			TestPlayer resumed = new TestPlayer();
+			WebSocketSession resumedSession = connect("room=RESUMA&log=" + log + "&since=1", resumed);
+			try {
+				List<String> frames = resumed.untilState();
+				assertEquals(List.of("guessAgain", "nextRound", "state"), types(frames));
+				assertEquals("2", group(SEQ, frames.get(0)));
+				assertEquals("3", group(SEQ, frames.get(1)));
+				assertEquals("3", group(SEQ, frames.get(2)));
+			} finally {
+				resumedSession.close();
+			}
+			assertEquals(1.0, meterRegistry.get("ws.resumes").tag("result", "delta").counter().count());
+		} finally {
+			hostSession.close();
+		}
+	}
+
+	@Test
+	void clientsTooFarBehindGetTheFullState() throws Exception {
+		TestPlayer host = new TestPlayer();
+		WebSocketSession hostSession = connect("room=RESUMB", host);
+		try {
+			String log = group(LOG, host.untilState().get(0));
+			for (int i = 0; i < 6; i++) {
+				send(hostSession, "nextRound");
+				host.next();
+			}
+
+			// Only 3..6 are kept: resuming from 1 is too far back, and so is any other log.
+			for (String query : List.of("log=" + log + "&since=1", "log=0&since=6")) {
+				TestPlayer late = new TestPlayer();
+				WebSocketSession lateSession = connect("room=RESUMB&" + query, late);
+				try {
+					String state = late.next();
+					assertTrue(state.startsWith("{\"type\":\"state\""), state);
+					assertEquals(log, group(LOG, state));
+					assertEquals("6", group(SEQ, state));
+					String replay = late.next();
+					assertTrue(replay.startsWith("{\"type\":\"nextRound\""), replay);
+					assertEquals("6", group(SEQ, replay));
+				} finally {
+					lateSession.close();
+				}
+			}
+		} finally {
+			hostSession.close();
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package de.bytephil.guessthesong.websocket;
+
+/**
+ * Valid join codes for tests: six characters of the join code alphabet.
+ */
+final class RoomCodes {
+
+	private static final String ALPHABET = "23456789ABCDEFGHJKLMNPQRSTUVWXYZ";
+
+	private RoomCodes() {
+	}
+
+	/**
+	 * The {@code n}th code starting with {@code prefix} (itself made of alphabet characters).
+	 */
+	static String code(String prefix, int n) {
+		StringBuilder suffix = new StringBuilder();
+		for (int i = prefix.length(); i < 6; i++) {
+			suffix.append(ALPHABET.charAt(n % ALPHABET.length()));
+			n /= ALPHABET.length();
+		}
+		return prefix + suffix.reverse();
+	}
+}
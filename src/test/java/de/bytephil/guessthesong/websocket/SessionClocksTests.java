@@ -0,0 +1,28 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SessionClocksTests {
+
+	@Test
+	void offsetComesFromTheShortestRoundTrip() {
+		SessionClocks.Clock clock = new SessionClocks.Clock();
+		assertEquals(-1, clock.rttNanos());
+
+		clock.add(30_000_000, 5_000_000);
+		clock.add(10_000_000, 1_000_000);
+		clock.add(20_000_000, 9_000_000);
+		assertEquals(10_000_000, clock.rttNanos());
+		assertEquals(1_000_000, clock.offsetNanos());
+
+		// Once the best sample has been overwritten, the best of the remaining ones counts.
+		for (int i = 0; i < 7; i++) {
+			clock.add(40_000_000, 7_000_000);
+		}
+		assertEquals(20_000_000, clock.rttNanos());
+		assertEquals(9_000_000, clock.offsetNanos());
+		assertEquals(10, clock.samples());
+	}
+}
@@ -0,0 +1,98 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import de.bytephil.guessthesong.game.Room;
+import de.bytephil.guessthesong.game.RoomRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A connection that stops answering (here: a raw socket that never reads, like a half-open TCP
+ * connection) is evicted from its room, while clients that answer the pings stay.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"playback.backend=simulated",
+		"websocket.heartbeat-interval-ms=100",
+		"websocket.idle-timeout-ms=500",
+		"spotify.token-store-path=target/heartbeat-spotify-token.properties" })
+class SessionHeartbeatTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private RoomRegistry roomRegistry;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * Opens a WebSocket by hand and then goes silent: pings are never read, let alone answered.
+	 */
+	private Socket openSilentSocket(String room) throws Exception {
+		Socket socket = new Socket("localhost", port);
+		OutputStream out = socket.getOutputStream();
+		out.write(("GET /ws?room=" + room + " HTTP/1.1\r\n"
+				+ "Host: localhost:" + port + "\r\n"
+				+ "Upgrade: websocket\r\n"
+				+ "Connection: Upgrade\r\n"
+				+ "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+				+ "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+		InputStream in = socket.getInputStream();
+		StringBuilder status = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1 && c != '\n') {
+			status.append((char) c);
+		}
+		assertTrue(status.toString().startsWith("HTTP/1.1 101"), status.toString());
+		return socket;
+	}
+
+	private Room awaitSessions(String code, int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		Room room = roomRegistry.get(code);
+		while ((room == null || room.getSessions().size() != count) && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+			room = roomRegistry.get(code);
+		}
+		assertEquals(count, room != null ? room.getSessions().size() : 0);
+		return room;
+	}
+
+	@Test
+	void silentSessionsAreEvicted() throws Exception {
+		WebSocketSession answering = new StandardWebSocketClient().execute(new TextWebSocketHandler(),
+				new WebSocketHttpHeaders(), URI.create("ws://localhost:" + port + "/ws?room=BEATER"))
+				.get(10, TimeUnit.SECONDS);
+		try (Socket silent = openSilentSocket("BEATER")) {
+			awaitSessions("BEATER", 2);
+
+			// Only the silent one goes; the other answered every ping in the meantime.
+			Room room = awaitSessions("BEATER", 1);
+			Thread.sleep(1_000);
+			assertEquals(1, room.getSessions().size());
+			assertTrue(answering.isOpen());
+			assertEquals(1.0, meterRegistry.get("ws.sessions.evicted").tag("reason", "idle").counter().count());
+		} finally {
+			answering.close();
+		}
+	}
+}
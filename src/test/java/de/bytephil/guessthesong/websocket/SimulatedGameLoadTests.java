@@ -0,0 +1,165 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import de.bytephil.guessthesong.game.BuzzTrace;
+import de.bytephil.guessthesong.game.BuzzTracer;
+import de.bytephil.guessthesong.playback.PlaybackBackend;
+import de.bytephil.guessthesong.playback.SimulatedPlaybackBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Drives full games over real WebSocket connections against the simulated playback backend:
+ * many rooms at once, each running newGame, buzzes, showAnswer and nextRound as fast as the
+ * server answers. Latency is simulated on a virtual clock, so nothing waits on the network.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"playback.backend=simulated",
+		"playback.simulated.virtual-clock=true",
+		"game.command-coalesce-window-ms=0",
+		"spotify.token-store-path=target/simulated-spotify-token.properties",
+		"spotify.player-read-budget.per-second=10000",
+		"spotify.player-read-budget.burst=10000",
+		"spotify.player-write-budget.per-second=10000",
+		"spotify.player-write-budget.burst=10000",
+		"spotify.catalog-read-budget.per-second=10000",
+		"spotify.catalog-read-budget.burst=10000" })
+class SimulatedGameLoadTests {
+
+	private static final int ROOMS = 20;
+	private static final int PLAYERS = 3;
+	private static final int ROUNDS = 20;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private PlaybackBackend playbackBackend;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private BuzzTracer buzzTracer;
+
+	private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+	private static final class Player extends TextWebSocketHandler {
+		final Semaphore answers;
+		final ConcurrentLinkedQueue<String> answerFrames;
+
+		Player(Semaphore answers, ConcurrentLinkedQueue<String> answerFrames) {
+			this.answers = answers;
+			this.answerFrames = answerFrames;
+		}
+
+		@Override
+		protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+			String payload = message.getPayload();
+			if (payload.startsWith("{\"type\":\"answer\"")) {
+				answerFrames.add(payload);
+				answers.release();
+			}
+		}
+	}
+
+	@Test
+	void manyRoomsPlayFullGames() throws Exception {
+		SimulatedPlaybackBackend backend = (SimulatedPlaybackBackend) playbackBackend;
+		ConcurrentLinkedQueue<String> answerFrames = new ConcurrentLinkedQueue<>();
+		ExecutorService drivers = Executors.newFixedThreadPool(ROOMS);
+		try {
+			List<Future<?>> games = new ArrayList<>();
+			for (int r = 0; r < ROOMS; r++) {
+				String code = RoomCodes.code("LD", r);
+				games.add(drivers.submit(() -> {
+					playGame(code, answerFrames);
+					return null;
+				}));
+			}
+			for (Future<?> game : games) {
+				game.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			drivers.shutdownNow();
+		}
+
+		assertEquals(ROOMS * PLAYERS * ROUNDS, answerFrames.size());
+		assertTrue(answerFrames.stream().allMatch(f -> f.contains("\"songTitle\":\"Simulated song ")));
+		// newGame and every nextRound start one track of the room's deck.
+		assertEquals(ROOMS * ROUNDS, backend.getCalls(SimulatedPlaybackBackend.Call.PLAY_URIS));
+		assertEquals(0, backend.getCalls(SimulatedPlaybackBackend.Call.SKIP));
+
+		// The host's later messages run on the same lane, so every newGame has been recorded by now.
+		assertEquals(ROOMS, meterRegistry.get("ws.messages").tag("type", "newGame").timer().count());
+		assertTrue(meterRegistry.get("spotify.commands").tag("outcome", "executed").functionCounter().count() > 0);
+		assertTrue(meterRegistry.get("ws.broadcast.fanout").timer().count() > 0);
+
+		// Winning buzzes pause the (simulated) music and leave a full trace.
+		BuzzTracer.StageSummary paused = buzzTracer.summary().get(BuzzTrace.Stage.PAUSED);
+		assertTrue(paused.count() > 0);
+		assertTrue(paused.p50Micros() >= buzzTracer.summary().get(BuzzTrace.Stage.LANE).p50Micros());
+
+		HttpResponse<String> scrape = HttpClient.newHttpClient().send(
+				HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/prometheus")).build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, scrape.statusCode());
+		assertTrue(scrape.body().contains("ws_messages_seconds_count{type=\"showAnswer\"}"), scrape.body());
+		assertTrue(scrape.body().contains("game_rooms "), scrape.body());
+	}
+
+	private void playGame(String code, ConcurrentLinkedQueue<String> answerFrames) throws Exception {
+		Semaphore answers = new Semaphore(0);
+		List<WebSocketSession> players = new ArrayList<>();
+		for (int p = 0; p < PLAYERS; p++) {
+			players.add(client.execute(new Player(answers, answerFrames), new WebSocketHttpHeaders(),
+					URI.create("ws://localhost:" + port + "/ws?room=" + code)).get(10, TimeUnit.SECONDS));
+		}
+		try {
+			WebSocketSession host = players.get(0);
+			// Any 22 character id is a playlist to the simulated backend.
+			String playlistId = String.format("%-22s", "SimPlaylist" + code).replace(' ', 'x');
+			host.sendMessage(new TextMessage("{\"type\":\"newGame\",\"genreName\":\"Load\",\"playlistContextUri\":\""
+					+ playlistId + "\"}"));
+			for (int round = 0; round < ROUNDS; round++) {
+				for (int p = 0; p < PLAYERS; p++) {
+					players.get(p).sendMessage(new TextMessage("{\"type\":\"playerGuess\",\"playerName\":\"p" + p
+							+ "\"}"));
+				}
+				host.sendMessage(new TextMessage("{\"type\":\"showAnswer\",\"playerName\":\"p0\"}"));
+				assertTrue(answers.tryAcquire(PLAYERS, 10, TimeUnit.SECONDS), "answer in room " + code);
+				if (round < ROUNDS - 1) {
+					host.sendMessage(new TextMessage("{\"type\":\"nextRound\",\"playerName\":\"p0\"}"));
+				}
+			}
+		} finally {
+			for (WebSocketSession player : players) {
+				player.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+/**
+ * A WebSocket client for tests that queues the JSON frames it receives. Clock sync probes are not
+ * queued; they go to {@link #onTimeSync(WebSocketSession, String)}, which leaves them unanswered.
+ */
+class TestPlayer extends TextWebSocketHandler {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+
+	@Override
+	protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+		String payload = message.getPayload();
+		if (payload.startsWith("{\"type\":\"timeSync\"")) {
+			onTimeSync(session, payload);
+		} else if (payload.startsWith("{")) {
+			frames.add(payload);
+		}
+	}
+
+	/**
+	 * Called with each clock sync probe the server sends.
+	 */
+	protected void onTimeSync(WebSocketSession session, String probe) {
+	}
+
+	String next() throws InterruptedException {
+		String frame = frames.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		if (frame == null) {
+			throw new AssertionError("no frame");
+		}
+		return frame;
+	}
+
+	/**
+	 * The next frame of the given type, skipping others.
+	 */
+	String next(String type) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while (true) {
+			String frame = frames.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			if (frame == null) {
+				throw new AssertionError("no " + type + " frame");
+			}
+			if (frame.startsWith("{\"type\":\"" + type + "\"")) {
+				return frame;
+			}
+		}
+	}
+
+	/**
+	 * Frames up to and including the next state frame.
+	 */
+	List<String> untilState() throws InterruptedException {
+		List<String> received = new ArrayList<>();
+		String frame;
+		do {
+			frame = next();
+			received.add(frame);
+		} while (!frame.startsWith("{\"type\":\"state\""));
+		return received;
+	}
+}
@@ -0,0 +1,138 @@
+package de.bytephil.guessthesong.websocket;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * A session that records what is written to it. Writes can be held up with {@link #stall()} to
+ * play a slow client.
+ */
+class TestWebSocketSession implements WebSocketSession {
+
+	private final String id;
+	private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+	final List<String> sent = new CopyOnWriteArrayList<>();
+	private volatile CountDownLatch gate = new CountDownLatch(0);
+	private volatile CloseStatus closeStatus;
+
+	TestWebSocketSession(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * Writes block from now on until {@link #unstall()}.
+	 */
+	void stall() {
+		gate = new CountDownLatch(1);
+	}
+
+	void unstall() {
+		gate.countDown();
+	}
+
+	CloseStatus getCloseStatus() {
+		return closeStatus;
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public URI getUri() {
+		return URI.create("ws://localhost/ws");
+	}
+
+	@Override
+	public HttpHeaders getHandshakeHeaders() {
+		return new HttpHeaders();
+	}
+
+	@Override
+	public Map<String, Object> getAttributes() {
+		return attributes;
+	}
+
+	@Override
+	public Principal getPrincipal() {
+		return null;
+	}
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return null;
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return null;
+	}
+
+	@Override
+	public String getAcceptedProtocol() {
+		return null;
+	}
+
+	@Override
+	public void setTextMessageSizeLimit(int messageSizeLimit) {
+	}
+
+	@Override
+	public int getTextMessageSizeLimit() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+	}
+
+	@Override
+	public int getBinaryMessageSizeLimit() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public List<WebSocketExtension> getExtensions() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void sendMessage(WebSocketMessage<?> message) {
+		try {
+			gate.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sent.add(message.getPayload().toString());
+	}
+
+	@Override
+	public boolean isOpen() {
+		return closeStatus == null;
+	}
+
+	@Override
+	public void close() {
+		close(CloseStatus.NORMAL);
+	}
+
+	@Override
+	public void close(CloseStatus status) {
+		closeStatus = status;
+	}
+}
@@ -0,0 +1,34 @@
+package de.bytephil.guessthesong.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import de.bytephil.guessthesong.config.BlockingExecutors;
+import de.bytephil.guessthesong.spotify.SpotifyAccount;
+import de.bytephil.guessthesong.spotify.SpotifyCommandQueue;
+
+/**
+ * The simulated load test again, with {@code spring.threads.virtual.enabled}.
+ */
+@TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+class VirtualThreadGameLoadTests extends SimulatedGameLoadTests {
+
+	@Autowired
+	private BlockingExecutors executors;
+
+	@Autowired
+	private SpotifyCommandQueue commands;
+
+	@Test
+	void spotifyCommandsRunOnVirtualThreads() throws Exception {
+		assertTrue(executors.isVirtual());
+		boolean virtual = commands.submit(new SpotifyAccount("simulated:VT", null), "test",
+				player -> Thread.currentThread().isVirtual()).get(10, TimeUnit.SECONDS);
+		assertTrue(virtual);
+	}
+}